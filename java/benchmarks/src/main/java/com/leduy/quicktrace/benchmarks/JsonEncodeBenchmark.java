@@ -0,0 +1,71 @@
+package com.leduy.quicktrace.benchmarks;
+
+import com.leduy.quicktrace.JsonTraceEncoder;
+import com.leduy.quicktrace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JsonTraceEncoder streaming thẳng ra OutputStream (đường của NdjsonTraceSink), compact và pretty
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonEncodeBenchmark {
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({"20", "200"})
+    public int spans;
+
+    @Param({"false", "true"})
+    public boolean pretty;
+
+    private Tracer tracer;
+
+    @Setup
+    public void setup() {
+        tracer = Tracer.builder("JSON benchmark").silent(true).build();
+        for (int i = 0; i < spans; i++) {
+            tracer.span("Operation number " + i);
+        }
+        tracer.end();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void writeToStream() throws IOException {
+        JsonTraceEncoder.write(tracer, DISCARD, pretty);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void writeToStreamMultiThreaded() throws IOException {
+        JsonTraceEncoder.write(tracer, DISCARD, pretty);
+    }
+}
@@ -0,0 +1,69 @@
+package com.leduy.quicktrace.benchmarks;
+
+import com.leduy.quicktrace.OutputStyle;
+import com.leduy.quicktrace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render một trace đã kết thúc theo từng OutputStyle, vào StringBuilder tái sử dụng (như sinks làm)
+ * và vào String mới (như render())
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    @Param({"DEFAULT", "COLORFUL", "MINIMAL", "DETAILED", "TABLE", "JSON", "NDJSON", "CHROME_TRACE"})
+    public OutputStyle style;
+
+    @Param({"20"})
+    public int spans;
+
+    private Tracer tracer;
+    private final StringBuilder sb = new StringBuilder(8192);
+
+    @Setup
+    public void setup() {
+        tracer = Tracer.builder("Render benchmark").silent(true).outputStyle(style).build();
+        for (int i = 0; i < spans; i++) {
+            tracer.span("Operation number " + i);
+        }
+        tracer.end();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int renderToReusedBuilder() {
+        sb.setLength(0);
+        tracer.renderTo(sb);
+        return sb.length();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int renderToReusedBuilderMultiThreaded() {
+        return renderToReusedBuilder();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String render() {
+        return tracer.render();
+    }
+}
@@ -0,0 +1,68 @@
+package com.leduy.quicktrace.benchmarks;
+
+import com.leduy.quicktrace.Measurement;
+import com.leduy.quicktrace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * applySmartFiltering trên số spans tăng dần - để thấy độ phức tạp của slow/ultra-fast filter và groupSimilar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SmartFilteringBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int spans;
+
+    private Tracer filterOnly;
+    private Tracer grouping;
+    private List<Measurement> measurements;
+
+    @Setup
+    public void setup() {
+        filterOnly = Tracer.builder("filter")
+                .silent(true)
+                .showSlowOnly(Duration.ofNanos(200))
+                .hideUltraFast(Duration.ofNanos(100))
+                .build();
+        grouping = Tracer.builder("group")
+                .silent(true)
+                .groupSimilar(Duration.ofNanos(50))
+                .build();
+
+        // Spans thật với durations lệch nhau do clock - đủ để filter/group có việc làm
+        Tracer source = Tracer.builder("source").silent(true).captureCaller(false).build();
+        for (int i = 0; i < spans; i++) {
+            source.span("operation-" + (i % 32));
+        }
+        source.end();
+        measurements = source.getMeasurementsView().subList(0, spans);
+    }
+
+    @Benchmark
+    public List<Object> slowAndUltraFastFilter() {
+        return filterOnly.applySmartFiltering(measurements);
+    }
+
+    @Benchmark
+    public List<Object> groupSimilar() {
+        return grouping.applySmartFiltering(measurements);
+    }
+}
@@ -0,0 +1,150 @@
+package com.leduy.quicktrace.benchmarks;
+
+import com.leduy.quicktrace.SpanScope;
+import com.leduy.quicktrace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput của span() / startSpan() và chi phí một trace hoàn chỉnh tới end().
+ * Tracer được thay mới sau mỗi {@value #SPANS_PER_TRACER} spans để buffer không phình suốt iteration;
+ * chi phí thay tracer được chia đều cho các spans.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanBenchmark {
+
+    static final int SPANS_PER_TRACER = 4096;
+
+    private static Tracer newTracer(boolean concurrent) {
+        return Tracer.builder("bench")
+                .silent(true)
+                .captureCaller(false)
+                .concurrent(concurrent)
+                .build();
+    }
+
+    /**
+     * Tracer riêng của mỗi benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class LocalTracer {
+        Tracer tracer;
+        Tracer disabled;
+        int recorded;
+
+        @Setup
+        public void setup() {
+            tracer = newTracer(false);
+            disabled = Tracer.builder("disabled").enabled(false).build();
+        }
+
+        Tracer next() {
+            if (++recorded == SPANS_PER_TRACER) {
+                recorded = 0;
+                tracer = newTracer(false);
+            }
+            return tracer;
+        }
+    }
+
+    /**
+     * Concurrent tracer dùng chung cho mọi benchmark thread. Mỗi thread đếm spans của nó và thay tracer
+     * dùng chung khi đủ - không có counter chung nào trên đường đo
+     */
+    @State(Scope.Benchmark)
+    public static class SharedTracer {
+        volatile Tracer tracer;
+
+        @Setup
+        public void setup() {
+            tracer = newTracer(true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SharedCounter {
+        int recorded;
+
+        Tracer next(SharedTracer shared) {
+            if (++recorded == SPANS_PER_TRACER) {
+                recorded = 0;
+                shared.tracer = newTracer(true);
+            }
+            return shared.tracer;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void span(LocalTracer state) {
+        state.next().span("operation");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void spanPerThreadTracers(LocalTracer state) {
+        state.next().span("operation");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void spanDisabled(LocalTracer state) {
+        state.disabled.span("operation");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void nestedScope(LocalTracer state) {
+        Tracer tracer = state.next();
+        try (SpanScope scope = tracer.startSpan("outer")) {
+            tracer.span("inner");
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void spanConcurrentTracer(SharedTracer shared, SharedCounter counter) {
+        counter.next(shared).span("operation");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void spanConcurrentTracerContended(SharedTracer shared, SharedCounter counter) {
+        counter.next(shared).span("operation");
+    }
+
+    /**
+     * Một trace hoàn chỉnh: build, 8 spans, end() (silent - không render)
+     */
+    @Benchmark
+    @Threads(1)
+    public Tracer traceEightSpans() {
+        Tracer tracer = newTracer(false);
+        for (int i = 0; i < 8; i++) {
+            tracer.span("operation");
+        }
+        tracer.end();
+        return tracer;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Tracer traceEightSpansMultiThreaded() {
+        return traceEightSpans();
+    }
+}
@@ -0,0 +1,61 @@
+package com.leduy.quicktrace.benchmarks;
+
+import com.leduy.quicktrace.Tracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí tạo tracer: caller capture (StackWalker), không capture, disabled và head sampling
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class TracerConstructionBenchmark {
+
+    @Benchmark
+    public Tracer withCallerCapture() {
+        return Tracer.builder("bench").silent(true).build();
+    }
+
+    @Benchmark
+    public Tracer withoutCallerCapture() {
+        return Tracer.builder("bench").silent(true).captureCaller(false).build();
+    }
+
+    @Benchmark
+    public String callerCaptureFormatted() {
+        return Tracer.builder("bench").silent(true).build().getCallerInfo();
+    }
+
+    @Benchmark
+    public Tracer disabled() {
+        return Tracer.builder("bench").enabled(false).build();
+    }
+
+    @Benchmark
+    public Tracer sampledOnePercent() {
+        return Tracer.builder("bench").silent(true).sampleRate(0.01).build();
+    }
+
+    @Benchmark
+    public Tracer concurrent() {
+        return Tracer.builder("bench").silent(true).captureCaller(false).concurrent(true).build();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Tracer withCallerCaptureMultiThreaded() {
+        return withCallerCapture();
+    }
+}
@@ -0,0 +1,273 @@
+package com.leduy.quicktrace;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Ngưỡng "slow" và "ultra fast" học từ latency đã quan sát, thay cho các hằng số cố định:
+ * mỗi (tracer name, span name) có phân phối rolling riêng và span là slow khi lớn hơn percentile
+ * (mặc định p95) của chính lịch sử của nó, ultra fast khi dưới p10. Một cache lookup 50ms và một batch job
+ * 50ms vì vậy được đánh giá khác nhau.
+ *
+ * <pre>{@code
+ * AdaptiveThresholds thresholds = AdaptiveThresholds.builder().build();
+ * Tracer tracer = Tracer.builder("Checkout")
+ *         .adaptiveThresholds(thresholds)          // học tại end(), filter theo lịch sử của từng span
+ *         .showSlowOnly(Duration.ZERO)             // fallback khi span chưa đủ lịch sử
+ *         .customCondition(thresholds.slowTraceCondition(Tracer.DEFAULT_MIN_DURATION))
+ *         .build();
+ * }</pre>
+ *
+ * <p>Phân phối là một {@link RollingHistogram} (dùng chung với {@link TailSamplingSink}), ngưỡng
+ * được tính lại sau mỗi {@value RollingHistogram#RECOMPUTE_EVERY} giá trị và chỉ có hiệu lực khi đã có
+ * {@code minSamples} giá trị; trước đó các hàm trả về -1 để caller dùng ngưỡng cố định. Percentile được nội suy
+ * bên trong bucket của histogram nên khoảng 5% span (với p95) là slow. {@link #accept(Tracer)} chạy trong
+ * {@code end()} nhưng không lock và không allocate theo span. Số tracer/span names bị giới hạn, names vượt quá
+ * không được theo dõi.
+ *
+ * <p>Mỗi (tracer, span) giữ hai histograms ~{@value LatencyHistogram#APPROX_BYTES} bytes, nên worst case
+ * khoảng {@code maxTracerNames x (maxSpanNames + 1) x 8 KB} - ~17 MB với giới hạn mặc định 64 x 32,
+ * ~550 MB với 256 x 256 (xem {@link #getMaxFootprintBytes()}).
+ */
+public class AdaptiveThresholds implements TraceSink {
+
+    private final double slowPercentile;
+    private final double ultraFastPercentile;
+    private final long minSamples;
+    private final long windowNanos;
+    private final int maxTracerNames;
+    private final int maxSpanNames;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, TracerState> tracers = new ConcurrentHashMap<>();
+
+    private AdaptiveThresholds(Builder builder) {
+        this.slowPercentile = builder.slowPercentile;
+        this.ultraFastPercentile = builder.ultraFastPercentile;
+        this.minSamples = builder.minSamples;
+        this.windowNanos = builder.window.toNanos();
+        this.maxTracerNames = builder.maxTracerNames;
+        this.maxSpanNames = builder.maxSpanNames;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Tạo builder để customize thresholds
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class cho AdaptiveThresholds
+     */
+    public static class Builder {
+        private double slowPercentile = 95;
+        private double ultraFastPercentile = 10;
+        private long minSamples = 50;
+        private Duration window = Duration.ofMinutes(10);
+        private int maxTracerNames = 64;
+        private int maxSpanNames = 32;
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * Span từ percentile này (0-100) của lịch sử trở lên là slow
+         */
+        public Builder slowPercentile(double percentile) {
+            if (!(percentile > 0 && percentile < 100)) {
+                throw new IllegalArgumentException("percentile must be in (0, 100): " + percentile);
+            }
+            this.slowPercentile = percentile;
+            return this;
+        }
+
+        /**
+         * Span dưới percentile này (0-100) của lịch sử là ultra fast
+         */
+        public Builder ultraFastPercentile(double percentile) {
+            if (!(percentile > 0 && percentile < 100)) {
+                throw new IllegalArgumentException("percentile must be in (0, 100): " + percentile);
+            }
+            this.ultraFastPercentile = percentile;
+            return this;
+        }
+
+        /**
+         * Số giá trị tối thiểu của một span trước khi ngưỡng adaptive có hiệu lực
+         */
+        public Builder minSamples(long minSamples) {
+            if (minSamples < 1) {
+                throw new IllegalArgumentException("minSamples must be >= 1: " + minSamples);
+            }
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Độ dài mỗi nửa của phân phối rolling - lịch sử cũ hơn 2 windows bị quên
+         */
+        public Builder window(Duration window) {
+            if (window.isNegative() || window.isZero()) {
+                throw new IllegalArgumentException("window must be > 0: " + window);
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Giới hạn số tracer names và số span names mỗi tracer được theo dõi
+         */
+        public Builder limits(int maxTracerNames, int maxSpanNames) {
+            if (maxTracerNames <= 0) {
+                throw new IllegalArgumentException("maxTracerNames must be > 0: " + maxTracerNames);
+            }
+            if (maxSpanNames <= 0) {
+                throw new IllegalArgumentException("maxSpanNames must be > 0: " + maxSpanNames);
+            }
+            this.maxTracerNames = maxTracerNames;
+            this.maxSpanNames = maxSpanNames;
+            return this;
+        }
+
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public AdaptiveThresholds build() {
+            return new AdaptiveThresholds(this);
+        }
+    }
+
+    /**
+     * State của total và của từng span trong một tracer name
+     */
+    private static final class TracerState {
+        final RollingHistogram total;
+        final ConcurrentHashMap<String, RollingHistogram> spans = new ConcurrentHashMap<>();
+
+        TracerState(RollingHistogram total) {
+            this.total = total;
+        }
+    }
+
+    // Thứ tự percentiles trong RollingHistogram
+    private static final int SLOW = 0;
+    private static final int ULTRA_FAST = 1;
+
+    private RollingHistogram newHistogram() {
+        return new RollingHistogram(windowNanos, minSamples, clock, slowPercentile, ultraFastPercentile);
+    }
+
+    /**
+     * Học từ một trace đã kết thúc: total và duration của từng span
+     */
+    @Override
+    public void accept(Tracer trace) {
+        TracerState tracer = tracerState(trace.getName(), true);
+        if (tracer == null) {
+            return;
+        }
+        tracer.total.record(trace.getTotalNanos());
+
+        // Bỏ span "End" cuối cùng giống các renderers
+        SpanBuffer spans = trace.spans();
+        for (int i = 0; i < spans.size() - 1; i++) {
+            RollingHistogram latency = spanState(tracer, spans.name(i), true);
+            if (latency != null) {
+                latency.record(spans.durationNanos(i));
+            }
+        }
+    }
+
+    // Tên null dùng key TraceAggregator.NULL_NAME: ConcurrentHashMap không nhận key null, và span tên null
+    // không được lẫn với total của tracer
+    private TracerState tracerState(String tracerName, boolean create) {
+        tracerName = TraceAggregator.keyOf(tracerName);
+        TracerState state = tracers.get(tracerName);
+        if (state != null || !create || tracers.size() >= maxTracerNames) {
+            return state;
+        }
+        return tracers.computeIfAbsent(tracerName, key -> new TracerState(newHistogram()));
+    }
+
+    private RollingHistogram spanState(TracerState tracer, String spanName, boolean create) {
+        spanName = TraceAggregator.keyOf(spanName);
+        RollingHistogram state = tracer.spans.get(spanName);
+        if (state != null || !create || tracer.spans.size() >= maxSpanNames) {
+            return state;
+        }
+        return tracer.spans.computeIfAbsent(spanName, key -> newHistogram());
+    }
+
+    private RollingHistogram find(String tracerName, String spanName) {
+        TracerState tracer = tracerState(tracerName, false);
+        return tracer != null ? spanState(tracer, spanName, false) : null;
+    }
+
+    /**
+     * Span có duration lớn hơn giá trị này là slow. -1 nếu span chưa đủ lịch sử
+     */
+    public long getSlowThresholdNanos(String tracerName, String spanName) {
+        RollingHistogram state = find(tracerName, spanName);
+        return state != null ? state.threshold(SLOW) : -1;
+    }
+
+    /**
+     * Span có duration < giá trị này là ultra fast. -1 nếu span chưa đủ lịch sử
+     */
+    public long getUltraFastThresholdNanos(String tracerName, String spanName) {
+        RollingHistogram state = find(tracerName, spanName);
+        return state != null ? state.threshold(ULTRA_FAST) : -1;
+    }
+
+    /**
+     * Total duration lớn hơn giá trị này là trace chậm của tracer name đó. -1 nếu chưa đủ lịch sử
+     */
+    public long getSlowTraceThresholdNanos(String tracerName) {
+        TracerState tracer = tracerState(tracerName, false);
+        return tracer != null ? tracer.total.threshold(SLOW) : -1;
+    }
+
+    /**
+     * Slow theo lịch sử của span, hoặc theo fallbackNanos khi span chưa đủ lịch sử
+     */
+    public boolean isSlow(String tracerName, String spanName, long nanos, long fallbackNanos) {
+        long threshold = getSlowThresholdNanos(tracerName, spanName);
+        return threshold >= 0 ? nanos > threshold : nanos >= fallbackNanos;
+    }
+
+    /**
+     * Ultra fast theo lịch sử của span, hoặc theo fallbackNanos khi span chưa đủ lịch sử
+     */
+    public boolean isUltraFast(String tracerName, String spanName, long nanos, long fallbackNanos) {
+        long threshold = getUltraFastThresholdNanos(tracerName, spanName);
+        return nanos < (threshold >= 0 ? threshold : fallbackNanos);
+    }
+
+    /**
+     * Print condition: in trace khi total lớn hơn ngưỡng slow của tracer name đó, hoặc khi total >= fallback
+     * nếu chưa đủ lịch sử. Dùng với {@link Tracer.Builder#customCondition(Predicate)}
+     */
+    public Predicate<Tracer> slowTraceCondition(Duration fallback) {
+        long fallbackNanos = fallback.toNanos();
+        return tracer -> {
+            long threshold = getSlowTraceThresholdNanos(tracer.getName());
+            long total = tracer.getTotalNanos();
+            return threshold >= 0 ? total > threshold : total >= fallbackNanos;
+        };
+    }
+
+    /**
+     * Memory tối đa (bytes, ước lượng) của các histograms khi mọi giới hạn đã đầy:
+     * mỗi tracer có total và span names, mỗi cái gồm hai windows
+     */
+    public long getMaxFootprintBytes() {
+        return (long) maxTracerNames * (maxSpanNames + 1) * 2 * LatencyHistogram.APPROX_BYTES;
+    }
+
+    public double getSlowPercentile() { return slowPercentile; }
+    public double getUltraFastPercentile() { return ultraFastPercentile; }
+}
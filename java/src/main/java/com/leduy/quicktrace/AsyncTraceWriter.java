@@ -0,0 +1,281 @@
+package com.leduy.quicktrace;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ghi output của các trace đã kết thúc trên một background thread.
+ * Tracer.end() chỉ đưa trace vào bounded queue; writer thread giao từng batch cho delegate sink
+ * (mặc định render và print ra console), nên request threads không còn phải render hay
+ * tranh chấp lock của System.out.
+ *
+ * <p>Tracer đã được giao cho writer không nên được ghi thêm span sau end().
+ */
+public class AsyncTraceWriter implements TraceSink {
+
+    /**
+     * Hành vi khi queue đầy
+     */
+    public enum OverflowPolicy {
+        /**
+         * Bỏ trace mới và tăng dropped counter - không bao giờ block caller
+         */
+        DROP,
+
+        /**
+         * Block caller cho tới khi queue có chỗ trống
+         */
+        BLOCK
+    }
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final BlockingQueue<Tracer> queue;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final TraceSink delegate;
+    private final long closeTimeoutMillis;
+    private final Thread worker;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final Object flushLock = new Object();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private AsyncTraceWriter(Builder builder) {
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.batchSize = builder.batchSize;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.delegate = builder.delegate;
+        this.closeTimeoutMillis = builder.closeTimeout.toMillis();
+        this.worker = new Thread(this::runWorker, builder.threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Tạo builder để customize writer
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class cho AsyncTraceWriter
+     */
+    public static class Builder {
+        private int capacity = 1024;
+        private int batchSize = 64;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+        private TraceSink delegate = StdoutTraceSink.INSTANCE;
+        private String threadName = "quicktrace-async-writer";
+        private Duration closeTimeout = Duration.ofSeconds(10);
+
+        public Builder capacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be > 0: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder overflowPolicy(OverflowPolicy policy) {
+            this.overflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sink thực sự nhận các batch trên writer thread
+         */
+        public Builder delegate(TraceSink delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Shortcut cho delegate(new StdoutTraceSink(out))
+         */
+        public Builder output(PrintStream out) {
+            return delegate(new StdoutTraceSink(out));
+        }
+
+        public Builder threadName(String threadName) {
+            this.threadName = threadName;
+            return this;
+        }
+
+        /**
+         * Thời gian tối đa close() chờ writer thread ghi nốt queue trước khi bỏ phần còn lại
+         */
+        public Builder closeTimeout(Duration closeTimeout) {
+            if (closeTimeout.isNegative() || closeTimeout.isZero()) {
+                throw new IllegalArgumentException("closeTimeout must be > 0: " + closeTimeout);
+            }
+            this.closeTimeout = closeTimeout;
+            return this;
+        }
+
+        public AsyncTraceWriter build() {
+            return new AsyncTraceWriter(this);
+        }
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        submit(trace);
+    }
+
+    /**
+     * Đưa một trace đã kết thúc vào queue. Trả về false nếu trace bị drop
+     */
+    public boolean submit(Tracer tracer) {
+        if (closed.get()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        boolean accepted;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(tracer);
+                accepted = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+        } else {
+            accepted = queue.offer(tracer);
+        }
+        // close() có thể đã drain lần cuối giữa lúc check closed và lúc offer - lấy lại trace chưa được ghi
+        if (accepted && closed.get() && queue.remove(tracer)) {
+            accepted = false;
+        }
+
+        if (accepted) {
+            submitted.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+        return accepted;
+    }
+
+    private void runWorker() {
+        List<Tracer> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            Tracer first;
+            try {
+                first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Chỉ close() quá closeTimeout mới interrupt writer thread - lúc đó queue đã được bỏ
+                first = queue.poll();
+            }
+
+            if (first == null) {
+                if (closed.get() && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Ghi mọi trace còn trong queue trên thread hiện tại
+     */
+    private void drainRemaining() {
+        List<Tracer> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Tracer> batch) {
+        try {
+            delegate.acceptBatch(batch);
+            written.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+        }
+
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+
+    /**
+     * Block cho tới khi mọi trace đã submit trước lời gọi này được ghi xong
+     */
+    public void flush() throws InterruptedException {
+        long target = submitted.get();
+        synchronized (flushLock) {
+            while (written.get() + failed.get() < target && worker.isAlive()) {
+                flushLock.wait(POLL_INTERVAL_MS);
+            }
+        }
+    }
+
+    /**
+     * Ngừng nhận trace mới, ghi nốt queue hiện tại, dừng writer thread rồi đóng delegate.
+     * Nếu delegate kẹt quá closeTimeout, các trace còn trong queue bị tính là failed và writer thread bị interrupt
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        // Không interrupt worker ngay: delegate có thể đang ghi qua interruptible channel (FileChannel, HttpClient)
+        // và sẽ lỗi ClosedByInterruptException. Worker thấy closed sau tối đa POLL_INTERVAL_MS
+        joinWorker();
+        if (worker.isAlive()) {
+            List<Tracer> abandoned = new ArrayList<>();
+            failed.addAndGet(queue.drainTo(abandoned));
+            worker.interrupt();
+            joinWorker();
+        } else {
+            // Trace được offer sau lần check cuối của worker
+            drainRemaining();
+        }
+        delegate.close();
+    }
+
+    private void joinWorker() {
+        try {
+            worker.join(closeTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Counters
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getWrittenCount() { return written.get(); }
+    public long getFailedCount() { return failed.get(); }
+    public int getQueueSize() { return queue.size(); }
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+}
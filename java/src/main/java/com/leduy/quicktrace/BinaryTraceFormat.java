@@ -0,0 +1,73 @@
+package com.leduy.quicktrace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout của binary trace log dùng chung cho BinaryTraceLogSink và BinaryTraceLogReader.
+ *
+ * <pre>
+ * header : int32 MAGIC | int32 VERSION
+ * record : byte tag | body
+ *   NAME  : varint nameId | varint (byteLength + 1) | UTF-8 bytes   (0 = tên null, không có bytes)
+ *   TRACE : varint tracerNameId | int64 startEpochNanos | varint totalNanos | varint threadId
+ *           | byte flags | varint spanCount
+ *           | spanCount x (varint nameId | varint startOffsetNanos | varint durationNanos
+ *                          | varint (parentIndex + 1) | [varint threadId nếu FLAG_SPAN_THREADS])
+ *   END   : tag 0 - phần còn lại của file (zero-filled)
+ * </pre>
+ *
+ * Total được ghi riêng vì span cha đã bao gồm thời gian của span con và span của concurrent tracer
+ * chồng lên nhau - tổng durations không phải total của trace.
+ *
+ * Tên (tracer và span) được dictionary-encode: lần đầu xuất hiện ghi một record NAME,
+ * các record TRACE sau đó chỉ tham chiếu id. Tag của record được ghi sau cùng,
+ * nên reader không bao giờ thấy một record viết dở.
+ */
+final class BinaryTraceFormat {
+
+    static final int MAGIC = 0x5154424C; // "QTBL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    static final byte TAG_END = 0;
+    static final byte TAG_NAME = 1;
+    static final byte TAG_TRACE = 2;
+
+    // Mỗi span có thread id riêng (concurrent tracer); không có thì mọi span thuộc thread của trace
+    static final int FLAG_SPAN_THREADS = 1;
+
+    static final int MAX_VARINT_SIZE = 10;
+
+    private BinaryTraceFormat() {
+    }
+
+    /**
+     * Ghi unsigned LEB128 varint
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Đọc unsigned LEB128 varint tại vị trí hiện tại của buffer
+     */
+    static long getVarint(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+            if (shift >= 64) {
+                throw new IllegalStateException("Malformed varint at position " + (buffer.position() - 1));
+            }
+        }
+    }
+}
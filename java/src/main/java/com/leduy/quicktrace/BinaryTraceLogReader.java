@@ -0,0 +1,276 @@
+package com.leduy.quicktrace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Đọc binary trace log do BinaryTraceLogSink ghi ra.
+ * File được memory-map và decode trực tiếp trên mapped buffer; {@link #next()} trả về cùng một
+ * {@link Record} (flyweight) cho mọi record, chỉ hợp lệ tới lần gọi next() tiếp theo.
+ *
+ * <pre>
+ * try (BinaryTraceLogReader reader = BinaryTraceLogReader.open(path)) {
+ *     BinaryTraceLogReader.Record record;
+ *     while ((record = reader.next()) != null) {
+ *         while (record.nextSpan()) {
+ *             record.getSpanName(); record.getSpanDurationNanos(); record.getSpanParent();
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+public class BinaryTraceLogReader implements AutoCloseable {
+
+    private static final int WINDOW_SIZE = 256 << 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private MappedByteBuffer buffer;
+    private ByteBuffer spanCursor;
+    private long bufferOffset;
+    private long endOffset = -1;
+    private final int version;
+
+    private final List<String> names = new ArrayList<>();
+    private final Record record = new Record();
+
+    private BinaryTraceLogReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        if (fileSize < BinaryTraceFormat.HEADER_SIZE) {
+            channel.close();
+            throw new IOException("Not a QuickTrace binary log (too short): " + file);
+        }
+        map(0);
+        if (buffer.getInt() != BinaryTraceFormat.MAGIC) {
+            channel.close();
+            throw new IOException("Not a QuickTrace binary log (bad magic): " + file);
+        }
+        this.version = buffer.getInt();
+        if (version != BinaryTraceFormat.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported QuickTrace binary log version " + version + ": " + file);
+        }
+    }
+
+    public static BinaryTraceLogReader open(Path file) throws IOException {
+        return new BinaryTraceLogReader(file);
+    }
+
+    private void map(long offset) throws IOException {
+        long length = Math.min(WINDOW_SIZE, fileSize - offset);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        spanCursor = buffer.duplicate();
+        bufferOffset = offset;
+    }
+
+    /**
+     * Đọc record TRACE tiếp theo, hoặc null khi hết dữ liệu.
+     * Các record NAME được xử lý nội bộ để cập nhật dictionary.
+     */
+    public Record next() {
+        if (endOffset >= 0) {
+            return null;
+        }
+        try {
+            while (true) {
+                int mark = buffer.position();
+                try {
+                    if (!buffer.hasRemaining()) {
+                        if (bufferOffset + mark >= fileSize) {
+                            endOffset = fileSize;
+                            return null;
+                        }
+                        map(bufferOffset + mark);
+                        continue;
+                    }
+                    byte tag = buffer.get();
+                    if (tag == BinaryTraceFormat.TAG_END) {
+                        endOffset = bufferOffset + mark;
+                        return null;
+                    } else if (tag == BinaryTraceFormat.TAG_NAME) {
+                        readName();
+                    } else if (tag == BinaryTraceFormat.TAG_TRACE) {
+                        readTrace();
+                        return record;
+                    } else {
+                        throw new IllegalStateException("Unknown record tag " + tag + " at offset "
+                                + (bufferOffset + mark) + " in " + file);
+                    }
+                } catch (BufferUnderflowException e) {
+                    // Record nằm vắt qua cuối window - map lại từ đầu record
+                    if (bufferOffset + buffer.limit() >= fileSize) {
+                        // Đuôi file bị cắt dở: coi như hết dữ liệu
+                        endOffset = bufferOffset + mark;
+                        return null;
+                    }
+                    map(bufferOffset + mark);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+    }
+
+    private void readName() {
+        int id = (int) BinaryTraceFormat.getVarint(buffer);
+        // Length được ghi +1; 0 là tên null
+        int length = (int) BinaryTraceFormat.getVarint(buffer) - 1;
+        String name = null;
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (id != names.size()) {
+            throw new IllegalStateException("Out of order name id " + id + " in " + file);
+        }
+        names.add(name);
+    }
+
+    private void readTrace() {
+        int tracerNameId = (int) BinaryTraceFormat.getVarint(buffer);
+        long startEpochNanos = buffer.getLong();
+        long totalNanos = BinaryTraceFormat.getVarint(buffer);
+        long threadId = BinaryTraceFormat.getVarint(buffer);
+        int flags = buffer.get();
+        int spanCount = (int) BinaryTraceFormat.getVarint(buffer);
+        int spansPosition = buffer.position();
+
+        // Bỏ qua phần spans để buffer trỏ tới record kế tiếp
+        int columns = (flags & BinaryTraceFormat.FLAG_SPAN_THREADS) != 0 ? 5 : 4;
+        for (int i = 0; i < spanCount * columns; i++) {
+            BinaryTraceFormat.getVarint(buffer);
+        }
+
+        record.reset(tracerNameId, startEpochNanos, totalNanos, threadId, flags, spanCount, spansPosition);
+    }
+
+    /**
+     * Version của file đang đọc
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Offset ngay sau record cuối cùng (chỉ có giá trị sau khi next() trả về null)
+     */
+    long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Dictionary tên đã đọc, index = name id
+     */
+    List<String> getNames() {
+        return names;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close " + file, e);
+        }
+    }
+
+    /**
+     * Flyweight cho một record TRACE, decode trực tiếp trên mapped buffer
+     */
+    public final class Record {
+        private int tracerNameId;
+        private long startEpochNanos;
+        private long totalNanos;
+        private long threadId;
+        private int flags;
+        private int spanCount;
+
+        private int spanIndex;
+        private int spanNameId;
+        private long spanStartOffsetNanos;
+        private long spanDurationNanos;
+        private int spanParent;
+        private long spanThreadId;
+
+        private void reset(int tracerNameId, long startEpochNanos, long totalNanos, long threadId, int flags,
+                int spanCount, int spansPosition) {
+            this.tracerNameId = tracerNameId;
+            this.startEpochNanos = startEpochNanos;
+            this.totalNanos = totalNanos;
+            this.threadId = threadId;
+            this.flags = flags;
+            this.spanCount = spanCount;
+            this.spanIndex = -1;
+            this.spanStartOffsetNanos = 0;
+            this.spanDurationNanos = 0;
+            spanCursor.limit(buffer.limit());
+            spanCursor.position(spansPosition);
+        }
+
+        public int getTracerNameId() { return tracerNameId; }
+        public String getTracerName() { return names.get(tracerNameId); }
+        public long getStartEpochNanos() { return startEpochNanos; }
+        public int getSpanCount() { return spanCount; }
+
+        /**
+         * Total duration của trace (từ lúc tạo tới end())
+         */
+        public long getTotalNanos() { return totalNanos; }
+
+        /**
+         * Thread đã tạo tracer
+         */
+        public long getThreadId() { return threadId; }
+
+        /**
+         * Chuyển tới span kế tiếp. Trả về false khi đã hết spans
+         */
+        public boolean nextSpan() {
+            if (spanIndex + 1 >= spanCount) {
+                return false;
+            }
+            spanIndex++;
+            spanNameId = (int) BinaryTraceFormat.getVarint(spanCursor);
+            spanStartOffsetNanos = BinaryTraceFormat.getVarint(spanCursor);
+            spanDurationNanos = BinaryTraceFormat.getVarint(spanCursor);
+            spanParent = (int) BinaryTraceFormat.getVarint(spanCursor) - 1;
+            spanThreadId = (flags & BinaryTraceFormat.FLAG_SPAN_THREADS) != 0
+                    ? BinaryTraceFormat.getVarint(spanCursor)
+                    : threadId;
+            return true;
+        }
+
+        public int getSpanNameId() { return spanNameId; }
+        public String getSpanName() { return names.get(spanNameId); }
+        public long getSpanDurationNanos() { return spanDurationNanos; }
+
+        /**
+         * Thời điểm bắt đầu của span tính từ lúc bắt đầu trace
+         */
+        public long getSpanStartOffsetNanos() { return spanStartOffsetNanos; }
+
+        /**
+         * Index của span cha trong record này, -1 cho span ở root
+         */
+        public int getSpanParent() { return spanParent; }
+
+        /**
+         * Thread đã ghi span
+         */
+        public long getSpanThreadId() { return spanThreadId; }
+    }
+}
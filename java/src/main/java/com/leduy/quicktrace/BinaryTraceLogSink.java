@@ -0,0 +1,215 @@
+package com.leduy.quicktrace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append các trace đã kết thúc vào một memory-mapped file theo layout binary compact
+ * (xem {@link BinaryTraceFormat}). Không render text, không tạo JSON.
+ * File được map theo từng chunk; khi chunk hiện tại hết chỗ, chunk kế tiếp được map ngay sau đó.
+ * Mở lại một file đã có sẽ tiếp tục append sau record cuối cùng.
+ */
+public class BinaryTraceLogSink implements TraceSink {
+
+    private static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+    private static final byte[] NULL_NAME = new byte[0];
+
+    private final Path file;
+    private final int chunkSize;
+    private final FileChannel channel;
+
+    private MappedByteBuffer buffer;
+    private long bufferOffset;
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private int[] spanNameIds = new int[64];
+    private long traceCount;
+    private boolean closed;
+
+    public BinaryTraceLogSink(Path file) {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BinaryTraceLogSink(Path file, int chunkSize) {
+        if (chunkSize < 1024) {
+            throw new IllegalArgumentException("chunkSize must be >= 1024: " + chunkSize);
+        }
+        this.file = file;
+        this.chunkSize = chunkSize;
+        try {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                remap(0, chunkSize);
+                buffer.putInt(BinaryTraceFormat.MAGIC);
+                buffer.putInt(BinaryTraceFormat.VERSION);
+            } else {
+                resume();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open binary trace log " + file, e);
+        }
+    }
+
+    /**
+     * Đọc file hiện có để khôi phục dictionary và vị trí append
+     */
+    private void resume() throws IOException {
+        long end;
+        try (BinaryTraceLogReader reader = BinaryTraceLogReader.open(file)) {
+            while (reader.next() != null) {
+                traceCount++;
+            }
+            end = reader.getEndOffset();
+            List<String> names = reader.getNames();
+            for (int i = 0; i < names.size(); i++) {
+                nameIds.put(names.get(i), i);
+            }
+        }
+        remap(end, chunkSize);
+    }
+
+    private void remap(long offset, int size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+        bufferOffset = offset;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            remap(bufferOffset + buffer.position(), Math.max(chunkSize, bytes));
+        }
+    }
+
+    @Override
+    public synchronized void accept(Tracer trace) {
+        if (closed) {
+            throw new IllegalStateException("Binary trace log is closed: " + file);
+        }
+        try {
+            SpanBuffer spans = trace.spans();
+            int spanCount = spans.size();
+            if (spanNameIds.length < spanCount) {
+                spanNameIds = new int[Math.max(spanCount, spanNameIds.length << 1)];
+            }
+
+            // Đăng ký tên mới trước (record NAME), rồi mới ghi record TRACE chỉ chứa ids
+            int tracerNameId = nameId(trace.getName());
+            for (int i = 0; i < spanCount; i++) {
+                spanNameIds[i] = nameId(spans.name(i));
+            }
+
+            int maxSize = 2 + 4 * BinaryTraceFormat.MAX_VARINT_SIZE + Long.BYTES
+                    + spanCount * 5 * BinaryTraceFormat.MAX_VARINT_SIZE;
+            ensureCapacity(maxSize);
+
+            boolean spanThreads = spans.hasThreads();
+            long traceStartNanos = trace.getStartNanos();
+            int start = buffer.position();
+            buffer.position(start + 1);
+            BinaryTraceFormat.putVarint(buffer, tracerNameId);
+            buffer.putLong(trace.getStartEpochNanos());
+            BinaryTraceFormat.putVarint(buffer, trace.getTotalNanos());
+            BinaryTraceFormat.putVarint(buffer, trace.getThreadId());
+            buffer.put((byte) (spanThreads ? BinaryTraceFormat.FLAG_SPAN_THREADS : 0));
+            BinaryTraceFormat.putVarint(buffer, spanCount);
+            for (int i = 0; i < spanCount; i++) {
+                BinaryTraceFormat.putVarint(buffer, spanNameIds[i]);
+                BinaryTraceFormat.putVarint(buffer, Math.max(0, spans.startNanos(i) - traceStartNanos));
+                BinaryTraceFormat.putVarint(buffer, spans.durationNanos(i));
+                BinaryTraceFormat.putVarint(buffer, spans.parent(i) + 1);
+                if (spanThreads) {
+                    BinaryTraceFormat.putVarint(buffer, spans.threadId(i));
+                }
+            }
+            // Tag ghi sau cùng: record chỉ "xuất hiện" khi đã đầy đủ
+            buffer.put(start, BinaryTraceFormat.TAG_TRACE);
+            traceCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append trace to " + file, e);
+        }
+    }
+
+    private int nameId(String name) throws IOException {
+        Integer id = nameIds.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = nameIds.size();
+        // Tên null (như các output style khác chấp nhận) được ghi với length 0
+        byte[] bytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : NULL_NAME;
+        ensureCapacity(1 + 2 * BinaryTraceFormat.MAX_VARINT_SIZE + bytes.length);
+
+        int start = buffer.position();
+        buffer.position(start + 1);
+        BinaryTraceFormat.putVarint(buffer, newId);
+        BinaryTraceFormat.putVarint(buffer, name != null ? bytes.length + 1 : 0);
+        buffer.put(bytes);
+        buffer.put(start, BinaryTraceFormat.TAG_NAME);
+
+        nameIds.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * Đẩy dữ liệu đã map xuống storage
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long end = bufferOffset + buffer.position();
+        buffer.force();
+        try {
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                // Một số OS không cho truncate file đang được map - phần đuôi zero vẫn là END hợp lệ
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close binary trace log " + file, e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Số trace trong file (bao gồm các trace đã có trước khi mở)
+     */
+    public synchronized long getTraceCount() {
+        return traceCount;
+    }
+
+    /**
+     * Số tên (tracer + span) khác nhau trong dictionary
+     */
+    public synchronized int getNameCount() {
+        return nameIds.size();
+    }
+
+    /**
+     * Kích thước dữ liệu đã ghi (bytes)
+     */
+    public synchronized long getWrittenBytes() {
+        return bufferOffset + buffer.position();
+    }
+}
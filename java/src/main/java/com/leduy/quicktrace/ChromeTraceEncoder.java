@@ -0,0 +1,135 @@
+package com.leduy.quicktrace;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Encode trace thành Chrome Trace Event format (mở bằng Perfetto hoặc chrome://tracing).
+ *
+ * <p>Mỗi trace là một complete event ({@code "ph":"X"}) cho toàn bộ trace cùng một complete event cho mỗi span,
+ * với {@code ts}/{@code dur} tính bằng microseconds (phần lẻ giữ độ chính xác nanoseconds) và {@code tid} là
+ * thread đã ghi span - spans của concurrent tracer thành timeline riêng cho từng thread. Span lồng nhau được
+ * viewer xếp chồng theo thời gian trên cùng thread.
+ */
+public final class ChromeTraceEncoder {
+
+    /**
+     * Process id ghi vào mọi event
+     */
+    static final long PID = ProcessHandle.current().pid();
+
+    private ChromeTraceEncoder() {
+    }
+
+    /**
+     * Ghi trace thành một document {@code {"traceEvents":[...]}} ra Writer
+     */
+    public static void write(Tracer tracer, Writer out) throws IOException {
+        try (JsonGenerator generator = JsonTraceEncoder.FACTORY.createGenerator(out)) {
+            writeDocument(tracer, generator);
+        }
+    }
+
+    /**
+     * Ghi trace thành một document {@code {"traceEvents":[...]}} ra OutputStream (UTF-8)
+     */
+    public static void write(Tracer tracer, OutputStream out) throws IOException {
+        try (JsonGenerator generator = JsonTraceEncoder.FACTORY.createGenerator(out)) {
+            writeDocument(tracer, generator);
+        }
+    }
+
+    /**
+     * Encode trace nối thẳng vào StringBuilder (dùng cho OutputStyle.CHROME_TRACE)
+     */
+    static void appendTo(Tracer tracer, StringBuilder sb) {
+        try {
+            write(tracer, new JsonTraceEncoder.StringBuilderWriter(sb));
+        } catch (IOException e) {
+            // StringBuilderWriter không throw IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeDocument(Tracer tracer, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("traceEvents");
+        writeEvents(tracer, generator, new TimestampWriter());
+        generator.writeEndArray();
+        generator.writeStringField("displayTimeUnit", "ns");
+        generator.writeEndObject();
+    }
+
+    /**
+     * Ghi các events của trace, mỗi event là một JSON object (không có mảng bao ngoài)
+     */
+    static void writeEvents(Tracer tracer, JsonGenerator generator, TimestampWriter timestamps) throws IOException {
+        long startEpochNanos = tracer.getStartEpochNanos();
+        long startNanos = tracer.getStartNanos();
+        long tracerThread = tracer.getThreadId();
+        SpanBuffer spans = tracer.spans();
+
+        generator.writeStartObject();
+        generator.writeStringField("name", tracer.getName());
+        generator.writeStringField("cat", "trace");
+        generator.writeStringField("ph", "X");
+        timestamps.write(generator, "ts", startEpochNanos);
+        timestamps.write(generator, "dur", tracer.getTotalNanos());
+        generator.writeNumberField("pid", PID);
+        generator.writeNumberField("tid", tracerThread);
+        String callerInfo = tracer.getCallerInfo();
+        if (!callerInfo.equals(Tracer.UNKNOWN_CALLER)) {
+            generator.writeObjectFieldStart("args");
+            generator.writeStringField("caller", callerInfo);
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+
+        // Bỏ span "End"
+        for (int i = 0; i < spans.size() - 1; i++) {
+            generator.writeStartObject();
+            generator.writeStringField("name", spans.name(i));
+            generator.writeStringField("cat", tracer.getName());
+            generator.writeStringField("ph", "X");
+            timestamps.write(generator, "ts", startEpochNanos + (spans.startNanos(i) - startNanos));
+            timestamps.write(generator, "dur", spans.durationNanos(i));
+            generator.writeNumberField("pid", PID);
+            generator.writeNumberField("tid", spans.hasThreads() ? spans.threadId(i) : tracerThread);
+            if (spans.hasHierarchy()) {
+                generator.writeObjectFieldStart("args");
+                generator.writeNumberField("self_ns", spans.selfNanos(i));
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Ghi nanoseconds thành microseconds dạng số thập phân ({@code 1234.567}) qua scratch buffer,
+     * không qua double để timestamp epoch không mất phần nanoseconds
+     */
+    static final class TimestampWriter {
+        private final StringBuilder text = new StringBuilder(24);
+        private char[] chars = new char[24];
+
+        void write(JsonGenerator generator, String field, long nanos) throws IOException {
+            text.setLength(0);
+            text.append(nanos / 1000);
+            long fraction = Math.abs(nanos % 1000);
+            if (fraction != 0) {
+                text.append('.').append((char) ('0' + fraction / 100)).append((char) ('0' + fraction / 10 % 10))
+                        .append((char) ('0' + fraction % 10));
+            }
+            int length = text.length();
+            if (length > chars.length) {
+                chars = new char[length];
+            }
+            text.getChars(0, length, chars, 0);
+            generator.writeFieldName(field);
+            generator.writeNumber(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.leduy.quicktrace;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Stream nhiều trace vào một file Chrome Trace Event (JSON Array Format) để mở trong Perfetto hoặc
+ * chrome://tracing. Events được ghi và flush ngay khi trace kết thúc; {@code ]} đóng mảng được ghi khi
+ * {@link #close()} - file chưa đóng (process bị kill) vẫn mở được vì viewer chấp nhận mảng thiếu {@code ]}.
+ */
+public class ChromeTraceSink implements TraceSink {
+
+    private static final byte[] HEADER = "[\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FOOTER = "\n]\n".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out;
+    private final JsonGenerator generator;
+    private final ChromeTraceEncoder.TimestampWriter timestamps = new ChromeTraceEncoder.TimestampWriter();
+    private boolean closed;
+
+    /**
+     * Tạo (hoặc ghi đè) file trace
+     */
+    public ChromeTraceSink(Path file) {
+        this(open(file));
+    }
+
+    public ChromeTraceSink(OutputStream out) {
+        this.out = out;
+        try {
+            out.write(HEADER);
+            this.generator = JsonTraceEncoder.FACTORY.createGenerator(out);
+            // Các events là root values liên tiếp của cùng một generator
+            generator.setRootValueSeparator(new SerializedString(",\n"));
+            writeProcessName();
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start Chrome trace", e);
+        }
+    }
+
+    private static OutputStream open(Path file) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            return new BufferedOutputStream(Files.newOutputStream(file), 65536);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open Chrome trace file " + file, e);
+        }
+    }
+
+    private void writeProcessName() throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", "process_name");
+        generator.writeStringField("ph", "M");
+        generator.writeNumberField("pid", ChromeTraceEncoder.PID);
+        generator.writeObjectFieldStart("args");
+        generator.writeStringField("name", "QuickTrace");
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    @Override
+    public synchronized void accept(Tracer trace) {
+        try {
+            ChromeTraceEncoder.writeEvents(trace, generator, timestamps);
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write Chrome trace", e);
+        }
+    }
+
+    @Override
+    public synchronized void acceptBatch(List<Tracer> traces) {
+        try {
+            for (int i = 0; i < traces.size(); i++) {
+                ChromeTraceEncoder.writeEvents(traces.get(i), generator, timestamps);
+            }
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write Chrome traces", e);
+        }
+    }
+
+    /**
+     * Đóng mảng events và đóng output
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            generator.close();
+            out.write(FOOTER);
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close Chrome trace", e);
+        }
+    }
+}
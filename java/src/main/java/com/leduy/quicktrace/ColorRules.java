@@ -2,7 +2,9 @@ package com.leduy.quicktrace;
 
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Định nghĩa màu sắc và quy tắc ANSI cho cross-platform compatibility
@@ -98,52 +100,216 @@ public class ColorRules {
         new PercentageColorRule(0, CYAN, "Minimal")          // < 5%
     );
     
+    // Bảng đã compile từ rule lists ở trên - thay được bằng custom rules lúc runtime
+    private static volatile DurationRuleTable durationRules = DurationRuleTable.compile(DURATION_COLOR_RULES);
+    private static volatile PercentageRuleTable progressRules = PercentageRuleTable.compile(PROGRESS_COLOR_RULES);
+    
     /**
-     * Tìm màu cho duration dựa trên rules
+     * Rules cho duration đã compile thành mảng threshold nanos tăng dần.
+     * Lookup là binary search nên giữ được semantics "rule đầu tiên trong list có threshold <= value"
+     * kể cả khi list không được sắp xếp.
      */
-    public static String getSpanColor(Duration duration) {
-        for (ColorRule rule : DURATION_COLOR_RULES) {
-            if (duration.compareTo(rule.getThreshold()) >= 0) {
-                return rule.getColor();
+    public static final class DurationRuleTable {
+        private final long[] thresholds;
+        private final String[] colors;
+        private final String[] names;
+        
+        private DurationRuleTable(long[] thresholds, String[] colors, String[] names) {
+            this.thresholds = thresholds;
+            this.colors = colors;
+            this.names = names;
+        }
+        
+        /**
+         * Compile list rules - list rỗng cho bảng luôn trả về fallback
+         */
+        public static DurationRuleTable compile(List<ColorRule> rules) {
+            int n = rules.size();
+            Integer[] order = sortedOrder(n, (i, j) -> Long.compare(
+                    toNanos(rules.get(i).getThreshold()), toNanos(rules.get(j).getThreshold())));
+            
+            long[] thresholds = new long[n];
+            String[] colors = new String[n];
+            String[] names = new String[n];
+            int winner = Integer.MAX_VALUE;
+            for (int k = 0; k < n; k++) {
+                // Rule thắng cho value trong [thresholds[k], thresholds[k+1]) là rule có index nhỏ nhất
+                // trong các rules có threshold <= thresholds[k]
+                winner = Math.min(winner, order[k]);
+                ColorRule rule = rules.get(winner);
+                thresholds[k] = toNanos(rules.get(order[k]).getThreshold());
+                colors[k] = rule.getColor();
+                names[k] = rule.getName();
+            }
+            return new DurationRuleTable(thresholds, colors, names);
+        }
+        
+        private int indexOf(long nanos) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (nanos >= thresholds[mid]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
             }
+            return low - 1;
+        }
+        
+        public String color(long nanos) {
+            int index = indexOf(nanos);
+            return index >= 0 ? colors[index] : WHITE;
+        }
+        
+        public String name(long nanos) {
+            int index = indexOf(nanos);
+            return index >= 0 ? names[index] : "Unknown";
         }
-        return WHITE; // Fallback
     }
     
     /**
-     * Tìm màu cho percentage dựa trên rules
+     * Rules cho phần trăm đã compile thành mảng threshold tăng dần. NaN không match rule nào
      */
-    public static String getProgressBarColor(double percentage) {
-        for (PercentageColorRule rule : PROGRESS_COLOR_RULES) {
-            if (percentage >= rule.getThreshold()) {
-                return rule.getColor();
+    public static final class PercentageRuleTable {
+        private final double[] thresholds;
+        private final String[] colors;
+        private final String[] names;
+        
+        private PercentageRuleTable(double[] thresholds, String[] colors, String[] names) {
+            this.thresholds = thresholds;
+            this.colors = colors;
+            this.names = names;
+        }
+        
+        public static PercentageRuleTable compile(List<PercentageColorRule> rules) {
+            int n = rules.size();
+            Integer[] order = sortedOrder(n, (i, j) -> Double.compare(
+                    rules.get(i).getThreshold(), rules.get(j).getThreshold()));
+            
+            double[] thresholds = new double[n];
+            String[] colors = new String[n];
+            String[] names = new String[n];
+            int winner = Integer.MAX_VALUE;
+            for (int k = 0; k < n; k++) {
+                winner = Math.min(winner, order[k]);
+                PercentageColorRule rule = rules.get(winner);
+                thresholds[k] = rules.get(order[k]).getThreshold();
+                colors[k] = rule.getColor();
+                names[k] = rule.getName();
             }
+            return new PercentageRuleTable(thresholds, colors, names);
+        }
+        
+        private int indexOf(double percentage) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (percentage >= thresholds[mid]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+        
+        public String color(double percentage) {
+            int index = indexOf(percentage);
+            return index >= 0 ? colors[index] : WHITE;
+        }
+        
+        public String name(double percentage) {
+            int index = indexOf(percentage);
+            return index >= 0 ? names[index] : "Unknown";
+        }
+    }
+    
+    private static Integer[] sortedOrder(int n, Comparator<Integer> comparator) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        // Stable sort - các threshold bằng nhau giữ thứ tự trong list
+        Arrays.sort(order, comparator);
+        return order;
+    }
+    
+    /**
+     * Duration sang nanos, bão hòa ở Long.MIN_VALUE/MAX_VALUE thay vì overflow
+     */
+    private static long toNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
         }
-        return WHITE; // Fallback
+    }
+    
+    /**
+     * Thay duration color rules (dùng cho mọi renderer). Rules được compile một lần tại đây
+     */
+    public static void setDurationColorRules(List<ColorRule> rules) {
+        durationRules = DurationRuleTable.compile(Objects.requireNonNull(rules, "rules"));
+    }
+    
+    /**
+     * Thay progress bar color rules. Rules được compile một lần tại đây
+     */
+    public static void setProgressColorRules(List<PercentageColorRule> rules) {
+        progressRules = PercentageRuleTable.compile(Objects.requireNonNull(rules, "rules"));
+    }
+    
+    /**
+     * Quay về DURATION_COLOR_RULES và PROGRESS_COLOR_RULES mặc định
+     */
+    public static void resetColorRules() {
+        setDurationColorRules(DURATION_COLOR_RULES);
+        setProgressColorRules(PROGRESS_COLOR_RULES);
+    }
+    
+    /**
+     * Tìm màu cho duration dựa trên rules
+     */
+    public static String getSpanColor(Duration duration) {
+        return durationRules.color(toNanos(duration));
+    }
+    
+    /**
+     * Tìm màu cho duration tính bằng nanoseconds - dùng trong render loop để khỏi tạo Duration
+     */
+    public static String getSpanColor(long nanos) {
+        return durationRules.color(nanos);
+    }
+    
+    /**
+     * Tìm màu cho percentage dựa trên rules
+     */
+    public static String getProgressBarColor(double percentage) {
+        return progressRules.color(percentage);
     }
     
     /**
      * Lấy tên mô tả màu cho duration
      */
     public static String getDurationColorName(Duration duration) {
-        for (ColorRule rule : DURATION_COLOR_RULES) {
-            if (duration.compareTo(rule.getThreshold()) >= 0) {
-                return rule.getName();
-            }
-        }
-        return "Unknown";
+        return durationRules.name(toNanos(duration));
+    }
+    
+    /**
+     * Lấy tên mô tả màu cho duration tính bằng nanoseconds
+     */
+    public static String getDurationColorName(long nanos) {
+        return durationRules.name(nanos);
     }
     
     /**
      * Lấy tên mô tả màu cho percentage
      */
     public static String getProgressColorName(double percentage) {
-        for (PercentageColorRule rule : PROGRESS_COLOR_RULES) {
-            if (percentage >= rule.getThreshold()) {
-                return rule.getName();
-            }
-        }
-        return "Unknown";
+        return progressRules.name(percentage);
     }
     
     /**
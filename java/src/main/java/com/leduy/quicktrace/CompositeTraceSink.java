@@ -0,0 +1,66 @@
+package com.leduy.quicktrace;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out một trace tới nhiều sinks. Lỗi của một sink không ảnh hưởng các sink còn lại
+ */
+public class CompositeTraceSink implements TraceSink {
+
+    private final TraceSink[] sinks;
+    private final AtomicLong failures = new AtomicLong();
+
+    public CompositeTraceSink(TraceSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    public CompositeTraceSink(List<TraceSink> sinks) {
+        this.sinks = sinks.toArray(new TraceSink[0]);
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        for (TraceSink sink : sinks) {
+            try {
+                sink.accept(trace);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void acceptBatch(List<Tracer> traces) {
+        for (TraceSink sink : sinks) {
+            try {
+                sink.acceptBatch(traces);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (TraceSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    public List<TraceSink> getSinks() {
+        return Arrays.asList(sinks.clone());
+    }
+
+    /**
+     * Số lần một sink con throw exception
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,110 @@
+package com.leduy.quicktrace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spans của concurrent tracer: mỗi thread ghi vào {@link SpanRecorder} riêng (không lock, không chia sẻ
+ * state giữa các thread), các recorder được gộp thành một timeline theo thời điểm bắt đầu tại end().
+ * Recorder được key theo thread id để tracer sống lâu không giữ tham chiếu tới các thread (vd. của pool)
+ * đã từng ghi spans.
+ */
+final class ConcurrentSpans {
+
+    private final ConcurrentHashMap<Long, SpanRecorder> recorders = new ConcurrentHashMap<>();
+
+    // Recorder được dùng gần nhất - thread ghi liên tục không phải tra map
+    private volatile SpanRecorder last;
+
+    /**
+     * Recorder của thread hiện tại; thread ghi lần đầu tính span đầu tiên từ startNanos
+     */
+    SpanRecorder current(long startNanos) {
+        long threadId = Thread.currentThread().getId();
+        SpanRecorder recorder = last;
+        if (recorder != null && recorder.threadId() == threadId) {
+            return recorder;
+        }
+        recorder = recorders.get(threadId);
+        if (recorder == null) {
+            recorder = recorders.computeIfAbsent(threadId, id -> new SpanRecorder(id, startNanos));
+        }
+        last = recorder;
+        return recorder;
+    }
+
+    /**
+     * Gộp spans đã publish của mọi thread thành một buffer sắp theo thời điểm bắt đầu (thread id nhỏ hơn
+     * trước khi bằng nhau), giữ quan hệ cha/con trong từng thread. Span "End" luôn ở cuối và phủ khoảng
+     * từ span kết thúc muộn nhất tới endNanos. Cột thread id chỉ có khi nhiều hơn một thread đã ghi spans.
+     * Scope còn mở trên thread khác tại end() được tính tới endNanos, giống scope còn mở của thread gọi end().
+     */
+    SpanBuffer merge(long startNanos, long endNanos, long endThreadId) {
+        List<SpanRecorder> active = new ArrayList<>(recorders.size());
+        for (SpanRecorder recorder : recorders.values()) {
+            if (recorder.published() > 0) {
+                active.add(recorder);
+            }
+        }
+        active.sort((a, b) -> Long.compare(a.threadId(), b.threadId()));
+
+        int count = active.size();
+        SpanBuffer[] buffers = new SpanBuffer[count];
+        int[] sizes = new int[count];
+        int[] cursors = new int[count];
+        int[][] mergedIndex = new int[count][];
+        boolean[][] open = new boolean[count][];
+        for (int r = 0; r < count; r++) {
+            sizes[r] = active.get(r).published();
+            buffers[r] = active.get(r).spans();
+            mergedIndex[r] = new int[sizes[r]];
+            open[r] = new boolean[sizes[r]];
+            for (int index : active.get(r).openSpans()) {
+                if (index < sizes[r]) {
+                    open[r][index] = true;
+                }
+            }
+        }
+        boolean threaded = count > 1;
+
+        // Spans của mỗi thread đã theo thứ tự bắt đầu - k-way merge, k là số thread nên quét tuyến tính
+        SpanBuffer merged = new SpanBuffer();
+        long lastEnd = startNanos;
+        while (true) {
+            int best = -1;
+            long bestStart = Long.MAX_VALUE;
+            for (int r = 0; r < count; r++) {
+                if (cursors[r] < sizes[r]) {
+                    long start = buffers[r].startNanos(cursors[r]);
+                    if (start < bestStart) {
+                        bestStart = start;
+                        best = r;
+                    }
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+
+            SpanBuffer buffer = buffers[best];
+            int local = cursors[best]++;
+            int parent = buffer.parent(local);
+            long duration = open[best][local] ? Math.max(0, endNanos - bestStart) : buffer.durationNanos(local);
+            int index = merged.add(buffer.name(local), bestStart, duration,
+                    parent >= 0 ? mergedIndex[best][parent] : -1);
+            mergedIndex[best][local] = index;
+            if (threaded) {
+                merged.setThreadId(index, active.get(best).threadId());
+            }
+            lastEnd = Math.max(lastEnd, bestStart + duration);
+        }
+
+        lastEnd = Math.min(lastEnd, endNanos);
+        int end = merged.add("End", lastEnd, endNanos - lastEnd);
+        if (threaded) {
+            merged.setThreadId(end, endThreadId);
+        }
+        return merged;
+    }
+}
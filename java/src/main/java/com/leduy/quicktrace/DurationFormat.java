@@ -0,0 +1,120 @@
+package com.leduy.quicktrace;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Format duration và phần trăm thẳng vào StringBuilder, không tạo Duration hay gọi String.format.
+ * Kết quả giống hệt {@link Duration#toString()} và {@code String.format("%.1f", value)}.
+ */
+final class DurationFormat {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // Cache decimal separator theo default locale (DecimalFormatSymbols.getInstance() tạo object mới mỗi lần)
+    private static volatile Locale cachedLocale;
+    private static volatile char cachedSeparator = '.';
+
+    private DurationFormat() {
+    }
+
+    /**
+     * Ghi duration theo ISO-8601, giống Duration.ofNanos(nanos).toString()
+     */
+    static void appendIso(StringBuilder sb, long nanos) {
+        if (nanos < 0) {
+            // Không xảy ra với monotonic clock - giữ nguyên hành vi của Duration cho trường hợp hiếm này
+            sb.append(Duration.ofNanos(nanos));
+            return;
+        }
+        if (nanos == 0) {
+            sb.append("PT0S");
+            return;
+        }
+
+        long seconds = nanos / NANOS_PER_SECOND;
+        long fraction = nanos % NANOS_PER_SECOND;
+        long hours = seconds / 3600;
+        long minutes = (seconds % 3600) / 60;
+        long secs = seconds % 60;
+
+        sb.append("PT");
+        if (hours != 0) {
+            sb.append(hours).append('H');
+        }
+        if (minutes != 0) {
+            sb.append(minutes).append('M');
+        }
+        if (secs == 0 && fraction == 0) {
+            // nanos > 0 nên đã có H hoặc M - Duration bỏ phần "0S" trong trường hợp này
+            return;
+        }
+
+        sb.append(secs);
+        if (fraction > 0) {
+            int pos = sb.length();
+            sb.append(fraction + NANOS_PER_SECOND);
+            while (sb.charAt(sb.length() - 1) == '0') {
+                sb.setLength(sb.length() - 1);
+            }
+            sb.setCharAt(pos, '.');
+        }
+        sb.append('S');
+    }
+
+    /**
+     * Ghi số với 1 chữ số thập phân, giống String.format("%.1f", value) với default locale.
+     * Formatter làm tròn HALF_UP trên chữ số thập phân ngắn nhất của value (như Double.toString):
+     * fast path dùng value * 10, giá trị nằm sát biên x.x5 đi qua BigDecimal để khớp chính xác
+     */
+    static void appendOneDecimal(StringBuilder sb, double value) {
+        if (Double.isNaN(value)) {
+            sb.append("NaN");
+            return;
+        }
+        if (Double.isInfinite(value)) {
+            sb.append(value > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+
+        double scaled = value * 10;
+        if (scaled < 1e15) {
+            long tenths = (long) scaled;
+            double fraction = scaled - tenths;
+            // Sai số nhị phân của value * 10 nhỏ hơn nhiều so với 1e-6 ở dải này
+            if (Math.abs(fraction - 0.5) > 1e-6) {
+                if (fraction > 0.5) {
+                    tenths++;
+                }
+                sb.append(tenths / 10).append(decimalSeparator()).append((char) ('0' + tenths % 10));
+                return;
+            }
+        }
+        appendOneDecimalExact(sb, value);
+    }
+
+    /**
+     * Đường chậm cho giá trị sát biên làm tròn hoặc quá lớn cho long
+     */
+    private static void appendOneDecimalExact(StringBuilder sb, double value) {
+        String digits = new BigDecimal(Double.toString(value)).setScale(1, RoundingMode.HALF_UP).toPlainString();
+        int dot = digits.length() - 2;
+        sb.append(digits, 0, dot).append(decimalSeparator()).append(digits.charAt(dot + 1));
+    }
+
+    private static char decimalSeparator() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (locale != cachedLocale) {
+            cachedSeparator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+            cachedLocale = locale;
+        }
+        return cachedSeparator;
+    }
+}
@@ -0,0 +1,54 @@
+package com.leduy.quicktrace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Giữ các trace gần nhất trong bộ nhớ (bounded) - hữu ích cho tests và debug endpoints
+ */
+public class InMemoryTraceSink implements TraceSink {
+
+    private final int capacity;
+    private final ArrayDeque<Tracer> traces;
+    private long evicted;
+
+    public InMemoryTraceSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        }
+        this.capacity = capacity;
+        this.traces = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    @Override
+    public synchronized void accept(Tracer trace) {
+        if (traces.size() == capacity) {
+            traces.pollFirst();
+            evicted++;
+        }
+        traces.addLast(trace);
+    }
+
+    /**
+     * Snapshot các trace hiện có, cũ nhất trước
+     */
+    public synchronized List<Tracer> getTraces() {
+        return new ArrayList<>(traces);
+    }
+
+    public synchronized int size() {
+        return traces.size();
+    }
+
+    /**
+     * Số trace đã bị đẩy ra vì vượt capacity
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    public synchronized void clear() {
+        traces.clear();
+    }
+}
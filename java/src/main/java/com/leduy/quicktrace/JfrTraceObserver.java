@@ -0,0 +1,174 @@
+package com.leduy.quicktrace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import jdk.jfr.Timestamp;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commit mỗi trace đã kết thúc thành JFR events để đặt spans cạnh GC, lock contention và I/O events
+ * trong cùng một recording:
+ * <ul>
+ *   <li>{@value #TRACE_EVENT}: một event cho mỗi trace (tên, total, số spans, thời điểm bắt đầu)</li>
+ *   <li>{@value #SPAN_EVENT}: một event cho mỗi span (trace id, tên, duration, self time, parent, thread)</li>
+ * </ul>
+ *
+ * <pre>{@code
+ * Tracer.addGlobalObserver(new JfrTraceObserver());
+ * // java -XX:StartFlightRecording:filename=app.jfr ...
+ * }</pre>
+ *
+ * Events được bật/tắt qua JFR settings ({@code com.leduy.quicktrace.Span#enabled=false}). Khi không có
+ * recording nào bật event, observer chỉ tốn hai lần kiểm tra {@link EventType#isEnabled()} mỗi trace và không
+ * cấp phát gì.
+ *
+ * <p>Events được commit tại {@code end()}, nên timestamp của event là lúc trace kết thúc; thời điểm thật
+ * của span nằm trong field {@code offset} (tính từ {@code traceStart}) và {@code spanDuration}.
+ */
+public final class JfrTraceObserver implements TraceSink {
+
+    public static final String TRACE_EVENT = "com.leduy.quicktrace.Trace";
+    public static final String SPAN_EVENT = "com.leduy.quicktrace.Span";
+
+    private static final AtomicLong TRACE_IDS = new AtomicLong();
+
+    private final long minSpanNanos;
+
+    public JfrTraceObserver() {
+        this(Duration.ZERO);
+    }
+
+    /**
+     * @param minSpanDuration span ngắn hơn giá trị này không được commit (trace event vẫn được commit)
+     */
+    public JfrTraceObserver(Duration minSpanDuration) {
+        Objects.requireNonNull(minSpanDuration, "minSpanDuration");
+        if (minSpanDuration.isNegative()) {
+            throw new IllegalArgumentException("minSpanDuration must be >= 0: " + minSpanDuration);
+        }
+        this.minSpanNanos = minSpanDuration.toNanos();
+    }
+
+    @Name(TRACE_EVENT)
+    @Label("QuickTrace Trace")
+    @Category("QuickTrace")
+    @Description("Trace đã kết thúc")
+    @StackTrace(false)
+    static final class TraceEvent extends Event {
+        @Label("Trace Id")
+        long traceId;
+
+        @Label("Tracer")
+        String tracer;
+
+        @Label("Trace Start")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long traceStart;
+
+        @Label("Total")
+        @Timespan(Timespan.NANOSECONDS)
+        long total;
+
+        @Label("Spans")
+        int spanCount;
+
+        @Label("Caller")
+        String caller;
+    }
+
+    @Name(SPAN_EVENT)
+    @Label("QuickTrace Span")
+    @Category("QuickTrace")
+    @Description("Span của một trace đã kết thúc")
+    @StackTrace(false)
+    static final class SpanEvent extends Event {
+        @Label("Trace Id")
+        long traceId;
+
+        @Label("Tracer")
+        String tracer;
+
+        @Label("Span")
+        String name;
+
+        @Label("Offset")
+        @Description("Thời điểm bắt đầu span, tính từ lúc bắt đầu trace")
+        @Timespan(Timespan.NANOSECONDS)
+        long offset;
+
+        @Label("Span Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long spanDuration;
+
+        @Label("Self Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long selfTime;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Span Thread Id")
+        long spanThreadId;
+    }
+
+    // Lấy sau khi khai báo event classes; isEnabled() không cần instance event
+    private static final EventType TRACE_TYPE = EventType.getEventType(TraceEvent.class);
+    private static final EventType SPAN_TYPE = EventType.getEventType(SpanEvent.class);
+
+    @Override
+    public void accept(Tracer trace) {
+        boolean traces = TRACE_TYPE.isEnabled();
+        boolean spans = SPAN_TYPE.isEnabled();
+        if (!traces && !spans) {
+            return;
+        }
+
+        long traceId = TRACE_IDS.incrementAndGet();
+        String tracerName = trace.getName();
+        // Bỏ span "End" cuối cùng giống các renderers
+        SpanBuffer buffer = trace.spans();
+        int count = Math.max(buffer.size() - 1, 0);
+
+        if (traces) {
+            TraceEvent traceEvent = new TraceEvent();
+            traceEvent.traceId = traceId;
+            traceEvent.tracer = tracerName;
+            traceEvent.traceStart = trace.getStartEpochNanos() / 1_000_000L;
+            traceEvent.total = trace.getTotalNanos();
+            traceEvent.spanCount = count;
+            traceEvent.caller = trace.getCallerInfo();
+            traceEvent.commit();
+        }
+
+        if (spans) {
+            long startNanos = trace.getStartNanos();
+            // Thread tạo tracer, không phải thread đang chạy observer (có thể là worker của sink/async writer)
+            long tracerThreadId = trace.getThreadId();
+            for (int i = 0; i < count; i++) {
+                long duration = buffer.durationNanos(i);
+                if (duration < minSpanNanos) {
+                    continue;
+                }
+                SpanEvent event = new SpanEvent();
+                event.traceId = traceId;
+                event.tracer = tracerName;
+                event.name = buffer.name(i);
+                event.offset = buffer.startNanos(i) - startNanos;
+                event.spanDuration = duration;
+                event.selfTime = buffer.selfNanos(i);
+                event.depth = buffer.depth(i);
+                event.spanThreadId = buffer.hasThreads() ? buffer.threadId(i) : tracerThreadId;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.leduy.quicktrace;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.Duration;
+
+/**
+ * Encode trace thành JSON bằng Jackson streaming API.
+ * Ghi thẳng ra Writer/OutputStream - không ObjectMapper, không cây ObjectNode trung gian.
+ * Mode compact (NDJSON) ghi mỗi trace trên một dòng cho log shippers.
+ */
+public final class JsonTraceEncoder {
+
+    // JsonFactory thread-safe và tái sử dụng buffer nội bộ giữa các lần encode
+    static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private JsonTraceEncoder() {
+    }
+
+    /**
+     * Ghi trace ra Writer. pretty=false cho một dòng JSON compact
+     */
+    public static void write(Tracer tracer, Writer out, boolean pretty) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            write(tracer, generator, pretty);
+        }
+    }
+
+    /**
+     * Ghi trace ra OutputStream (UTF-8). pretty=false cho một dòng JSON compact
+     */
+    public static void write(Tracer tracer, OutputStream out, boolean pretty) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            write(tracer, generator, pretty);
+        }
+    }
+
+    /**
+     * Ghi trace dạng NDJSON: JSON compact + newline
+     */
+    public static void writeLine(Tracer tracer, OutputStream out) throws IOException {
+        write(tracer, out, false);
+        out.write('\n');
+    }
+
+    /**
+     * Encode trace nối thẳng vào StringBuilder (dùng cho OutputStyle.JSON và OutputStyle.NDJSON)
+     */
+    static void appendTo(Tracer tracer, StringBuilder sb, boolean pretty) {
+        try {
+            write(tracer, new StringBuilderWriter(sb), pretty);
+        } catch (IOException e) {
+            // StringBuilderWriter không throw IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(Tracer tracer, JsonGenerator generator, boolean pretty) throws IOException {
+        if (pretty) {
+            generator.useDefaultPrettyPrinter();
+        }
+
+        long totalNanos = tracer.getTotalNanos();
+        SpanBuffer spans = tracer.spans();
+        DurationWriter durations = new DurationWriter();
+
+        generator.writeStartObject();
+        generator.writeStringField("tracer_name", tracer.getName());
+        durations.writeField(generator, "total_duration", totalNanos);
+        generator.writeNumberField("total_ns", totalNanos);
+
+        String callerInfo = tracer.getCallerInfo();
+        if (!callerInfo.equals(Tracer.UNKNOWN_CALLER)) {
+            generator.writeObjectFieldStart("caller_info");
+            generator.writeStringField("file", callerInfo);
+            generator.writeEndObject();
+        }
+
+        generator.writeArrayFieldStart("spans");
+        // Bỏ span "End"
+        for (int i = 0; i < spans.size() - 1; i++) {
+            long nanos = spans.durationNanos(i);
+            generator.writeStartObject();
+            generator.writeStringField("name", spans.name(i));
+            durations.writeField(generator, "duration", nanos);
+            generator.writeNumberField("ns", nanos);
+            generator.writeNumberField("percent", (double) nanos / totalNanos * 100);
+            generator.writeStringField("color_class", Tracer.getColorClass(nanos));
+            // Nested spans: index của span cha trong mảng "spans" và self time; trace phẳng giữ nguyên format cũ
+            if (spans.hasHierarchy()) {
+                if (spans.parent(i) >= 0) {
+                    generator.writeNumberField("parent", spans.parent(i));
+                }
+                generator.writeNumberField("self_ns", spans.selfNanos(i));
+            }
+            // Concurrent tracer: thread đã ghi span và thời điểm bắt đầu tính từ đầu trace
+            if (spans.hasThreads()) {
+                generator.writeNumberField("thread_id", spans.threadId(i));
+                generator.writeNumberField("start_ns", spans.startNanos(i) - tracer.getStartNanos());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Ghi duration dạng ISO-8601 (giống Duration.toString) qua một scratch buffer dùng chung cho cả trace,
+     * không tạo Duration và String cho từng span
+     */
+    private static final class DurationWriter {
+        private final StringBuilder text = new StringBuilder(32);
+        private char[] chars = new char[32];
+
+        void writeField(JsonGenerator generator, String field, long nanos) throws IOException {
+            text.setLength(0);
+            DurationFormat.appendIso(text, nanos);
+            int length = text.length();
+            if (length > chars.length) {
+                chars = new char[length];
+            }
+            text.getChars(0, length, chars, 0);
+            generator.writeFieldName(field);
+            generator.writeString(chars, 0, length);
+        }
+    }
+
+    /**
+     * Writer không đồng bộ ghi vào StringBuilder (StringWriter dùng StringBuffer synchronized)
+     */
+    static final class StringBuilderWriter extends Writer {
+        private final StringBuilder sb;
+
+        StringBuilderWriter(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            sb.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            sb.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            sb.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
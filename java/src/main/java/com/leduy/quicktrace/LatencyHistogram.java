@@ -0,0 +1,166 @@
+package com.leduy.quicktrace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram latency với bucket log-linear cố định (kiểu HdrHistogram rút gọn).
+ *
+ * <p>Giá trị dưới 16ns có bucket riêng; từ đó mỗi khoảng lũy thừa 2 được chia thành 8 bucket đều nhau,
+ * nên sai số tương đối của percentile tối đa 12.5% và toàn bộ dải long chỉ cần {@value #BUCKET_COUNT}
+ * buckets. Memory cố định, record() không lock và không allocate.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR_LIMIT = SUB_COUNT << 1;
+
+    /**
+     * Số bucket: 16 bucket tuyến tính + 8 bucket cho mỗi lũy thừa 2 từ 2^4 tới 2^62
+     */
+    public static final int BUCKET_COUNT = LINEAR_LIMIT + (62 - SUB_BITS) * SUB_COUNT;
+
+    /**
+     * Kích thước ước lượng của một histogram trên heap (~4 KB): mảng buckets cộng các counters
+     */
+    public static final int APPROX_BYTES = BUCKET_COUNT * Long.BYTES + 256;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Ghi một giá trị (nanoseconds). Giá trị âm được tính là 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+            // retry
+        }
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * Cộng dồn histogram khác vào histogram này
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = other.buckets.get(i);
+            if (c != 0) {
+                buckets.addAndGet(i, c);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        min.accumulateAndGet(other.min.get(), Math::min);
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Xóa toàn bộ dữ liệu. Không atomic với các record() đang chạy song song
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    public long getCount() { return count.sum(); }
+    public long getSum() { return sum.sum(); }
+    public long getMin() { return getCount() == 0 ? 0 : min.get(); }
+    public long getMax() { return getCount() == 0 ? 0 : max.get(); }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Số lần ghi rơi vào bucket index
+     */
+    public long getBucketCount(int index) {
+        return buckets.get(index);
+    }
+
+    /**
+     * Giá trị ước lượng tại percentile (0-100): biên trên của bucket chứa rank tương ứng,
+     * giới hạn trong [min, max] đã quan sát. Trả về 0 nếu histogram rỗng
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100 || Double.isNaN(percentile)) {
+            throw new IllegalArgumentException("percentile must be in [0, 100]: " + percentile);
+        }
+
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.max(min.get(), Math.min(max.get(), bucketUpperBound(i)));
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Bucket chứa value (value >= 0)
+     */
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR_LIMIT + (msb - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Giá trị nhỏ nhất thuộc bucket index
+     */
+    public static long bucketLowerBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int group = (index - LINEAR_LIMIT) / SUB_COUNT;
+        int sub = (index - LINEAR_LIMIT) % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << (group + 1);
+    }
+
+    /**
+     * Giá trị lớn nhất thuộc bucket index (inclusive)
+     */
+    public static long bucketUpperBound(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : bucketLowerBound(index + 1) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", min=" + getMin() + ", max=" + getMax()
+                + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) + "}";
+    }
+}
@@ -7,24 +7,42 @@ import java.time.Duration;
  */
 public class Measurement {
     private final String statement;
-    private final Duration duration;
+    private final long durationNanos;
+    
+    // Duration chỉ được tạo khi có người hỏi tới (renderer, getMeasurements())
+    private Duration duration;
     
     public Measurement(String statement, Duration duration) {
         this.statement = statement;
+        this.durationNanos = duration.toNanos();
         this.duration = duration;
     }
     
+    public Measurement(String statement, long durationNanos) {
+        this.statement = statement;
+        this.durationNanos = durationNanos;
+    }
+    
     public String getStatement() {
         return statement;
     }
     
     public Duration getDuration() {
-        return duration;
+        Duration d = duration;
+        if (d == null) {
+            d = Duration.ofNanos(durationNanos);
+            duration = d;
+        }
+        return d;
+    }
+    
+    public long getDurationNanos() {
+        return durationNanos;
     }
     
     @Override
     public String toString() {
-        return String.format("Measurement{statement='%s', duration=%s}", statement, duration);
+        return String.format("Measurement{statement='%s', duration=%s}", statement, getDuration());
     }
     
     @Override
@@ -33,11 +51,11 @@ public class Measurement {
         if (o == null || getClass() != o.getClass()) return false;
         
         Measurement that = (Measurement) o;
-        return statement.equals(that.statement) && duration.equals(that.duration);
+        return statement.equals(that.statement) && durationNanos == that.durationNanos;
     }
     
     @Override
     public int hashCode() {
-        return statement.hashCode() * 31 + duration.hashCode();
+        return statement.hashCode() * 31 + Long.hashCode(durationNanos);
     }
 }
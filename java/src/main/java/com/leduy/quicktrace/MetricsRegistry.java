@@ -0,0 +1,228 @@
+package com.leduy.quicktrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry metrics cho cả process, được cập nhật từ Tracer.end() trên nhiều thread cùng lúc.
+ *
+ * <p>Không có lock trên đường ghi: counters là {@link LongAdder}, latency được ghi vào
+ * {@link StripedHistogram} (shard theo thread, gộp khi đọc) và rate dùng EWMA được tick bằng CAS.
+ * Registry global tự đăng ký làm observer của mọi tracer ở lần gọi {@link #global()} đầu tiên.
+ *
+ * <p>Memory bị chặn bởi {@code (maxNames + 1) x stripes x} {@value LatencyHistogram#APPROX_BYTES} bytes
+ * (xem {@link #getMaxFootprintBytes()}) - ~8.5 MB với mặc định 256 names x 8 stripes. Shard chỉ được
+ * allocate khi có thread ghi vào nên thực tế thường nhỏ hơn nhiều.
+ */
+public class MetricsRegistry implements TraceSink {
+
+    public static final int DEFAULT_MAX_NAMES = 256;
+
+    private final int maxNames;
+    private final int stripes;
+    private final ConcurrentHashMap<String, TracerMetrics> metrics = new ConcurrentHashMap<>();
+    private final LongAdder overflowCount = new LongAdder();
+
+    private static final class Holder {
+        static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+        static {
+            Tracer.addGlobalObserver(GLOBAL);
+        }
+    }
+
+    public MetricsRegistry() {
+        this(DEFAULT_MAX_NAMES);
+    }
+
+    /**
+     * @param maxNames số tracer names tối đa, phần vượt quá được gộp vào {@value TraceAggregator#OTHER}
+     */
+    public MetricsRegistry(int maxNames) {
+        this(maxNames, StripedHistogram.DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param maxNames số tracer names tối đa, phần vượt quá được gộp vào {@value TraceAggregator#OTHER}
+     * @param stripes số shard của latency histogram mỗi tracer name (làm tròn lên lũy thừa 2, tối đa 64)
+     */
+    public MetricsRegistry(int maxNames, int stripes) {
+        if (maxNames <= 0) {
+            throw new IllegalArgumentException("maxNames must be > 0: " + maxNames);
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be > 0: " + stripes);
+        }
+        this.maxNames = maxNames;
+        this.stripes = stripes;
+    }
+
+    /**
+     * Registry global, nhận mọi trace đã end() trong process
+     */
+    public static MetricsRegistry global() {
+        return Holder.GLOBAL;
+    }
+
+    /**
+     * Metrics của một tracer name
+     */
+    public static final class TracerMetrics {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final StripedHistogram latency;
+        private final Rate rate = new Rate();
+        private final long createdNanos = System.nanoTime();
+
+        TracerMetrics(String name, int stripes) {
+            this.name = name;
+            this.latency = new StripedHistogram(stripes);
+        }
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            latency.record(nanos);
+            rate.mark();
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+
+        /**
+         * Số trace mỗi giây tính từ lần đầu tiên tracer name này xuất hiện
+         */
+        public double getMeanRate() {
+            long elapsed = System.nanoTime() - createdNanos;
+            return elapsed <= 0 ? 0 : getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        /**
+         * Số trace mỗi giây, trung bình trượt có trọng số mũ trong 1 phút
+         */
+        public double getOneMinuteRate() {
+            return rate.getRate();
+        }
+
+        /**
+         * Latency tại percentile (0-100) tính bằng nanoseconds
+         */
+        public long getPercentile(double percentile) {
+            return latency.snapshot().getPercentile(percentile);
+        }
+
+        /**
+         * Histogram đã gộp từ mọi shard - dùng khi cần nhiều percentile cùng lúc
+         */
+        public LatencyHistogram snapshot() {
+            return latency.snapshot();
+        }
+    }
+
+    /**
+     * EWMA rate kiểu 1-minute load average, tick mỗi 5 giây. Thread thắng CAS trên lastTick thực hiện
+     * tick, các thread khác chỉ cộng vào counter
+     */
+    private static final class Rate {
+        private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+        private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+        private final LongAdder uncounted = new LongAdder();
+        private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+        private volatile double rate;
+        private volatile boolean initialized;
+
+        void mark() {
+            tickIfNecessary();
+            uncounted.increment();
+        }
+
+        double getRate() {
+            tickIfNecessary();
+            return rate;
+        }
+
+        private void tickIfNecessary() {
+            long oldTick = lastTick.get();
+            long age = System.nanoTime() - oldTick;
+            if (age > TICK_NANOS) {
+                long newTick = oldTick + age - age % TICK_NANOS;
+                if (lastTick.compareAndSet(oldTick, newTick)) {
+                    for (long i = age / TICK_NANOS; i > 0; i--) {
+                        tick();
+                    }
+                }
+            }
+        }
+
+        private void tick() {
+            double instantRate = uncounted.sumThenReset() / 5.0;
+            if (initialized) {
+                rate += ALPHA * (instantRate - rate);
+            } else {
+                rate = instantRate;
+                initialized = true;
+            }
+        }
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        metrics(trace.getName()).record(trace.getTotalNanos());
+    }
+
+    private TracerMetrics metrics(String name) {
+        name = TraceAggregator.keyOf(name);
+        TracerMetrics existing = metrics.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (metrics.size() >= maxNames) {
+            overflowCount.increment();
+            name = TraceAggregator.OTHER;
+        }
+        return metrics.computeIfAbsent(name, key -> new TracerMetrics(key, stripes));
+    }
+
+    /**
+     * Memory tối đa (bytes, ước lượng) của các latency histograms khi mọi tracer names và mọi shard đã được dùng
+     */
+    public long getMaxFootprintBytes() {
+        return (long) (maxNames + 1) * StripedHistogram.stripesFor(stripes) * LatencyHistogram.APPROX_BYTES;
+    }
+
+    /**
+     * Metrics của tracer name, null nếu chưa có trace nào
+     */
+    public TracerMetrics get(String name) {
+        return metrics.get(TraceAggregator.keyOf(name));
+    }
+
+    /**
+     * Mọi tracer metrics, sắp xếp theo tên
+     */
+    public List<TracerMetrics> getAll() {
+        List<TracerMetrics> all = new ArrayList<>(metrics.values());
+        all.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Số trace bị gộp vào {@value TraceAggregator#OTHER} vì vượt giới hạn tracer names
+     */
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    public void reset() {
+        metrics.clear();
+        overflowCount.reset();
+    }
+}
@@ -0,0 +1,50 @@
+package com.leduy.quicktrace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Stream trace dạng NDJSON (một JSON object mỗi dòng) thẳng ra OutputStream,
+ * không đi qua String trung gian - dành cho log shippers và machine ingestion.
+ */
+public class NdjsonTraceSink implements TraceSink {
+
+    private final OutputStream out;
+
+    public NdjsonTraceSink(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void accept(Tracer trace) {
+        try {
+            JsonTraceEncoder.writeLine(trace, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write NDJSON trace", e);
+        }
+    }
+
+    @Override
+    public synchronized void acceptBatch(List<Tracer> traces) {
+        try {
+            for (int i = 0; i < traces.size(); i++) {
+                JsonTraceEncoder.writeLine(traces.get(i), out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write NDJSON traces", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close NDJSON sink", e);
+        }
+    }
+}
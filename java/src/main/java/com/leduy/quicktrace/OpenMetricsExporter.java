@@ -0,0 +1,281 @@
+package com.leduy.quicktrace;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Xuất thống kê của một {@link TraceAggregator} theo OpenMetrics text format (Prometheus scrape được):
+ * <ul>
+ *   <li>{@code quicktrace_trace_duration_seconds{tracer}} - histogram total của từng tracer name</li>
+ *   <li>{@code quicktrace_span_duration_seconds{tracer,span}} - histogram của từng span</li>
+ *   <li>{@code quicktrace_aggregator_overflow_traces_total} - trace bị gộp vào {@value TraceAggregator#OTHER}</li>
+ * </ul>
+ *
+ * <pre>{@code
+ * TraceAggregator aggregator = new TraceAggregator();
+ * Tracer.addGlobalObserver(aggregator);
+ * OpenMetricsExporter exporter = OpenMetricsExporter.builder(aggregator).build();
+ * exporter.startServer(new InetSocketAddress(9464));   // GET /metrics
+ * }</pre>
+ *
+ * <p>Scrape ghi thẳng từng histogram ra Writer, không dựng toàn bộ output trong memory, và chỉ đọc
+ * counters atomic của histogram nên không block các thread đang end() trace. Buckets {@code le} được
+ * suy ra từ bucket log-linear của {@link LatencyHistogram}, sai số biên tối đa 12.5%.
+ */
+public class OpenMetricsExporter implements AutoCloseable {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final String TRACE_METRIC = "quicktrace_trace_duration_seconds";
+    private static final String SPAN_METRIC = "quicktrace_span_duration_seconds";
+    private static final String OVERFLOW_METRIC = "quicktrace_aggregator_overflow_traces";
+
+    private final TraceAggregator aggregator;
+    // Bucket cuối cùng của LatencyHistogram thuộc về mỗi biên le
+    private final int[] bucketLimits;
+    private final String[] bucketLabels;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    private OpenMetricsExporter(Builder builder) {
+        this.aggregator = builder.aggregator;
+        this.bucketLimits = new int[builder.buckets.length];
+        this.bucketLabels = new String[builder.buckets.length];
+        for (int i = 0; i < builder.buckets.length; i++) {
+            long nanos = builder.buckets[i].toNanos();
+            bucketLimits[i] = LatencyHistogram.bucketIndex(nanos);
+            bucketLabels[i] = seconds(nanos);
+        }
+    }
+
+    /**
+     * Tạo builder cho exporter đọc từ aggregator
+     */
+    public static Builder builder(TraceAggregator aggregator) {
+        return new Builder(aggregator);
+    }
+
+    /**
+     * Builder class cho OpenMetricsExporter
+     */
+    public static class Builder {
+        private final TraceAggregator aggregator;
+        private Duration[] buckets = {
+                Duration.ofNanos(100_000), Duration.ofNanos(500_000),
+                Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25),
+                Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+                Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10)
+        };
+
+        private Builder(TraceAggregator aggregator) {
+            this.aggregator = Objects.requireNonNull(aggregator, "aggregator");
+        }
+
+        /**
+         * Biên {@code le} của histogram (tăng dần, không gồm +Inf)
+         */
+        public Builder buckets(Duration... buckets) {
+            if (buckets.length == 0) {
+                throw new IllegalArgumentException("buckets must not be empty");
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i].isNegative() || buckets[i].isZero()) {
+                    throw new IllegalArgumentException("bucket must be > 0: " + buckets[i]);
+                }
+                if (i > 0 && buckets[i].compareTo(buckets[i - 1]) <= 0) {
+                    throw new IllegalArgumentException("buckets must be strictly increasing: " + buckets[i]);
+                }
+            }
+            this.buckets = buckets.clone();
+            return this;
+        }
+
+        public OpenMetricsExporter build() {
+            return new OpenMetricsExporter(this);
+        }
+    }
+
+    /**
+     * Ghi snapshot hiện tại theo OpenMetrics text format, kết thúc bằng {@code # EOF}
+     */
+    public void writeTo(Writer out) throws IOException {
+        long[] cumulative = new long[bucketLimits.length + 1];
+
+        writeHeader(out, TRACE_METRIC, "Total duration of finished traces.");
+        for (String tracerName : aggregator.getTracerNames()) {
+            TraceAggregator.TracerStats stats = aggregator.getStats(tracerName);
+            if (stats != null) {
+                String labels = "tracer=\"" + escape(tracerName) + '"';
+                writeHistogram(out, TRACE_METRIC, labels, stats.getTotal(), cumulative);
+            }
+        }
+
+        writeHeader(out, SPAN_METRIC, "Duration of spans in finished traces.");
+        for (String tracerName : aggregator.getTracerNames()) {
+            TraceAggregator.TracerStats stats = aggregator.getStats(tracerName);
+            if (stats == null) {
+                continue;
+            }
+            String tracerLabel = "tracer=\"" + escape(tracerName) + "\",span=\"";
+            for (String spanName : stats.getSpanNames()) {
+                writeHistogram(out, SPAN_METRIC, tracerLabel + escape(spanName) + '"',
+                        stats.getSpan(spanName), cumulative);
+            }
+        }
+
+        out.write("# TYPE " + OVERFLOW_METRIC + " counter\n");
+        out.write("# HELP " + OVERFLOW_METRIC + " Traces aggregated into " + TraceAggregator.OTHER
+                + " because of the tracer name limit.\n");
+        out.write(OVERFLOW_METRIC + "_total " + aggregator.getOverflowCount() + '\n');
+        out.write("# EOF\n");
+    }
+
+    /**
+     * Snapshot hiện tại dưới dạng String
+     */
+    public String scrape() {
+        StringWriter out = new StringWriter(4096);
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeHeader(Writer out, String metric, String help) throws IOException {
+        out.write("# TYPE " + metric + " histogram\n");
+        out.write("# UNIT " + metric + " seconds\n");
+        out.write("# HELP " + metric + ' ' + help + '\n');
+    }
+
+    private void writeHistogram(Writer out, String metric, String labels, LatencyHistogram histogram,
+                                long[] cumulative) throws IOException {
+        // Một lượt qua buckets; +Inf và _count dùng cùng snapshot để nhất quán với nhau
+        long seen = 0;
+        int next = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            while (next < bucketLimits.length && bucketLimits[next] < i) {
+                cumulative[next++] = seen;
+            }
+            seen += histogram.getBucketCount(i);
+        }
+        while (next < bucketLimits.length) {
+            cumulative[next++] = seen;
+        }
+        cumulative[bucketLimits.length] = seen;
+
+        for (int b = 0; b < bucketLimits.length; b++) {
+            out.write(metric + "_bucket{" + labels + ",le=\"" + bucketLabels[b] + "\"} " + cumulative[b] + '\n');
+        }
+        out.write(metric + "_bucket{" + labels + ",le=\"+Inf\"} " + seen + '\n');
+        out.write(metric + "_count{" + labels + "} " + seen + '\n');
+        out.write(metric + "_sum{" + labels + "} " + seconds(histogram.getSum()) + '\n');
+    }
+
+    private static String seconds(long nanos) {
+        String text = BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+        return text.indexOf('.') < 0 ? text + ".0" : text;
+    }
+
+    /**
+     * Escape label value theo OpenMetrics: backslash, dấu nháy kép và xuống dòng
+     */
+    static String escape(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == '"' ? "\\\"" : c == '\n' ? "\\n" : null;
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (replacement != null) {
+                    sb.append(replacement);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb != null ? sb.toString() : value;
+    }
+
+    /**
+     * Mở HTTP endpoint {@code GET /metrics} trên address (port 0 để chọn port trống).
+     * Server chạy trên một daemon thread, dừng khi {@link #close()}
+     */
+    public synchronized HttpServer startServer(InetSocketAddress address) {
+        if (server != null) {
+            throw new IllegalStateException("Server already started on " + server.getAddress());
+        }
+        HttpServer created;
+        try {
+            created = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        serverExecutor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "quicktrace-openmetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        created.setExecutor(serverExecutor);
+        created.createContext("/metrics", this::handle);
+        created.start();
+        server = created;
+        return created;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            // Chunked: ghi dần ra socket trong lúc duyệt histograms
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer out = new BufferedWriter(
+                    new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+                writeTo(out);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Dừng HTTP server nếu đang chạy
+     */
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        server = null;
+        serverExecutor = null;
+    }
+}
@@ -0,0 +1,168 @@
+package com.leduy.quicktrace;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Encode các trace đã kết thúc thành OTLP/JSON {@code ExportTraceServiceRequest}.
+ *
+ * <p>Mỗi trace thành một root span (tên tracer, từ lúc tạo tới end()) và một span con cho mỗi span đã ghi;
+ * nested spans giữ quan hệ cha/con qua {@code parentSpanId}. Trace/span ids ngẫu nhiên, ghi dạng hex theo
+ * OTLP/JSON; timestamps là unix nanos dạng string (uint64).
+ */
+final class OtlpJsonEncoder {
+
+    static final String SCOPE_NAME = "com.leduy.quicktrace";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Kind INTERNAL
+    private static final int SPAN_KIND = 1;
+
+    private final String serviceName;
+    private final Map<String, String> resourceAttributes;
+    private final char[] hex = new char[32];
+    private final long[] spanIds = new long[64];
+
+    OtlpJsonEncoder(String serviceName, Map<String, String> resourceAttributes) {
+        this.serviceName = serviceName;
+        this.resourceAttributes = resourceAttributes;
+    }
+
+    /**
+     * Ghi một request chứa mọi trace của batch. Không thread-safe - mỗi exporter dùng một encoder trên worker thread
+     */
+    void write(List<Tracer> traces, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("resourceSpans");
+        generator.writeStartObject();
+
+        generator.writeObjectFieldStart("resource");
+        generator.writeArrayFieldStart("attributes");
+        writeAttribute(generator, "service.name", serviceName);
+        for (Map.Entry<String, String> attribute : resourceAttributes.entrySet()) {
+            writeAttribute(generator, attribute.getKey(), attribute.getValue());
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("scopeSpans");
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("scope");
+        generator.writeStringField("name", SCOPE_NAME);
+        generator.writeEndObject();
+        generator.writeArrayFieldStart("spans");
+        for (int i = 0; i < traces.size(); i++) {
+            writeTrace(traces.get(i), generator);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writeTrace(Tracer tracer, JsonGenerator generator) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long traceHigh = random.nextLong();
+        long traceLow = nonZero(random.nextLong());
+        long rootId = nonZero(random.nextLong());
+
+        long startEpochNanos = tracer.getStartEpochNanos();
+        long startNanos = tracer.getStartNanos();
+        SpanBuffer spans = tracer.spans();
+        // Bỏ span "End"
+        int count = Math.max(spans.size() - 1, 0);
+        long[] ids = count <= spanIds.length ? spanIds : new long[count];
+
+        generator.writeStartObject();
+        writeIds(generator, traceHigh, traceLow, rootId, 0);
+        generator.writeStringField("name", tracer.getName());
+        generator.writeNumberField("kind", SPAN_KIND);
+        writeTimes(generator, startEpochNanos, startEpochNanos + tracer.getTotalNanos());
+        generator.writeArrayFieldStart("attributes");
+        String callerInfo = tracer.getCallerInfo();
+        if (!callerInfo.equals(Tracer.UNKNOWN_CALLER)) {
+            writeAttribute(generator, "code.filepath", callerInfo);
+        }
+        writeIntAttribute(generator, "thread.id", tracer.getThreadId());
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        for (int i = 0; i < count; i++) {
+            ids[i] = nonZero(random.nextLong());
+            int parent = spans.parent(i);
+            long spanStart = startEpochNanos + (spans.startNanos(i) - startNanos);
+
+            generator.writeStartObject();
+            writeIds(generator, traceHigh, traceLow, ids[i], parent >= 0 ? ids[parent] : rootId);
+            generator.writeStringField("name", spans.name(i));
+            generator.writeNumberField("kind", SPAN_KIND);
+            writeTimes(generator, spanStart, spanStart + spans.durationNanos(i));
+            generator.writeArrayFieldStart("attributes");
+            writeAttribute(generator, "quicktrace.tracer", tracer.getName());
+            writeIntAttribute(generator, "thread.id", spans.hasThreads() ? spans.threadId(i) : tracer.getThreadId());
+            if (spans.hasHierarchy()) {
+                writeIntAttribute(generator, "quicktrace.self_ns", spans.selfNanos(i));
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private static long nonZero(long id) {
+        return id != 0 ? id : 1;
+    }
+
+    private void writeIds(JsonGenerator generator, long traceHigh, long traceLow, long spanId, long parentId)
+            throws IOException {
+        appendHex(traceHigh, 0);
+        appendHex(traceLow, 16);
+        generator.writeFieldName("traceId");
+        generator.writeString(hex, 0, 32);
+        appendHex(spanId, 0);
+        generator.writeFieldName("spanId");
+        generator.writeString(hex, 0, 16);
+        if (parentId != 0) {
+            appendHex(parentId, 0);
+            generator.writeFieldName("parentSpanId");
+            generator.writeString(hex, 0, 16);
+        }
+    }
+
+    private void appendHex(long value, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            hex[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    private static void writeTimes(JsonGenerator generator, long startUnixNanos, long endUnixNanos) throws IOException {
+        generator.writeStringField("startTimeUnixNano", Long.toString(startUnixNanos));
+        generator.writeStringField("endTimeUnixNano", Long.toString(endUnixNanos));
+    }
+
+    private static void writeAttribute(JsonGenerator generator, String key, String value) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("key", key);
+        generator.writeObjectFieldStart("value");
+        generator.writeStringField("stringValue", value);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static void writeIntAttribute(JsonGenerator generator, String key, long value) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("key", key);
+        generator.writeObjectFieldStart("value");
+        // int64 được ghi dạng string trong OTLP/JSON
+        generator.writeStringField("intValue", Long.toString(value));
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,431 @@
+package com.leduy.quicktrace;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export các trace đã kết thúc sang tracing backend theo OTLP/JSON ({@code ExportTraceServiceRequest}),
+ * POST tới OTLP/HTTP endpoint (vd. {@code http://collector:4318/v1/traces}) hoặc append vào file
+ * (mỗi request một dòng, định dạng của OTLP file exporter).
+ *
+ * <pre>{@code
+ * OtlpJsonExporter exporter = OtlpJsonExporter.builder()
+ *         .endpoint(URI.create("http://localhost:4318/v1/traces"))
+ *         .serviceName("checkout")
+ *         .build();
+ * Tracer.addGlobalObserver(exporter);
+ * }</pre>
+ *
+ * <p>Giống {@link AsyncTraceWriter}: {@code end()} chỉ đưa trace vào bounded queue (queue đầy thì drop và đếm),
+ * một daemon thread gom batch theo {@code batchSize} hoặc {@code flushInterval}, encode và gửi. Lỗi mạng và
+ * HTTP 429/502/503/504 được retry với exponential backoff; batch vẫn lỗi sau {@code maxRetries} lần
+ * bị bỏ và tính vào failed counter.
+ */
+public class OtlpJsonExporter implements TraceSink {
+
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private final BlockingQueue<Tracer> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final Path file;
+    private final URI endpoint;
+    private final Map<String, String> headers;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final OtlpJsonEncoder encoder;
+    private final long closeTimeoutMillis;
+    private final Thread worker;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    private final Object flushLock = new Object();
+    private volatile boolean flushRequested;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private OtlpJsonExporter(Builder builder) {
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.batchSize = builder.batchSize;
+        this.flushIntervalNanos = builder.flushInterval.toNanos();
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoffMillis = builder.retryBackoff.toMillis();
+        this.file = builder.file;
+        this.endpoint = builder.endpoint;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+        this.timeout = builder.timeout;
+        this.client = endpoint != null ? HttpClient.newBuilder().connectTimeout(timeout).build() : null;
+        this.encoder = new OtlpJsonEncoder(builder.serviceName, new LinkedHashMap<>(builder.resourceAttributes));
+        this.closeTimeoutMillis = builder.closeTimeout.toMillis();
+        this.worker = new Thread(this::runWorker, builder.threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Tạo builder để customize exporter
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class cho OtlpJsonExporter
+     */
+    public static class Builder {
+        private int capacity = 2048;
+        private int batchSize = 512;
+        private Duration flushInterval = Duration.ofSeconds(5);
+        private int maxRetries = 3;
+        private Duration retryBackoff = Duration.ofMillis(100);
+        private Duration timeout = Duration.ofSeconds(10);
+        private Path file;
+        private URI endpoint;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private String serviceName = "quicktrace";
+        private final Map<String, String> resourceAttributes = new LinkedHashMap<>();
+        private String threadName = "quicktrace-otlp-exporter";
+        private Duration closeTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Số trace tối đa chờ export; trace tới khi queue đầy bị drop
+         */
+        public Builder capacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Số trace tối đa mỗi request
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be > 0: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Thời gian tối đa một trace chờ trong batch chưa đầy
+         */
+        public Builder flushInterval(Duration flushInterval) {
+            if (flushInterval.isNegative() || flushInterval.isZero()) {
+                throw new IllegalArgumentException("flushInterval must be > 0: " + flushInterval);
+            }
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Số lần retry tối đa cho một batch, backoff tăng gấp đôi sau mỗi lần
+         */
+        public Builder retry(int maxRetries, Duration initialBackoff) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries must be >= 0: " + maxRetries);
+            }
+            if (initialBackoff.isNegative()) {
+                throw new IllegalArgumentException("initialBackoff must be >= 0: " + initialBackoff);
+            }
+            this.maxRetries = maxRetries;
+            this.retryBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * Timeout cho connect và cho mỗi HTTP request
+         */
+        public Builder timeout(Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("timeout must be > 0: " + timeout);
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * POST mỗi batch tới OTLP/HTTP endpoint (Content-Type: application/json)
+         */
+        public Builder endpoint(URI endpoint) {
+            this.endpoint = Objects.requireNonNull(endpoint, "endpoint");
+            this.file = null;
+            return this;
+        }
+
+        /**
+         * Append mỗi batch vào file dưới dạng một dòng JSON
+         */
+        public Builder file(Path file) {
+            this.file = Objects.requireNonNull(file, "file");
+            this.endpoint = null;
+            return this;
+        }
+
+        /**
+         * Header thêm vào mỗi HTTP request (vd. Authorization)
+         */
+        public Builder header(String name, String value) {
+            headers.put(Objects.requireNonNull(name, "name"), Objects.requireNonNull(value, "value"));
+            return this;
+        }
+
+        /**
+         * Resource attribute {@code service.name}
+         */
+        public Builder serviceName(String serviceName) {
+            this.serviceName = Objects.requireNonNull(serviceName, "serviceName");
+            return this;
+        }
+
+        /**
+         * Resource attribute dạng string thêm vào mỗi request (vd. deployment.environment)
+         */
+        public Builder resourceAttribute(String key, String value) {
+            resourceAttributes.put(Objects.requireNonNull(key, "key"), Objects.requireNonNull(value, "value"));
+            return this;
+        }
+
+        public Builder threadName(String threadName) {
+            this.threadName = threadName;
+            return this;
+        }
+
+        /**
+         * Thời gian tối đa close() chờ export nốt queue (kể cả retry) trước khi bỏ phần còn lại
+         */
+        public Builder closeTimeout(Duration closeTimeout) {
+            if (closeTimeout.isNegative() || closeTimeout.isZero()) {
+                throw new IllegalArgumentException("closeTimeout must be > 0: " + closeTimeout);
+            }
+            this.closeTimeout = closeTimeout;
+            return this;
+        }
+
+        public OtlpJsonExporter build() {
+            if (file == null && endpoint == null) {
+                throw new IllegalArgumentException("endpoint or file must be set");
+            }
+            return new OtlpJsonExporter(this);
+        }
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        submit(trace);
+    }
+
+    /**
+     * Đưa một trace đã kết thúc vào queue. Trả về false nếu trace bị drop vì queue đầy hoặc exporter đã đóng
+     */
+    public boolean submit(Tracer tracer) {
+        if (closed.get() || !queue.offer(tracer)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    private void runWorker() {
+        List<Tracer> batch = new ArrayList<>(Math.min(batchSize, 1024));
+        long deadline = System.nanoTime() + flushIntervalNanos;
+
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            Tracer next = null;
+            if (batch.size() < batchSize && remaining > 0) {
+                try {
+                    next = queue.poll(Math.min(TimeUnit.NANOSECONDS.toMillis(remaining) + 1, POLL_INTERVAL_MS),
+                            TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    next = queue.poll();
+                }
+            }
+            if (next != null) {
+                batch.add(next);
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+
+            boolean stopping = closed.get();
+            if (batch.size() >= batchSize || System.nanoTime() >= deadline || flushRequested || stopping) {
+                if (flushRequested || stopping) {
+                    // flush()/close(): lấy hết phần còn lại trong queue
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                if (!batch.isEmpty()) {
+                    export(batch);
+                    batch.clear();
+                }
+                if (queue.isEmpty()) {
+                    flushRequested = false;
+                    synchronized (flushLock) {
+                        flushLock.notifyAll();
+                    }
+                    if (stopping) {
+                        return;
+                    }
+                }
+                deadline = System.nanoTime() + flushIntervalNanos;
+            }
+        }
+    }
+
+    private void export(List<Tracer> batch) {
+        byte[] body;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+            try (JsonGenerator generator = JsonTraceEncoder.FACTORY.createGenerator(bytes)) {
+                encoder.write(batch, generator);
+            }
+            body = bytes.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            failed.addAndGet(batch.size());
+            return;
+        }
+
+        long backoff = retryBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            Result result = send(body);
+            if (result == Result.OK) {
+                exported.addAndGet(batch.size());
+                return;
+            }
+            if (result == Result.FAILED || attempt >= maxRetries) {
+                failed.addAndGet(batch.size());
+                return;
+            }
+            retries.incrementAndGet();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            backoff = Math.min(backoff * 2, 30_000);
+        }
+    }
+
+    /**
+     * Kết quả của một lần gửi
+     */
+    private enum Result {
+        OK,
+        RETRYABLE,
+        FAILED
+    }
+
+    private Result send(byte[] body) {
+        if (file != null) {
+            try {
+                Path parent = file.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                byte[] line = new byte[body.length + 1];
+                System.arraycopy(body, 0, line, 0, body.length);
+                line[body.length] = '\n';
+                Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                return Result.OK;
+            } catch (IOException e) {
+                return Result.RETRYABLE;
+            }
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        try {
+            int status = client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status >= 200 && status < 300) {
+                return Result.OK;
+            }
+            // Theo OTLP/HTTP: chỉ 429, 502, 503, 504 là lỗi tạm thời
+            return status == 429 || status == 502 || status == 503 || status == 504 ? Result.RETRYABLE : Result.FAILED;
+        } catch (IOException e) {
+            return Result.RETRYABLE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.FAILED;
+        }
+    }
+
+    /**
+     * Export ngay các trace đang chờ và block cho tới khi mọi trace đã submit trước lời gọi này được xử lý
+     */
+    public void flush() throws InterruptedException {
+        long target = submitted.get();
+        flushRequested = true;
+        synchronized (flushLock) {
+            while (exported.get() + failed.get() < target && worker.isAlive()) {
+                flushLock.wait(POLL_INTERVAL_MS);
+            }
+        }
+    }
+
+    /**
+     * Ngừng nhận trace mới, export nốt queue hiện tại rồi dừng worker thread.
+     * Quá closeTimeout thì các trace còn trong queue bị tính là failed và worker bị interrupt
+     * (request/backoff đang chờ kết thúc với lỗi)
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        joinWorker();
+        if (worker.isAlive()) {
+            List<Tracer> abandoned = new ArrayList<>();
+            failed.addAndGet(queue.drainTo(abandoned));
+            worker.interrupt();
+            joinWorker();
+        }
+    }
+
+    private void joinWorker() {
+        try {
+            worker.join(closeTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Counters (theo số trace)
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getExportedCount() { return exported.get(); }
+    public long getFailedCount() { return failed.get(); }
+    public long getRetryCount() { return retries.get(); }
+    public int getQueueSize() { return queue.size(); }
+}
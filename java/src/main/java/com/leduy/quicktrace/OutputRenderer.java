@@ -1,481 +1,697 @@
 package com.leduy.quicktrace;
 
-import java.time.Duration;
 import java.util.*;
 
 /**
- * Xử lý rendering output cho các style khác nhau
+ * Xử lý rendering output cho các style khác nhau.
+ *
+ * <p>Mỗi style ghi thẳng vào một StringBuilder do caller cung cấp (có thể tái sử dụng giữa các lần render).
+ * Borders/headers cố định được build sẵn một lần; padding, duration và phần trăm được format bằng tay
+ * nên mỗi row không còn String.format, repeat() hay chuỗi colorize trung gian.
  */
 public class OutputRenderer {
-    
+
+    private static final String NEWLINE = "\n";
+    private static final String SPACES = " ".repeat(256);
+
+    // ===== DEFAULT templates =====
+    private static final int DEFAULT_WIDTH = 70;
+    private static final String DEFAULT_SEPARATOR =
+            ColorRules.colorizeWithStyle("=".repeat(DEFAULT_WIDTH), ColorRules.CYAN, ColorRules.BOLD) + NEWLINE;
+    private static final String DEFAULT_THIN_SEPARATOR =
+            ColorRules.colorize("-".repeat(DEFAULT_WIDTH), ColorRules.CYAN) + NEWLINE;
+    private static final String DEFAULT_TOTAL_LABEL =
+            ColorRules.colorizeWithStyle(String.format("| %-20s | ", "Total time"), ColorRules.GREEN, ColorRules.BOLD);
+    private static final String DEFAULT_HEADER =
+            ColorRules.colorizeWithStyle(String.format("| %-45s | %-20s |", "Span", "Execution time"),
+                    ColorRules.MAGENTA, ColorRules.BOLD) + NEWLINE;
+
+    // ===== COLORFUL / MINIMAL templates (cùng kích thước bảng) =====
+    private static final int BOX_NAME_WIDTH = 35;
+    private static final int BOX_WIDTH = BOX_NAME_WIDTH + 25 + 4;
+    private static final String BOX_TOP = "┌" + "─".repeat(BOX_WIDTH - 2) + "┐";
+    private static final String BOX_SEPARATOR = "├" + "─".repeat(BOX_WIDTH - 2) + "┤";
+    private static final String BOX_BOTTOM = "└" + "─".repeat(BOX_WIDTH - 2) + "┘";
+    private static final String BOX_TOP_BOLD =
+            ColorRules.colorizeWithStyle(BOX_TOP, ColorRules.CYAN, ColorRules.BOLD) + NEWLINE;
+    private static final String BOX_SEPARATOR_BOLD =
+            ColorRules.colorizeWithStyle(BOX_SEPARATOR, ColorRules.CYAN, ColorRules.BOLD) + NEWLINE;
+    private static final String BOX_SEPARATOR_PLAIN =
+            ColorRules.colorize(BOX_SEPARATOR, ColorRules.CYAN) + NEWLINE;
+    private static final String BOX_BOTTOM_BOLD =
+            ColorRules.colorizeWithStyle(BOX_BOTTOM, ColorRules.CYAN, ColorRules.BOLD) + NEWLINE;
+    private static final String COLORFUL_TOTAL_PREFIX =
+            ColorRules.BOLD + ColorRules.GREEN + String.format("│ ⏱️  Total Time: %-" + (BOX_NAME_WIDTH - 16) + "s │ ", "");
+    private static final String COLORFUL_HEADER =
+            ColorRules.colorizeWithStyle(String.format("│ %-" + BOX_NAME_WIDTH + "s │ %s", "📋 Span", "⏰ Duration"),
+                    ColorRules.MAGENTA, ColorRules.BOLD) + NEWLINE;
+
+    // ===== DETAILED templates =====
+    private static final int DETAILED_INDEX_WIDTH = 3;
+    private static final int DETAILED_NAME_WIDTH = 30;
+    private static final int DETAILED_DURATION_WIDTH = 15;
+    private static final int DETAILED_PERCENT_WIDTH = 8;
+    private static final int DETAILED_BAR_WIDTH = 12;
+    private static final int DETAILED_WIDTH = DETAILED_INDEX_WIDTH + DETAILED_NAME_WIDTH + DETAILED_DURATION_WIDTH
+            + DETAILED_PERCENT_WIDTH + DETAILED_BAR_WIDTH + 12;
+    private static final DetailedLayout DETAILED_FLAT = new DetailedLayout(false);
+    private static final DetailedLayout DETAILED_TREE = new DetailedLayout(true);
+    private static final String DETAILED_PROGRESS_COLOR = ColorRules.BLUE + ColorRules.BOLD;
+    private static final String PREFIX_TOTAL_TIME = "║ • Total Execution Time: ";
+    private static final String PREFIX_SPAN_COUNT = "║ • Number of Spans: ";
+    private static final String PREFIX_SLOWEST_NAME = "║ • Slowest Operation: ";
+    private static final String PREFIX_SLOWEST_DURATION = "║ • Slowest Duration: ";
+
+    // ===== TABLE templates =====
+    private static final int TABLE_INDEX_WIDTH = 4;
+    private static final int TABLE_NAME_WIDTH = 45;
+    private static final int TABLE_DURATION_WIDTH = 20;
+    private static final int TABLE_WIDTH = TABLE_INDEX_WIDTH + TABLE_NAME_WIDTH + TABLE_DURATION_WIDTH + 3;
+    private static final String TABLE_TOP = ColorRules.colorizeWithStyle(
+            "┌" + "─".repeat(TABLE_INDEX_WIDTH) + "┬" + "─".repeat(TABLE_NAME_WIDTH) + "┬"
+            + "─".repeat(TABLE_DURATION_WIDTH) + "┐", ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+    private static final String TABLE_SEPARATOR =
+            "├" + "─".repeat(TABLE_INDEX_WIDTH) + "┼" + "─".repeat(TABLE_NAME_WIDTH) + "┼"
+            + "─".repeat(TABLE_DURATION_WIDTH) + "┤";
+    private static final String TABLE_SEPARATOR_BOLD =
+            ColorRules.colorizeWithStyle(TABLE_SEPARATOR, ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+    private static final String TABLE_SEPARATOR_PLAIN = ColorRules.colorize(TABLE_SEPARATOR, ColorRules.CYAN) + NEWLINE;
+    private static final String TABLE_BOTTOM = ColorRules.colorizeWithStyle(
+            "└" + "─".repeat(TABLE_INDEX_WIDTH) + "┴" + "─".repeat(TABLE_NAME_WIDTH) + "┴"
+            + "─".repeat(TABLE_DURATION_WIDTH) + "┘", ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+    private static final String TABLE_COLUMNS = "│"
+            + headerCell(String.format(" %-2s ", "No")) + "│"
+            + headerCell(String.format(" %-" + (TABLE_NAME_WIDTH - 1) + "s", "Span Name")) + "│"
+            + headerCell(" Duration") + "│\n";
+    private static final String TABLE_TOTAL_ROW_PREFIX = "│"
+            + ColorRules.colorizeWithStyle(String.format(" %-2s ", ""), ColorRules.GREEN, ColorRules.BOLD) + "│"
+            + ColorRules.colorizeWithStyle(String.format(" %-" + (TABLE_NAME_WIDTH - 1) + "s", "📊 TOTAL EXECUTION TIME"),
+                    ColorRules.GREEN, ColorRules.BOLD) + "│ ";
+
+    // ===== Caller info =====
+    private static final String CALLER_PREFIX = "📍 File: ";
+
+    // ===== JSON =====
+    private static final String JSON_BANNER =
+            ColorRules.colorizeWithStyle("📄 JSON Output:", ColorRules.MAGENTA, ColorRules.BOLD) + NEWLINE;
+
+    private static String headerCell(String text) {
+        return ColorRules.colorizeWithStyle(text, ColorRules.MAGENTA, ColorRules.BOLD);
+    }
+
+    /**
+     * Borders/headers của DETAILED. Layout tree (trace có nested spans) có thêm cột Self sau cột Total
+     */
+    private static final class DetailedLayout {
+        final boolean tree;
+        final int width;
+        final String top;
+        final String separator;
+        final String thinBold;
+        final String thinPlain;
+        final String bottom;
+        final String summaryHeader;
+        final String breakdownHeader;
+        final String columns;
+
+        DetailedLayout(boolean tree) {
+            this.tree = tree;
+            this.width = DETAILED_WIDTH + (tree ? DETAILED_DURATION_WIDTH + 2 : 0);
+            this.top = ColorRules.colorizeWithStyle(
+                    "╔" + "═".repeat(width - 2) + "╗", ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+            this.separator = ColorRules.colorizeWithStyle(
+                    "╠" + "═".repeat(width - 2) + "╣", ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+            String thin = "╟" + "─".repeat(width - 2) + "╢";
+            this.thinBold = ColorRules.colorizeWithStyle(thin, ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+            this.thinPlain = ColorRules.colorize(thin, ColorRules.CYAN) + NEWLINE;
+            this.bottom = ColorRules.colorizeWithStyle(
+                    "╚" + "═".repeat(width - 2) + "╝", ColorRules.BLUE, ColorRules.BOLD) + NEWLINE;
+            this.summaryHeader = ColorRules.colorizeWithStyle(
+                    "║ 📊 SUMMARY" + " ".repeat(width - 13) + "║\n", ColorRules.GREEN, ColorRules.BOLD);
+            this.breakdownHeader = ColorRules.colorizeWithStyle(
+                    "║ 🔍 DETAILED BREAKDOWN" + " ".repeat(width - 23) + "║\n", ColorRules.MAGENTA, ColorRules.BOLD);
+            this.columns = "║"
+                    + headerCell(String.format(" %" + DETAILED_INDEX_WIDTH + "s", "#")) + " │"
+                    + headerCell(String.format(" %-" + (DETAILED_NAME_WIDTH - 1) + "s", "Operation")) + " │"
+                    + headerCell(String.format(" %" + (DETAILED_DURATION_WIDTH - 1) + "s", tree ? "Total" : "Duration"))
+                    + " │"
+                    + (tree ? headerCell(String.format(" %" + (DETAILED_DURATION_WIDTH - 1) + "s", "Self")) + " │" : "")
+                    + headerCell(String.format(" %" + (DETAILED_PERCENT_WIDTH - 1) + "s", "Percent")) + " │"
+                    + headerCell(String.format(" %-" + (DETAILED_BAR_WIDTH - 1) + "s", "Progress")) + " ║\n";
+        }
+    }
+
+    /**
+     * Render trace theo output style của nó vào sb
+     */
+    public static void render(Tracer tracer, StringBuilder sb) {
+        render(tracer, tracer.getOutputStyle(), sb);
+    }
+
+    /**
+     * Render trace theo style cho trước (bỏ qua output style của tracer) vào sb
+     */
+    public static void render(Tracer tracer, OutputStyle style, StringBuilder sb) {
+        switch (style) {
+            case COLORFUL:
+                renderColorful(tracer, sb);
+                break;
+            case MINIMAL:
+                renderMinimal(tracer, sb);
+                break;
+            case DETAILED:
+                renderDetailed(tracer, sb);
+                break;
+            case TABLE:
+                renderTable(tracer, sb);
+                break;
+            case JSON:
+                sb.append(JSON_BANNER);
+                JsonTraceEncoder.appendTo(tracer, sb, true);
+                sb.append(NEWLINE);
+                break;
+            case NDJSON:
+                JsonTraceEncoder.appendTo(tracer, sb, false);
+                sb.append(NEWLINE);
+                break;
+            case CHROME_TRACE:
+                ChromeTraceEncoder.appendTo(tracer, sb);
+                sb.append(NEWLINE);
+                break;
+            default:
+                renderDefault(tracer, sb);
+                break;
+        }
+    }
+
     /**
      * Render default style output
      */
     public static String renderDefault(Tracer tracer) {
-        StringBuilder sb = new StringBuilder();
-        Duration totalDuration = tracer.getTotalDuration();
-        List<Measurement> measurements = tracer.getMeasurements();
-        
-        String separator = "=".repeat(70);
-        String thinSeparator = "-".repeat(70);
-        
-        sb.append(ColorRules.colorizeWithStyle(separator, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        sb.append(ColorRules.colorizeWithStyle(String.format("| %-66s |", tracer.getName()), 
-                ColorRules.YELLOW, ColorRules.BOLD)).append("\n");
-        sb.append(ColorRules.colorizeWithStyle(separator, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        sb.append(ColorRules.colorizeWithStyle(String.format("| %-20s | ", "Total time"), 
-                ColorRules.GREEN, ColorRules.BOLD));
-        sb.append(ColorRules.colorize(String.format("%-45s |", totalDuration), ColorRules.GREEN)).append("\n");
-        sb.append(ColorRules.colorize(thinSeparator, ColorRules.CYAN)).append("\n");
-        sb.append(ColorRules.colorizeWithStyle(String.format("| %-45s | %-20s |", "Span", "Execution time"), 
-                ColorRules.MAGENTA, ColorRules.BOLD)).append("\n");
-        sb.append(ColorRules.colorize(thinSeparator, ColorRules.CYAN)).append("\n");
-        
+        StringBuilder sb = new StringBuilder(1024);
+        renderDefault(tracer, sb);
+        return sb.toString();
+    }
+
+    public static void renderDefault(Tracer tracer, StringBuilder sb) {
+        long totalNanos = tracer.getTotalNanos();
+        SpanBuffer spans = tracer.spans();
+
+        sb.append(DEFAULT_SEPARATOR);
+        sb.append(ColorRules.BOLD).append(ColorRules.YELLOW).append("| ");
+        appendPadded(sb, tracer.getName(), 66);
+        sb.append(" |").append(ColorRules.RESET).append(NEWLINE);
+        sb.append(DEFAULT_SEPARATOR);
+        sb.append(DEFAULT_TOTAL_LABEL);
+        sb.append(ColorRules.GREEN);
+        appendDurationPadded(sb, totalNanos, 45);
+        sb.append(" |").append(ColorRules.RESET).append(NEWLINE);
+        sb.append(DEFAULT_THIN_SEPARATOR);
+        sb.append(DEFAULT_HEADER);
+        sb.append(DEFAULT_THIN_SEPARATOR);
+
         // Exclude "End" measurement
-        for (int i = 0; i < measurements.size() - 1; i++) {
-            Measurement m = measurements.get(i);
-            String spanColor = ColorRules.getSpanColor(m.getDuration());
-            sb.append("| ");
-            sb.append(ColorRules.colorize(String.format("%-45s", m.getStatement()), spanColor));
-            sb.append(" | ");
-            sb.append(ColorRules.colorize(String.format("%-20s", m.getDuration()), spanColor));
-            sb.append(" |\n");
+        for (int i = 0; i < spans.size() - 1; i++) {
+            long nanos = spans.durationNanos(i);
+            String spanColor = ColorRules.getSpanColor(nanos);
+            sb.append("| ").append(spanColor);
+            appendIndent(sb, spans.depth(i));
+            appendPadded(sb, spanLabel(spans, i), 45 - 2 * spans.depth(i));
+            sb.append(ColorRules.RESET).append(" | ").append(spanColor);
+            appendDurationPadded(sb, nanos, 20);
+            sb.append(ColorRules.RESET).append(" |\n");
         }
-        
-        sb.append(ColorRules.colorizeWithStyle(separator, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        return sb.toString();
+
+        sb.append(DEFAULT_SEPARATOR);
     }
-    
+
     /**
      * Render colorful style output
      */
     public static String renderColorful(Tracer tracer) {
-        StringBuilder sb = new StringBuilder();
-        Duration totalDuration = tracer.getTotalDuration();
-        List<Measurement> measurements = tracer.getMeasurements();
-        
-        final int nameWidth = 35;
-        final int durationWidth = 25;
-        final int totalTableWidth = nameWidth + durationWidth + 4;
-        
-        String topBorder = "┌" + "─".repeat(totalTableWidth - 2) + "┐";
-        String separator = "├" + "─".repeat(totalTableWidth - 2) + "┤";
-        String bottomBorder = "└" + "─".repeat(totalTableWidth - 2) + "┘";
-        
+        StringBuilder sb = new StringBuilder(1024);
+        renderColorful(tracer, sb);
+        return sb.toString();
+    }
+
+    public static void renderColorful(Tracer tracer, StringBuilder sb) {
+        long totalNanos = tracer.getTotalNanos();
+        SpanBuffer spans = tracer.spans();
+
         // Header
-        sb.append(ColorRules.colorizeWithStyle(topBorder, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        
+        sb.append(BOX_TOP_BOLD);
+
         // Title row
-        String titleText = "🚀 " + tracer.getName();
-        int titlePadding = Math.max(1, (totalTableWidth - titleText.length() - 2) / 2);
-        int remainingPadding = Math.max(1, totalTableWidth - titleText.length() - titlePadding - 2);
-        
-        String titleStr = String.format("│%s%s%s│",
-                " ".repeat(titlePadding), titleText, " ".repeat(remainingPadding));
-        sb.append(ColorRules.colorizeWithStyle(titleStr, ColorRules.YELLOW, ColorRules.BOLD)).append("\n");
-        
+        sb.append(ColorRules.BOLD).append(ColorRules.YELLOW);
+        appendCentered(sb, '│', "🚀 ", tracer.getName(), BOX_WIDTH);
+        sb.append(ColorRules.RESET).append(NEWLINE);
+
         // Caller info if available
-        if (!tracer.getCallerInfo().equals("Unknown:0")) {
-            String callerInfo = String.format("📍 File: %s", tracer.getCallerInfo());
-            int callerPadding = Math.max(1, (totalTableWidth - callerInfo.length() - 2) / 2);
-            int remainingCallerPadding = Math.max(1, totalTableWidth - callerInfo.length() - callerPadding - 2);
-            
-            String callerStr = String.format("│%s%s%s│",
-                    " ".repeat(callerPadding), callerInfo, " ".repeat(remainingCallerPadding));
-            sb.append(ColorRules.colorize(callerStr, ColorRules.BRIGHT_BLACK)).append("\n");
-        }
-        
-        sb.append(ColorRules.colorizeWithStyle(separator, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        
+        appendCenteredCallerInfo(sb, tracer, BOX_WIDTH);
+
+        sb.append(BOX_SEPARATOR_BOLD);
+
         // Total time row
-        String totalLine = String.format("│ ⏱️  Total Time: %-" + (nameWidth - 16) + "s │ %s",
-                "", totalDuration);
-        sb.append(ColorRules.colorizeWithStyle(totalLine, ColorRules.GREEN, ColorRules.BOLD)).append("\n");
-        
-        sb.append(ColorRules.colorize(separator, ColorRules.CYAN)).append("\n");
-        
-        // Column headers
-        String headerLine = String.format("│ %-" + nameWidth + "s │ %s", "📋 Span", "⏰ Duration");
-        sb.append(ColorRules.colorizeWithStyle(headerLine, ColorRules.MAGENTA, ColorRules.BOLD)).append("\n");
-        
-        sb.append(ColorRules.colorize(separator, ColorRules.CYAN)).append("\n");
-        
+        sb.append(COLORFUL_TOTAL_PREFIX);
+        DurationFormat.appendIso(sb, totalNanos);
+        sb.append(ColorRules.RESET).append(NEWLINE);
+
+        sb.append(BOX_SEPARATOR_PLAIN);
+        sb.append(COLORFUL_HEADER);
+        sb.append(BOX_SEPARATOR_PLAIN);
+
         // Spans với colorful formatting
-        for (int i = 0; i < measurements.size() - 1; i++) {
-            Measurement m = measurements.get(i);
-            String spanColor = ColorRules.getSpanColor(m.getDuration());
-            
-            String spanName = m.getStatement();
-            if (spanName.length() > nameWidth) {
-                spanName = spanName.substring(0, nameWidth - 3) + "...";
-            }
-            
-            sb.append("│ ");
-            sb.append(ColorRules.colorize(String.format("%-" + nameWidth + "s", spanName), spanColor));
-            sb.append(" │ ");
-            sb.append(ColorRules.colorize(m.getDuration().toString(), spanColor));
-            sb.append("\n");
+        for (int i = 0; i < spans.size() - 1; i++) {
+            long nanos = spans.durationNanos(i);
+            String spanColor = ColorRules.getSpanColor(nanos);
+            sb.append("│ ").append(spanColor);
+            appendFitted(sb, spans.depth(i), "", spanLabel(spans, i), BOX_NAME_WIDTH, BOX_NAME_WIDTH - 3, BOX_NAME_WIDTH);
+            sb.append(ColorRules.RESET).append(" │ ").append(spanColor);
+            DurationFormat.appendIso(sb, nanos);
+            sb.append(ColorRules.RESET).append(NEWLINE);
         }
-        
-        sb.append(ColorRules.colorizeWithStyle(bottomBorder, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        return sb.toString();
+
+        sb.append(BOX_BOTTOM_BOLD);
     }
-    
+
     /**
      * Render minimal style output
      */
     public static String renderMinimal(Tracer tracer) {
-        StringBuilder sb = new StringBuilder();
-        Duration totalDuration = tracer.getTotalDuration();
-        List<Measurement> measurements = tracer.getMeasurements();
-        
-        final int nameWidth = 35;
-        final int durationWidth = 25;
-        final int totalWidth = nameWidth + durationWidth + 4;
-        
-        String topBorder = "┌" + "─".repeat(totalWidth - 2) + "┐";
-        String separator = "├" + "─".repeat(totalWidth - 2) + "┤";
-        String bottomBorder = "└" + "─".repeat(totalWidth - 2) + "┘";
-        
-        sb.append(ColorRules.colorizeWithStyle(topBorder, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        
+        StringBuilder sb = new StringBuilder(1024);
+        renderMinimal(tracer, sb);
+        return sb.toString();
+    }
+
+    public static void renderMinimal(Tracer tracer, StringBuilder sb) {
+        long totalNanos = tracer.getTotalNanos();
+        SpanBuffer spans = tracer.spans();
+
+        sb.append(BOX_TOP_BOLD);
+
         // Title and total time
-        String titleText = "⚡ " + tracer.getName();
-        if (titleText.length() > nameWidth) {
-            titleText = titleText.substring(0, nameWidth - 3) + "...";
-        }
-        
-        String titleLine = String.format("│ %-" + nameWidth + "s │ %s", titleText, totalDuration);
-        sb.append(ColorRules.colorizeWithStyle(titleLine, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        
+        sb.append(ColorRules.BOLD).append(ColorRules.CYAN).append("│ ");
+        appendFitted(sb, "⚡ ", tracer.getName(), BOX_NAME_WIDTH, BOX_NAME_WIDTH - 3, BOX_NAME_WIDTH);
+        sb.append(" │ ");
+        DurationFormat.appendIso(sb, totalNanos);
+        sb.append(ColorRules.RESET).append(NEWLINE);
+
         // Caller info if available
-        if (!tracer.getCallerInfo().equals("Unknown:0")) {
-            String callerInfo = String.format("📍 File: %s", tracer.getCallerInfo());
-            if (callerInfo.length() > nameWidth) {
-                callerInfo = callerInfo.substring(0, nameWidth - 3) + "...";
-            }
-            
-            String callerLine = String.format("│ %-" + nameWidth + "s │ %s", callerInfo, "");
-            sb.append(ColorRules.colorize(callerLine, ColorRules.BRIGHT_BLACK)).append("\n");
+        String callerInfo = tracer.getCallerInfo();
+        if (!callerInfo.equals(Tracer.UNKNOWN_CALLER)) {
+            sb.append(ColorRules.BRIGHT_BLACK).append("│ ");
+            appendFitted(sb, CALLER_PREFIX, callerInfo, BOX_NAME_WIDTH, BOX_NAME_WIDTH - 3, BOX_NAME_WIDTH);
+            sb.append(" │ ").append(ColorRules.RESET).append(NEWLINE);
         }
-        
-        sb.append(ColorRules.colorize(separator, ColorRules.CYAN)).append("\n");
-        
-        // Minimal span listing
-        for (int i = 0; i < measurements.size() - 1; i++) {
-            Measurement m = measurements.get(i);
-            String spanColor = ColorRules.getSpanColor(m.getDuration());
-            
-            String spanName = "  └─ " + m.getStatement();
-            if (spanName.length() > nameWidth) {
-                spanName = spanName.substring(0, nameWidth - 3) + "...";
+
+        sb.append(BOX_SEPARATOR_PLAIN);
+
+        // Minimal span listing - nested spans thụt vào theo depth, span có con hiện thêm self time
+        for (int i = 0; i < spans.size() - 1; i++) {
+            long nanos = spans.durationNanos(i);
+            String spanColor = ColorRules.getSpanColor(nanos);
+            sb.append("│ ").append(spanColor);
+            appendFitted(sb, spans.depth(i), "  └─ ", spanLabel(spans, i), BOX_NAME_WIDTH, BOX_NAME_WIDTH - 3, BOX_NAME_WIDTH);
+            sb.append(ColorRules.RESET).append(" │ ").append(spanColor);
+            DurationFormat.appendIso(sb, nanos);
+            if (spans.childNanos(i) > 0) {
+                sb.append(ColorRules.BRIGHT_BLACK).append(" (self ");
+                DurationFormat.appendIso(sb, spans.selfNanos(i));
+                sb.append(')');
             }
-            
-            sb.append("│ ");
-            sb.append(ColorRules.colorize(String.format("%-" + nameWidth + "s", spanName), spanColor));
-            sb.append(" │ ");
-            sb.append(ColorRules.colorize(m.getDuration().toString(), spanColor));
-            sb.append("\n");
+            sb.append(ColorRules.RESET).append(NEWLINE);
         }
-        
-        sb.append(ColorRules.colorizeWithStyle(bottomBorder, ColorRules.CYAN, ColorRules.BOLD)).append("\n");
-        return sb.toString();
+
+        sb.append(BOX_BOTTOM_BOLD);
     }
-    
+
     /**
      * Render detailed style output with smart filtering
      */
     public static String renderDetailed(Tracer tracer) {
-        StringBuilder sb = new StringBuilder();
-        Duration totalDuration = tracer.getTotalDuration();
-        List<Measurement> measurements = tracer.getMeasurements();
-        
-        final int indexWidth = 3;
-        final int nameWidth = 30;
-        final int durationWidth = 15;
-        final int percentWidth = 8;
-        final int barWidth = 12;
-        final int totalWidth = indexWidth + nameWidth + durationWidth + percentWidth + barWidth + 12;
-        
-        // Unicode borders
-        String topBorder = "╔" + "═".repeat(totalWidth - 2) + "╗";
-        String separator = "╠" + "═".repeat(totalWidth - 2) + "╣";
-        String thinSeparator = "╟" + "─".repeat(totalWidth - 2) + "╢";
-        String bottomBorder = "╚" + "═".repeat(totalWidth - 2) + "╝";
-        
+        StringBuilder sb = new StringBuilder(2048);
+        renderDetailed(tracer, sb);
+        return sb.toString();
+    }
+
+    public static void renderDetailed(Tracer tracer, StringBuilder sb) {
+        long totalNanos = tracer.getTotalNanos();
+        SpanBuffer spans = tracer.spans();
+        int spanCount = Math.max(0, spans.size() - 1);
+        boolean filtered = tracer.hasActiveFilters();
+        // Filtering/grouping làm việc trên danh sách phẳng nên chỉ dùng layout tree khi không có filter
+        DetailedLayout layout = !filtered && spans.hasHierarchy() ? DETAILED_TREE : DETAILED_FLAT;
+
         // Header
-        sb.append(ColorRules.colorizeWithStyle(topBorder, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
+        sb.append(layout.top);
+
         // Title row
-        String titleText = "🎯 TRACE: " + tracer.getName();
-        int titlePadding = Math.max(1, (totalWidth - titleText.length() - 2) / 2);
-        int remainingPadding = Math.max(1, totalWidth - titleText.length() - titlePadding - 2);
-        
-        String titleStr = String.format("║%s%s%s║",
-                " ".repeat(titlePadding), titleText, " ".repeat(remainingPadding));
-        sb.append(ColorRules.colorizeWithStyle(titleStr, ColorRules.MAGENTA, ColorRules.BOLD)).append("\n");
-        
-        sb.append(ColorRules.colorizeWithStyle(separator, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
+        sb.append(ColorRules.BOLD).append(ColorRules.MAGENTA);
+        appendCentered(sb, '║', "🎯 TRACE: ", tracer.getName(), layout.width);
+        sb.append(ColorRules.RESET).append(NEWLINE);
+
+        sb.append(layout.separator);
+
         // Summary section
-        sb.append(ColorRules.colorizeWithStyle("║ 📊 SUMMARY" + " ".repeat(totalWidth - 13) + "║\n", 
-                ColorRules.GREEN, ColorRules.BOLD));
-        
+        sb.append(layout.summaryHeader);
+
         // Total execution time
-        String totalTimeStr = totalDuration.toString();
-        String prefix = "║ • Total Execution Time: ";
-        int usedWidth = prefix.length() + totalTimeStr.length();
-        int paddingRight = Math.max(0, totalWidth - usedWidth - 1);
-        
-        sb.append(prefix);
-        sb.append(ColorRules.colorizeWithStyle(totalTimeStr, ColorRules.GREEN, ColorRules.BOLD));
-        sb.append(" ".repeat(paddingRight)).append("║\n");
-        
+        sb.append(PREFIX_TOTAL_TIME).append(ColorRules.BOLD).append(ColorRules.GREEN);
+        int mark = sb.length();
+        DurationFormat.appendIso(sb, totalNanos);
+        appendSummaryEnd(sb, layout.width, PREFIX_TOTAL_TIME.length() + sb.length() - mark);
+
         // Number of spans
-        int spanCount = measurements.size() - 1;
-        String spanCountStr = String.valueOf(spanCount);
-        prefix = "║ • Number of Spans: ";
-        usedWidth = prefix.length() + spanCountStr.length();
-        paddingRight = Math.max(0, totalWidth - usedWidth - 1);
-        
-        sb.append(prefix);
-        sb.append(ColorRules.colorizeWithStyle(spanCountStr, ColorRules.BLUE, ColorRules.BOLD));
-        sb.append(" ".repeat(paddingRight)).append("║\n");
-        
+        sb.append(PREFIX_SPAN_COUNT).append(ColorRules.BOLD).append(ColorRules.BLUE);
+        mark = sb.length();
+        sb.append(spanCount);
+        appendSummaryEnd(sb, layout.width, PREFIX_SPAN_COUNT.length() + sb.length() - mark);
+
         // Find slowest operation
-        Measurement slowest = measurements.stream()
-                .limit(measurements.size() - 1)
-                .max(Comparator.comparing(Measurement::getDuration))
-                .orElse(new Measurement("None", Duration.ZERO));
-        
-        String slowestName = slowest.getStatement();
-        if (slowestName.length() > 25) {
-            slowestName = slowestName.substring(0, 22) + "...";
-        }
-        
-        prefix = "║ • Slowest Operation: ";
-        usedWidth = prefix.length() + slowestName.length();
-        paddingRight = Math.max(0, totalWidth - usedWidth - 1);
-        
-        sb.append(prefix);
-        sb.append(ColorRules.colorizeWithStyle(slowestName, ColorRules.RED, ColorRules.BOLD));
-        sb.append(" ".repeat(paddingRight)).append("║\n");
-        
-        String slowestDurStr = slowest.getDuration().toString();
-        prefix = "║ • Slowest Duration: ";
-        usedWidth = prefix.length() + slowestDurStr.length();
-        paddingRight = Math.max(0, totalWidth - usedWidth - 1);
-        
-        sb.append(prefix);
-        sb.append(ColorRules.colorizeWithStyle(slowestDurStr, ColorRules.RED, ColorRules.BOLD));
-        sb.append(" ".repeat(paddingRight)).append("║\n");
-        
+        int slowest = slowestIndex(spans);
+        String slowestName = slowest >= 0 ? spanLabel(spans, slowest) : "None";
+        long slowestNanos = slowest >= 0 ? spans.selfNanos(slowest) : 0;
+
+        sb.append(PREFIX_SLOWEST_NAME).append(ColorRules.BOLD).append(ColorRules.RED);
+        mark = sb.length();
+        appendFitted(sb, "", slowestName, 25, 22, 0);
+        appendSummaryEnd(sb, layout.width, PREFIX_SLOWEST_NAME.length() + sb.length() - mark);
+
+        sb.append(PREFIX_SLOWEST_DURATION).append(ColorRules.BOLD).append(ColorRules.RED);
+        mark = sb.length();
+        DurationFormat.appendIso(sb, slowestNanos);
+        appendSummaryEnd(sb, layout.width, PREFIX_SLOWEST_DURATION.length() + sb.length() - mark);
+
         // Caller info if available
-        if (!tracer.getCallerInfo().equals("Unknown:0")) {
-            String callerInfoStr = tracer.getCallerInfo();
-            prefix = "║ • File: ";
-            sb.append(prefix);
-            sb.append(ColorRules.colorizeWithStyle(callerInfoStr, ColorRules.BRIGHT_BLACK, ColorRules.BOLD));
-            sb.append("║\n");
+        String callerInfo = tracer.getCallerInfo();
+        if (!callerInfo.equals(Tracer.UNKNOWN_CALLER)) {
+            sb.append("║ • File: ").append(ColorRules.BOLD).append(ColorRules.BRIGHT_BLACK)
+              .append(callerInfo).append(ColorRules.RESET).append("║\n");
         }
-        
-        sb.append(ColorRules.colorizeWithStyle(separator, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
+
+        sb.append(layout.separator);
+
         // Detailed breakdown header
-        sb.append(ColorRules.colorizeWithStyle("║ 🔍 DETAILED BREAKDOWN" + " ".repeat(totalWidth - 23) + "║\n", 
-                ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append(ColorRules.colorizeWithStyle(thinSeparator, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
-        // Column headers
-        sb.append("║");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %" + indexWidth + "s", "#"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append(" │");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %-" + (nameWidth - 1) + "s", "Operation"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append(" │");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %" + (durationWidth - 1) + "s", "Duration"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append(" │");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %" + (percentWidth - 1) + "s", "Percent"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append(" │");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %-" + (barWidth - 1) + "s", "Progress"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append(" ║\n");
-        
-        sb.append(ColorRules.colorize(thinSeparator, ColorRules.CYAN)).append("\n");
-        
-        // Apply smart filtering to measurements  
-        List<Object> filteredData = tracer.applySmartFiltering(measurements.subList(0, measurements.size() - 1));
-        
-        // Data rows với smart filtering
-        for (int i = 0; i < filteredData.size(); i++) {
-            Object item = filteredData.get(i);
-            String operationName;
-            Duration duration;
-            boolean isGrouped = false;
-            
-            // Check if it's a grouped measurement or regular measurement
-            if (item instanceof GroupedMeasurement) {
-                GroupedMeasurement group = (GroupedMeasurement) item;
-                operationName = group.getName();
-                duration = group.getAvgTime();
-                isGrouped = true;
-            } else {
-                Measurement m = (Measurement) item;
-                operationName = m.getStatement();
-                duration = m.getDuration();
-            }
-            
-            double percentage = (double) duration.toNanos() / totalDuration.toNanos() * 100;
-            
-            // Progress bar
-            int barLength = Math.min(barWidth - 1, Math.max(0, (int) (percentage / 8)));
-            String progressBar = "█".repeat(barLength) + "░".repeat((barWidth - 1) - barLength);
-            
-            // Add icon for grouped items  
-            String displayName = operationName;
-            if (isGrouped) {
-                displayName = "📦 " + operationName;
+        sb.append(layout.breakdownHeader);
+        sb.append(layout.thinBold);
+        sb.append(layout.columns);
+        sb.append(layout.thinPlain);
+
+        if (!filtered) {
+            // Fast path: đọc thẳng từ columnar buffer
+            for (int i = 0; i < spanCount; i++) {
+                if (layout.tree) {
+                    appendDetailedTreeRow(sb, i + 1, spans, i, totalNanos);
+                } else {
+                    appendDetailedRow(sb, i + 1, spanLabel(spans, i), spans.durationNanos(i), false, totalNanos);
+                }
             }
-            
-            // Truncate operation name if too long
-            if (displayName.length() > nameWidth - 1) {
-                displayName = displayName.substring(0, nameWidth - 4) + "...";
+        } else {
+            // Apply smart filtering to measurements
+            List<Object> filteredData = tracer.applySmartFiltering(tracer.getMeasurementsView().subList(0, spanCount));
+
+            for (int i = 0; i < filteredData.size(); i++) {
+                Object item = filteredData.get(i);
+                if (item instanceof GroupedMeasurement) {
+                    GroupedMeasurement group = (GroupedMeasurement) item;
+                    appendDetailedRow(sb, i + 1, group.getName(), group.getAvgTime().toNanos(), true, totalNanos);
+                } else {
+                    Measurement m = (Measurement) item;
+                    appendDetailedRow(sb, i + 1, m.getStatement(), m.getDurationNanos(), false, totalNanos);
+                }
             }
-            
-            String percentStr = String.format("%.1f%%", percentage);
-            String spanColor = ColorRules.getSpanColor(duration);
-            String progressColor = ColorRules.BLUE + ColorRules.BOLD;
-            
-            sb.append("║");
-            sb.append(String.format(" %" + indexWidth + "d", i + 1));
-            sb.append(" │ ");
-            sb.append(ColorRules.colorize(String.format("%-" + (nameWidth - 1) + "s", displayName), spanColor));
-            sb.append(" │ ");
-            sb.append(ColorRules.colorize(String.format("%" + (durationWidth - 2) + "s", duration), spanColor));
-            sb.append(" │ ");
-            sb.append(ColorRules.colorize(String.format("%" + (percentWidth - 2) + "s", percentStr), spanColor));
-            sb.append(" │ ");
-            sb.append(ColorRules.colorize(String.format("%-" + (barWidth - 1) + "s", progressBar), progressColor));
-            sb.append(" ║\n");
+
+            // Filtering summary
+            sb.append(layout.thinPlain);
+            sb.append("║ ").append(ColorRules.BRIGHT_BLACK);
+            mark = sb.length();
+            sb.append("🔍 Filtered: ").append(filteredData.size()).append('/').append(spanCount)
+              .append(" spans | Active: ").append(tracer.getActiveFiltersInfo());
+            padFrom(sb, mark, layout.width - 4);
+            sb.append(ColorRules.RESET).append(" ║\n");
         }
-        
-        // Show filtering summary if any filters are applied
-        if (tracer.hasActiveFilters()) {
-            sb.append(ColorRules.colorize(thinSeparator, ColorRules.CYAN)).append("\n");
-            
-            int originalCount = measurements.size() - 1;
-            int filteredCount = filteredData.size();
-            
-            String filterInfo = String.format("🔍 Filtered: %d/%d spans | Active: %s",
-                    filteredCount, originalCount, tracer.getActiveFiltersInfo());
-            
-            sb.append("║ ");
-            sb.append(ColorRules.colorize(String.format("%-" + (totalWidth - 4) + "s", filterInfo), ColorRules.BRIGHT_BLACK));
-            sb.append(" ║\n");
+
+        sb.append(layout.bottom);
+    }
+
+    private static void appendDetailedRow(StringBuilder sb, int index, String name, long nanos,
+                                          boolean grouped, long totalNanos) {
+        String spanColor = ColorRules.getSpanColor(nanos);
+        appendDetailedName(sb, index, 0, grouped ? "📦 " : "", name, spanColor);
+        appendDetailedDuration(sb, nanos, spanColor);
+        appendDetailedPercent(sb, nanos, totalNanos, spanColor);
+    }
+
+    /**
+     * Row của layout tree: tên thụt theo depth, cột Total rồi cột Self (total trừ thời gian của các span con)
+     */
+    private static void appendDetailedTreeRow(StringBuilder sb, int index, SpanBuffer spans, int i, long totalNanos) {
+        long nanos = spans.durationNanos(i);
+        String spanColor = ColorRules.getSpanColor(nanos);
+        appendDetailedName(sb, index, spans.depth(i), "", spanLabel(spans, i), spanColor);
+        appendDetailedDuration(sb, nanos, spanColor);
+        long selfNanos = spans.selfNanos(i);
+        appendDetailedDuration(sb, selfNanos, ColorRules.getSpanColor(selfNanos));
+        appendDetailedPercent(sb, nanos, totalNanos, spanColor);
+    }
+
+    private static void appendDetailedName(StringBuilder sb, int index, int depth, String prefix, String name,
+                                           String spanColor) {
+        sb.append("║ ");
+        int mark = sb.length();
+        sb.append(index);
+        padLeftFrom(sb, mark, DETAILED_INDEX_WIDTH);
+
+        sb.append(" │ ").append(spanColor);
+        // Add icon for grouped items, truncate operation name if too long
+        appendFitted(sb, depth, prefix, name, DETAILED_NAME_WIDTH - 1, DETAILED_NAME_WIDTH - 4,
+                DETAILED_NAME_WIDTH - 1);
+    }
+
+    private static void appendDetailedDuration(StringBuilder sb, long nanos, String spanColor) {
+        sb.append(ColorRules.RESET).append(" │ ").append(spanColor);
+        int mark = sb.length();
+        DurationFormat.appendIso(sb, nanos);
+        padLeftFrom(sb, mark, DETAILED_DURATION_WIDTH - 2);
+    }
+
+    /**
+     * Cột Percent, progress bar và border đóng row
+     */
+    private static void appendDetailedPercent(StringBuilder sb, long nanos, long totalNanos, String spanColor) {
+        double percentage = (double) nanos / totalNanos * 100;
+        int barLength = Math.min(DETAILED_BAR_WIDTH - 1, Math.max(0, (int) (percentage / 8)));
+
+        sb.append(ColorRules.RESET).append(" │ ").append(spanColor);
+        int mark = sb.length();
+        DurationFormat.appendOneDecimal(sb, percentage);
+        sb.append('%');
+        padLeftFrom(sb, mark, DETAILED_PERCENT_WIDTH - 2);
+
+        sb.append(ColorRules.RESET).append(" │ ").append(DETAILED_PROGRESS_COLOR);
+        for (int b = 0; b < barLength; b++) {
+            sb.append('█');
         }
-        
-        sb.append(ColorRules.colorizeWithStyle(bottomBorder, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        return sb.toString();
+        for (int b = barLength; b < DETAILED_BAR_WIDTH - 1; b++) {
+            sb.append('░');
+        }
+        sb.append(ColorRules.RESET).append(" ║\n");
     }
-    
+
+    /**
+     * Kết thúc một dòng summary: reset màu, pad tới mép phải và đóng border
+     */
+    private static void appendSummaryEnd(StringBuilder sb, int width, int usedWidth) {
+        sb.append(ColorRules.RESET);
+        appendSpaces(sb, width - usedWidth - 1);
+        sb.append("║\n");
+    }
+
     /**
      * Render table style output
      */
     public static String renderTable(Tracer tracer) {
-        StringBuilder sb = new StringBuilder();
-        Duration totalDuration = tracer.getTotalDuration();
-        List<Measurement> measurements = tracer.getMeasurements();
-        
-        final int indexWidth = 4;
-        final int nameWidth = 45;
-        final int durationWidth = 20;
-        final int totalTableWidth = indexWidth + nameWidth + durationWidth + 3;
-        
-        String topBorder = "┌" + "─".repeat(indexWidth) + "┬" + "─".repeat(nameWidth) + "┬" + "─".repeat(durationWidth) + "┐";
-        String headerSeparator = "├" + "─".repeat(indexWidth) + "┼" + "─".repeat(nameWidth) + "┼" + "─".repeat(durationWidth) + "┤";
-        String bottomBorder = "└" + "─".repeat(indexWidth) + "┴" + "─".repeat(nameWidth) + "┴" + "─".repeat(durationWidth) + "┘";
-        
+        StringBuilder sb = new StringBuilder(2048);
+        renderTable(tracer, sb);
+        return sb.toString();
+    }
+
+    public static void renderTable(Tracer tracer, StringBuilder sb) {
+        long totalNanos = tracer.getTotalNanos();
+        SpanBuffer spans = tracer.spans();
+        int spanCount = Math.max(0, spans.size() - 1);
+
         // Header
-        sb.append(ColorRules.colorizeWithStyle(topBorder, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
-        // Table title
-        int titlePadding = Math.max(1, (totalTableWidth - tracer.getName().length() - 4) / 2);
-        int remainingPadding = Math.max(1, totalTableWidth - tracer.getName().length() - titlePadding - 4);
-        
-        String titleStr = String.format("│%s🚀 %s%s│",
-                " ".repeat(titlePadding), tracer.getName(), " ".repeat(remainingPadding));
-        sb.append(ColorRules.colorizeWithStyle(titleStr, ColorRules.MAGENTA, ColorRules.BOLD)).append("\n");
-        
+        sb.append(TABLE_TOP);
+
+        // Table title - padding tính theo độ dài tên, không tính icon
+        String name = String.valueOf(tracer.getName());
+        int titlePadding = Math.max(1, (TABLE_WIDTH - name.length() - 4) / 2);
+        int remainingPadding = Math.max(1, TABLE_WIDTH - name.length() - titlePadding - 4);
+        sb.append(ColorRules.BOLD).append(ColorRules.MAGENTA).append('│');
+        appendSpaces(sb, titlePadding);
+        sb.append("🚀 ").append(name);
+        appendSpaces(sb, remainingPadding);
+        sb.append('│').append(ColorRules.RESET).append(NEWLINE);
+
         // Caller info if available
-        if (!tracer.getCallerInfo().equals("Unknown:0")) {
-            String callerInfo = String.format("📍 File: %s", tracer.getCallerInfo());
-            int callerPadding = Math.max(1, (totalTableWidth - callerInfo.length() - 2) / 2);
-            int remainingCallerPadding = Math.max(1, totalTableWidth - callerInfo.length() - callerPadding - 2);
-            
-            String callerStr = String.format("│%s%s%s│",
-                    " ".repeat(callerPadding), callerInfo, " ".repeat(remainingCallerPadding));
-            sb.append(ColorRules.colorize(callerStr, ColorRules.BRIGHT_BLACK)).append("\n");
-        }
-        
-        sb.append(ColorRules.colorizeWithStyle(headerSeparator, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
-        // Column headers
-        sb.append("│");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %-2s ", "No"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append("│");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %-" + (nameWidth - 1) + "s", "Span Name"), ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append("│");
-        sb.append(ColorRules.colorizeWithStyle(" Duration", ColorRules.MAGENTA, ColorRules.BOLD));
-        sb.append("│\n");
-        
-        sb.append(ColorRules.colorize(headerSeparator, ColorRules.CYAN)).append("\n");
-        
+        appendCenteredCallerInfo(sb, tracer, TABLE_WIDTH);
+
+        sb.append(TABLE_SEPARATOR_BOLD);
+        sb.append(TABLE_COLUMNS);
+        sb.append(TABLE_SEPARATOR_PLAIN);
+
         // Summary row với total duration
-        sb.append("│");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %-2s ", ""), ColorRules.GREEN, ColorRules.BOLD));
-        sb.append("│");
-        sb.append(ColorRules.colorizeWithStyle(String.format(" %-" + (nameWidth - 1) + "s", "📊 TOTAL EXECUTION TIME"), 
-                ColorRules.GREEN, ColorRules.BOLD));
-        sb.append("│ ");
-        
-        String totalColor = ColorRules.getSpanColor(totalDuration);
-        sb.append(ColorRules.colorize(totalDuration.toString(), totalColor));
-        sb.append("│\n");
-        
-        sb.append(ColorRules.colorize(headerSeparator, ColorRules.CYAN)).append("\n");
-        
+        sb.append(TABLE_TOTAL_ROW_PREFIX).append(ColorRules.getSpanColor(totalNanos));
+        DurationFormat.appendIso(sb, totalNanos);
+        sb.append(ColorRules.RESET).append("│\n");
+
+        sb.append(TABLE_SEPARATOR_PLAIN);
+
         // Data rows với spans
-        for (int i = 0; i < measurements.size() - 1; i++) {
-            Measurement m = measurements.get(i);
-            String spanColor = ColorRules.getSpanColor(m.getDuration());
-            
-            sb.append("│");
-            sb.append(String.format(" %" + (indexWidth - 2) + "d ", i + 1));
-            sb.append("│ ");
-            
-            String spanName = m.getStatement();
-            if (spanName.length() > nameWidth - 2) {
-                spanName = spanName.substring(0, nameWidth - 5) + "...";
-            }
-            sb.append(ColorRules.colorize(String.format("%-" + (nameWidth - 1) + "s", spanName), spanColor));
+        for (int i = 0; i < spanCount; i++) {
+            long nanos = spans.durationNanos(i);
+            String spanColor = ColorRules.getSpanColor(nanos);
+
             sb.append("│ ");
-            
-            sb.append(ColorRules.colorize(m.getDuration().toString(), spanColor));
-            sb.append("│\n");
+            int mark = sb.length();
+            sb.append(i + 1);
+            padLeftFrom(sb, mark, TABLE_INDEX_WIDTH - 2);
+            sb.append(" │ ").append(spanColor);
+            appendFitted(sb, spans.depth(i), "", spanLabel(spans, i), TABLE_NAME_WIDTH - 2, TABLE_NAME_WIDTH - 5, TABLE_NAME_WIDTH - 1);
+            sb.append(ColorRules.RESET).append("│ ").append(spanColor);
+            DurationFormat.appendIso(sb, nanos);
+            sb.append(ColorRules.RESET).append("│\n");
         }
-        
-        sb.append(ColorRules.colorizeWithStyle(bottomBorder, ColorRules.BLUE, ColorRules.BOLD)).append("\n");
-        
+
+        sb.append(TABLE_BOTTOM);
+
         // Summary statistics
-        sb.append("\n");
-        sb.append(ColorRules.colorize(String.format("📈 Spans: %d | ", measurements.size() - 1), ColorRules.BRIGHT_BLACK));
-        
-        Measurement slowest = measurements.stream()
-                .limit(measurements.size() - 1)
-                .max(Comparator.comparing(Measurement::getDuration))
-                .orElse(new Measurement("None", Duration.ZERO));
-        sb.append(ColorRules.colorize(String.format("🐌 Slowest: %s (%s)", slowest.getStatement(), slowest.getDuration()), 
-                ColorRules.BRIGHT_BLACK));
-        sb.append("\n");
-        
-        return sb.toString();
+        sb.append(NEWLINE);
+        sb.append(ColorRules.BRIGHT_BLACK).append("📈 Spans: ").append(spanCount).append(" | ").append(ColorRules.RESET);
+
+        int slowest = slowestIndex(spans);
+        sb.append(ColorRules.BRIGHT_BLACK).append("🐌 Slowest: ").append(slowest >= 0 ? spanLabel(spans, slowest) : "None")
+          .append(" (");
+        DurationFormat.appendIso(sb, slowest >= 0 ? spans.selfNanos(slowest) : 0);
+        sb.append(')').append(ColorRules.RESET).append(NEWLINE);
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Index của span có self time lớn nhất (bỏ "End"); span đầu tiên thắng khi bằng nhau. -1 nếu không có span.
+     * Với trace phẳng self time chính là duration; với nested spans span cha không che mất span con thực sự chậm
+     */
+    private static int slowestIndex(SpanBuffer spans) {
+        int slowest = -1;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < spans.size() - 1; i++) {
+            long nanos = spans.selfNanos(i);
+            if (nanos > max) {
+                max = nanos;
+                slowest = i;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Tên span để hiển thị; timeline gộp từ nhiều thread (concurrent tracer) có thêm nhãn "[T<thread id>] "
+     */
+    private static String spanLabel(SpanBuffer spans, int index) {
+        String name = spans.name(index);
+        return spans.hasThreads() ? "[T" + spans.threadId(index) + "] " + name : name;
+    }
+
+    /**
+     * Dòng "border + padding + prefix + text + padding + border", text căn giữa trong width
+     */
+    private static void appendCentered(StringBuilder sb, char border, String prefix, String text, int width) {
+        text = String.valueOf(text);
+        int length = prefix.length() + text.length();
+        int leftPadding = Math.max(1, (width - length - 2) / 2);
+        int rightPadding = Math.max(1, width - length - leftPadding - 2);
+        sb.append(border);
+        appendSpaces(sb, leftPadding);
+        sb.append(prefix).append(text);
+        appendSpaces(sb, rightPadding);
+        sb.append(border);
+    }
+
+    private static void appendCenteredCallerInfo(StringBuilder sb, Tracer tracer, int width) {
+        String callerInfo = tracer.getCallerInfo();
+        if (!callerInfo.equals(Tracer.UNKNOWN_CALLER)) {
+            sb.append(ColorRules.BRIGHT_BLACK);
+            appendCentered(sb, '│', CALLER_PREFIX, callerInfo, width);
+            sb.append(ColorRules.RESET).append(NEWLINE);
+        }
+    }
+
+    private static void appendFitted(StringBuilder sb, String prefix, String text,
+                                     int maxLength, int keepLength, int padWidth) {
+        appendFitted(sb, 0, prefix, text, maxLength, keepLength, padWidth);
+    }
+
+    /**
+     * Ghi indent (2 spaces mỗi depth) + prefix + text; nếu dài hơn maxLength thì cắt còn keepLength ký tự + "...".
+     * Sau đó pad bên phải tới padWidth (tương đương String.format("%-Ns", ...))
+     */
+    private static void appendFitted(StringBuilder sb, int depth, String prefix, String text,
+                                     int maxLength, int keepLength, int padWidth) {
+        int mark = sb.length();
+        appendIndent(sb, depth);
+        sb.append(prefix).append(text);
+        if (sb.length() - mark > maxLength) {
+            sb.setLength(mark + keepLength);
+            sb.append("...");
+        }
+        padFrom(sb, mark, padWidth);
+    }
+
+    private static void appendIndent(StringBuilder sb, int depth) {
+        appendSpaces(sb, 2 * depth);
+    }
+
+    /**
+     * Ghi text và pad bên phải tới width (String.format("%-Ns", text)); tên null được ghi là "null" như String.format
+     */
+    private static void appendPadded(StringBuilder sb, String text, int width) {
+        text = String.valueOf(text);
+        sb.append(text);
+        appendSpaces(sb, width - text.length());
+    }
+
+    private static void appendDurationPadded(StringBuilder sb, long nanos, int width) {
+        int mark = sb.length();
+        DurationFormat.appendIso(sb, nanos);
+        padFrom(sb, mark, width);
+    }
+
+    /**
+     * Pad bên phải phần được ghi từ mark tới width
+     */
+    private static void padFrom(StringBuilder sb, int mark, int width) {
+        appendSpaces(sb, width - (sb.length() - mark));
+    }
+
+    /**
+     * Căn phải phần được ghi từ mark trong width (String.format("%Ns", ...))
+     */
+    private static void padLeftFrom(StringBuilder sb, int mark, int width) {
+        int padding = width - (sb.length() - mark);
+        while (padding > 0) {
+            int chunk = Math.min(padding, SPACES.length());
+            sb.insert(mark, SPACES, 0, chunk);
+            padding -= chunk;
+        }
+    }
+
+    private static void appendSpaces(StringBuilder sb, int count) {
+        while (count > 0) {
+            int chunk = Math.min(count, SPACES.length());
+            sb.append(SPACES, 0, chunk);
+            count -= chunk;
+        }
     }
 }
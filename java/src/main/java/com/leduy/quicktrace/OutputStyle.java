@@ -32,5 +32,15 @@ public enum OutputStyle {
     /**
      * Output JSON có cấu trúc
      */
-    JSON
+    JSON,
+    
+    /**
+     * JSON compact một dòng (NDJSON), không màu - cho log shippers
+     */
+    NDJSON,
+    
+    /**
+     * Chrome Trace Event JSON ({"traceEvents":[...]}) một dòng - mở bằng Perfetto hoặc chrome://tracing
+     */
+    CHROME_TRACE
 }
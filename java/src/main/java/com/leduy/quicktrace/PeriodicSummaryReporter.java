@@ -0,0 +1,388 @@
+package com.leduy.quicktrace;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Báo cáo định kỳ thay cho từng box mỗi trace: cứ mỗi interval in một summary gọn theo tracer name
+ * trên các sliding windows (mặc định 1m/5m/15m) - count, p50/p90/p99/max và các span chậm nhất -
+ * kèm bảng statistic theo span của window ngắn nhất, render qua output style có sẵn (TABLE/DETAILED).
+ *
+ * <pre>{@code
+ * PeriodicSummaryReporter reporter = PeriodicSummaryReporter.builder()
+ *         .interval(Duration.ofMinutes(1))
+ *         .suppressTracePrinting(true)
+ *         .build();
+ * reporter.start();   // đăng ký global observer và bắt đầu lịch báo cáo
+ * }</pre>
+ *
+ * <p>Traces được gộp vào time slot dài bằng interval, mỗi slot là một {@link TraceAggregator} (memory cố định
+ * theo giới hạn tracer/span names). Mỗi lần báo cáo, slot hiện tại được đóng lại và window gồm các slot
+ * gần nhất - window không chia hết cho interval được làm tròn lên số slot.
+ */
+public class PeriodicSummaryReporter implements TraceSink {
+
+    private static final TraceSink DISCARD = trace -> { };
+
+    private final long intervalNanos;
+    private final Duration[] windows;
+    private final int[] windowSlots;
+    private final OutputStyle tableStyle;
+    private final TraceAggregator.Statistic statistic;
+    private final int slowestSpans;
+    private final Consumer<String> output;
+    private final boolean suppressTracePrinting;
+    private final int maxTracerNames;
+    private final int maxSpanNames;
+
+    private volatile TraceAggregator current;
+    // Các slot đã đóng, slot mới nhất ở (head - 1). Chỉ truy cập trong report()
+    private final TraceAggregator[] slots;
+    private int head;
+    private int filled;
+
+    private ScheduledExecutorService scheduler;
+    private TraceSink replacedSink;
+
+    private PeriodicSummaryReporter(Builder builder) {
+        this.intervalNanos = builder.interval.toNanos();
+        this.windows = builder.windows.toArray(new Duration[0]);
+        this.windowSlots = new int[windows.length];
+        int maxSlots = 1;
+        for (int i = 0; i < windows.length; i++) {
+            long nanos = windows[i].toNanos();
+            windowSlots[i] = (int) Math.max(1, (nanos + intervalNanos - 1) / intervalNanos);
+            maxSlots = Math.max(maxSlots, windowSlots[i]);
+        }
+        this.tableStyle = builder.tableStyle;
+        this.statistic = builder.statistic;
+        this.slowestSpans = builder.slowestSpans;
+        this.output = builder.output;
+        this.suppressTracePrinting = builder.suppressTracePrinting;
+        this.maxTracerNames = builder.maxTracerNames;
+        this.maxSpanNames = builder.maxSpanNames;
+        this.slots = new TraceAggregator[maxSlots];
+        this.current = newSlot();
+    }
+
+    /**
+     * Tạo builder để customize reporter
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class cho PeriodicSummaryReporter
+     */
+    public static class Builder {
+        private Duration interval = Duration.ofMinutes(1);
+        private List<Duration> windows = defaultWindows();
+        private OutputStyle tableStyle = OutputStyle.TABLE;
+        private TraceAggregator.Statistic statistic = TraceAggregator.Statistic.P99;
+        private int slowestSpans = 3;
+        private Consumer<String> output = System.out::print;
+        private boolean suppressTracePrinting;
+        private int maxTracerNames = TraceAggregator.DEFAULT_MAX_TRACER_NAMES;
+        private int maxSpanNames = TraceAggregator.DEFAULT_MAX_SPAN_NAMES;
+
+        private static List<Duration> defaultWindows() {
+            List<Duration> windows = new ArrayList<>();
+            windows.add(Duration.ofMinutes(1));
+            windows.add(Duration.ofMinutes(5));
+            windows.add(Duration.ofMinutes(15));
+            return windows;
+        }
+
+        /**
+         * Khoảng cách giữa hai lần báo cáo, cũng là độ dài mỗi time slot
+         */
+        public Builder interval(Duration interval) {
+            if (interval.isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("interval must be > 0: " + interval);
+            }
+            this.interval = interval;
+            return this;
+        }
+
+        /**
+         * Các sliding windows được báo cáo, theo thứ tự hiển thị
+         */
+        public Builder windows(Duration... windows) {
+            if (windows.length == 0) {
+                throw new IllegalArgumentException("windows must not be empty");
+            }
+            List<Duration> list = new ArrayList<>(windows.length);
+            for (Duration window : windows) {
+                if (window.isNegative() || window.isZero()) {
+                    throw new IllegalArgumentException("window must be > 0: " + window);
+                }
+                list.add(window);
+            }
+            this.windows = list;
+            return this;
+        }
+
+        /**
+         * Output style cho bảng statistic theo span của window đầu tiên. null để chỉ in summary
+         */
+        public Builder tableStyle(OutputStyle tableStyle) {
+            this.tableStyle = tableStyle;
+            return this;
+        }
+
+        /**
+         * Statistic hiển thị trong bảng theo span (mặc định P99)
+         */
+        public Builder statistic(TraceAggregator.Statistic statistic) {
+            this.statistic = Objects.requireNonNull(statistic, "statistic");
+            return this;
+        }
+
+        /**
+         * Số span chậm nhất (theo p99) liệt kê cho mỗi window. 0 để tắt
+         */
+        public Builder slowestSpans(int slowestSpans) {
+            if (slowestSpans < 0) {
+                throw new IllegalArgumentException("slowestSpans must be >= 0: " + slowestSpans);
+            }
+            this.slowestSpans = slowestSpans;
+            return this;
+        }
+
+        /**
+         * Nơi nhận text của mỗi báo cáo (mặc định System.out)
+         */
+        public Builder output(Consumer<String> output) {
+            this.output = Objects.requireNonNull(output, "output");
+            return this;
+        }
+
+        /**
+         * Khi start(), thay default sink bằng sink bỏ qua để end() không in từng trace nữa.
+         * Default sink cũ được khôi phục khi close()
+         */
+        public Builder suppressTracePrinting(boolean suppressTracePrinting) {
+            this.suppressTracePrinting = suppressTracePrinting;
+            return this;
+        }
+
+        /**
+         * Giới hạn cardinality của mỗi time slot, xem {@link TraceAggregator#TraceAggregator(int, int)}
+         */
+        public Builder limits(int maxTracerNames, int maxSpanNames) {
+            if (maxTracerNames <= 0) {
+                throw new IllegalArgumentException("maxTracerNames must be > 0: " + maxTracerNames);
+            }
+            if (maxSpanNames <= 0) {
+                throw new IllegalArgumentException("maxSpanNames must be > 0: " + maxSpanNames);
+            }
+            this.maxTracerNames = maxTracerNames;
+            this.maxSpanNames = maxSpanNames;
+            return this;
+        }
+
+        public PeriodicSummaryReporter build() {
+            return new PeriodicSummaryReporter(this);
+        }
+    }
+
+    private TraceAggregator newSlot() {
+        return new TraceAggregator(maxTracerNames, maxSpanNames);
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        current.accept(trace);
+    }
+
+    /**
+     * Đăng ký reporter làm global observer và báo cáo mỗi interval trên một daemon thread
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("Reporter already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "quicktrace-summary-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Tracer.addGlobalObserver(this);
+        if (suppressTracePrinting) {
+            replacedSink = Tracer.getDefaultSink();
+            Tracer.setDefaultSink(DISCARD);
+        }
+        scheduler.scheduleAtFixedRate(this::reportQuietly, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void reportQuietly() {
+        try {
+            report();
+        } catch (RuntimeException e) {
+            // Lỗi của một lần báo cáo không được dừng lịch báo cáo
+        }
+    }
+
+    /**
+     * Đóng time slot hiện tại, dựng báo cáo, giao cho output và trả về text.
+     * Được scheduler gọi mỗi interval; gọi trực tiếp khi không dùng {@link #start()}
+     */
+    public synchronized String report() {
+        TraceAggregator closed = current;
+        current = newSlot();
+        slots[head] = closed;
+        head = (head + 1) % slots.length;
+        filled = Math.min(filled + 1, slots.length);
+
+        TraceAggregator[] merged = new TraceAggregator[windows.length];
+        for (int w = 0; w < windows.length; w++) {
+            merged[w] = newSlot();
+            int count = Math.min(windowSlots[w], filled);
+            for (int j = 1; j <= count; j++) {
+                merged[w].merge(slots[(head - j + slots.length) % slots.length]);
+            }
+        }
+
+        String text = render(merged);
+        output.accept(text);
+        return text;
+    }
+
+    private String render(TraceAggregator[] merged) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("📊 QuickTrace summary @ ").append(Instant.now().truncatedTo(ChronoUnit.SECONDS)).append(" (");
+        for (int w = 0; w < windows.length; w++) {
+            sb.append(w == 0 ? "" : " / ").append(label(windows[w]));
+        }
+        sb.append(")\n");
+
+        // Window dài nhất chứa mọi tracer names của các window ngắn hơn
+        int widest = 0;
+        for (int w = 1; w < windows.length; w++) {
+            if (windowSlots[w] > windowSlots[widest]) {
+                widest = w;
+            }
+        }
+        List<String> tracerNames = merged[widest].getTracerNames();
+        if (tracerNames.isEmpty()) {
+            sb.append("(no traces)\n");
+            return sb.toString();
+        }
+
+        for (String tracerName : tracerNames) {
+            sb.append('\n').append(tracerName).append('\n');
+            sb.append("  ");
+            appendPadded(sb, "Window", 8);
+            appendPadded(sb, "Count", 10);
+            appendPadded(sb, "p50", 16);
+            appendPadded(sb, "p90", 16);
+            appendPadded(sb, "p99", 16);
+            appendPadded(sb, "Max", 16);
+            sb.append(slowestSpans > 0 ? "Slowest spans (p99)" : "").append('\n');
+            for (int w = 0; w < windows.length; w++) {
+                appendWindowRow(sb, label(windows[w]), merged[w].getStats(tracerName));
+            }
+
+            if (tableStyle != null) {
+                Tracer table = merged[0].toTracer(tracerName, statistic, tableStyle);
+                if (table != null) {
+                    table.renderTo(sb);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void appendWindowRow(StringBuilder sb, String label, TraceAggregator.TracerStats stats) {
+        sb.append("  ");
+        appendPadded(sb, label, 8);
+        if (stats == null || stats.getCount() == 0) {
+            appendPadded(sb, "0", 10);
+            sb.append('-').append('\n');
+            return;
+        }
+
+        LatencyHistogram total = stats.getTotal();
+        appendPadded(sb, Long.toString(total.getCount()), 10);
+        appendDuration(sb, total.getPercentile(50));
+        appendDuration(sb, total.getPercentile(90));
+        appendDuration(sb, total.getPercentile(99));
+        appendDuration(sb, total.getMax());
+
+        List<String> slowest = slowestSpans(stats);
+        for (int i = 0; i < slowest.size(); i++) {
+            String spanName = slowest.get(i);
+            sb.append(i == 0 ? "" : ", ").append(spanName).append(' ');
+            DurationFormat.appendIso(sb, stats.getSpan(spanName).getPercentile(99));
+        }
+        sb.append('\n');
+    }
+
+    private List<String> slowestSpans(TraceAggregator.TracerStats stats) {
+        List<String> names = new ArrayList<>(stats.getSpanNames());
+        names.sort((a, b) -> Long.compare(stats.getSpan(b).getPercentile(99), stats.getSpan(a).getPercentile(99)));
+        return names.size() > slowestSpans ? names.subList(0, slowestSpans) : names;
+    }
+
+    private static void appendDuration(StringBuilder sb, long nanos) {
+        int start = sb.length();
+        DurationFormat.appendIso(sb, nanos);
+        appendSpaces(sb, 16 - (sb.length() - start));
+    }
+
+    private static void appendPadded(StringBuilder sb, String text, int width) {
+        sb.append(text);
+        appendSpaces(sb, width - text.length());
+    }
+
+    private static void appendSpaces(StringBuilder sb, int count) {
+        for (int i = 0; i < Math.max(count, 1); i++) {
+            sb.append(' ');
+        }
+    }
+
+    /**
+     * Nhãn ngắn cho window: 1m, 15m, 30s, 1h...
+     */
+    static String label(Duration window) {
+        long millis = window.toMillis();
+        if (millis % 3_600_000 == 0) {
+            return millis / 3_600_000 + "h";
+        }
+        if (millis % 60_000 == 0) {
+            return millis / 60_000 + "m";
+        }
+        if (millis % 1_000 == 0) {
+            return millis / 1_000 + "s";
+        }
+        return millis + "ms";
+    }
+
+    /**
+     * Dừng lịch báo cáo, gỡ global observer và khôi phục default sink nếu đã thay
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        Tracer.removeGlobalObserver(this);
+        if (replacedSink != null) {
+            if (Tracer.getDefaultSink() == DISCARD) {
+                Tracer.setDefaultSink(replacedSink);
+            }
+            replacedSink = null;
+        }
+    }
+}
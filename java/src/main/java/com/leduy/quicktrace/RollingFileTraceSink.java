@@ -0,0 +1,150 @@
+package com.leduy.quicktrace;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Ghi trace đã render ra file, tự rotate khi file vượt quá maxBytes.
+ * Khi rotate: trace.log -> trace.log.1 -> trace.log.2 ... giữ tối đa maxBackups file cũ.
+ *
+ * <p>Mặc định render theo {@link OutputStyle#NDJSON} (không có ANSI color escapes) thay vì
+ * output style của từng tracer, vốn dành cho console.
+ */
+public class RollingFileTraceSink implements TraceSink {
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxBackups;
+    private final OutputStyle style;
+
+    private OutputStream out;
+    private long size;
+
+    public RollingFileTraceSink(Path file, long maxBytes, int maxBackups) {
+        this(file, maxBytes, maxBackups, OutputStyle.NDJSON);
+    }
+
+    /**
+     * @param style style dùng để render mọi trace ghi ra file; null thì dùng output style của từng tracer
+     */
+    public RollingFileTraceSink(Path file, long maxBytes, int maxBackups, OutputStyle style) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be > 0: " + maxBytes);
+        }
+        if (maxBackups < 0) {
+            throw new IllegalArgumentException("maxBackups must be >= 0: " + maxBackups);
+        }
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxBackups = maxBackups;
+        this.style = style;
+    }
+
+    @Override
+    public synchronized void accept(Tracer trace) {
+        write(render(trace));
+        flushOrThrow();
+    }
+
+    @Override
+    public synchronized void acceptBatch(List<Tracer> traces) {
+        for (int i = 0; i < traces.size(); i++) {
+            write(render(traces.get(i)));
+        }
+        flushOrThrow();
+    }
+
+    private byte[] render(Tracer trace) {
+        StringBuilder sb = new StringBuilder(1024);
+        OutputRenderer.render(trace, style != null ? style : trace.getOutputStyle(), sb);
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void write(byte[] data) {
+        try {
+            if (out == null) {
+                open();
+            }
+            if (size > 0 && size + data.length > maxBytes) {
+                rotate();
+            }
+            out.write(data);
+            size += data.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write trace to " + file, e);
+        }
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        out = new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        size = Files.size(file);
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+
+        if (maxBackups == 0) {
+            Files.delete(file);
+        } else {
+            Files.deleteIfExists(backup(maxBackups));
+            for (int i = maxBackups - 1; i >= 1; i--) {
+                Path from = backup(i);
+                if (Files.exists(from)) {
+                    Files.move(from, backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    private Path backup(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void flushOrThrow() {
+        try {
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to flush " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close " + file, e);
+        } finally {
+            out = null;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public OutputStyle getStyle() {
+        return style;
+    }
+}
@@ -0,0 +1,175 @@
+package com.leduy.quicktrace;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Phân phối latency rolling: hai {@link LatencyHistogram} xoay vòng theo window (window vừa xong và
+ * window hiện tại), cùng các ngưỡng percentile được tính lại sau mỗi {@value #RECOMPUTE_EVERY} giá trị.
+ * Dùng chung bởi {@link TailSamplingSink} và {@link AdaptiveThresholds}.
+ *
+ * <p>Ngưỡng được nội suy tuyến tính bên trong bucket chứa percentile (giới hạn trong [min, max] đã quan sát),
+ * nên khoảng {@code (100 - p)%} giá trị lớn hơn {@code threshold(i)} - không phải cả bucket. Ngưỡng đầu tiên
+ * được tính ngay khi đủ {@code minSamples} giá trị; trước đó {@link #threshold(int)} trả về -1.
+ *
+ * <p>Window xoay theo clock tại record() và threshold(); sau khoảng idle từ hai windows trở lên cả hai windows
+ * được xóa, nên ngưỡng trở về -1 cho tới khi lại đủ {@code minSamples} giá trị.
+ *
+ * <p>record() không lock và không allocate (trừ một holder nhỏ khi xoay window): giá trị được ghi thẳng vào
+ * histogram atomic của window hiện tại. Recompute đọc trực tiếp buckets của hai windows, không tạo histogram
+ * gộp; chỉ một thread recompute tại một thời điểm, thread khác bỏ qua thay vì chờ.
+ */
+final class RollingHistogram {
+
+    static final int RECOMPUTE_EVERY = 64;
+
+    private final long windowNanos;
+    private final long minSamples;
+    private final double[] percentiles;
+    private final LongSupplier clock;
+
+    // current/previous được thay cùng lúc để reader không thấy một cặp nửa cũ nửa mới
+    private volatile Windows windows = new Windows(new LatencyHistogram(), new LatencyHistogram());
+    private final AtomicLong rotatedAt;
+    private final LongAdder sinceRecompute = new LongAdder();
+    private final AtomicBoolean recomputing = new AtomicBoolean();
+    // Thay cả mảng một lần để các ngưỡng luôn thuộc cùng một lần tính - null khi chưa đủ samples
+    private volatile long[] thresholds;
+
+    private static final class Windows {
+        final LatencyHistogram current;
+        final LatencyHistogram previous;
+
+        Windows(LatencyHistogram current, LatencyHistogram previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+
+    RollingHistogram(long windowNanos, long minSamples, LongSupplier clock, double... percentiles) {
+        this.windowNanos = windowNanos;
+        this.minSamples = minSamples;
+        this.clock = clock;
+        this.percentiles = percentiles.clone();
+        this.rotatedAt = new AtomicLong(clock.getAsLong());
+    }
+
+    void record(long nanos) {
+        rotateIfDue(clock.getAsLong());
+        windows.current.record(nanos);
+
+        sinceRecompute.increment();
+        if (sinceRecompute.sum() >= RECOMPUTE_EVERY || (thresholds == null && getCount() >= minSamples)) {
+            recompute();
+        }
+    }
+
+    /**
+     * Xoay window nếu đã hết. rotatedAt tiến theo bội số của windowNanos để ranh giới window không trôi theo
+     * thời điểm có traffic; chỉ thread thắng CAS xoay. Trả về true khi đã xoay
+     */
+    private boolean rotateIfDue(long now) {
+        long rotated = rotatedAt.get();
+        long elapsed = now - rotated;
+        if (elapsed < windowNanos) {
+            return false;
+        }
+        long elapsedWindows = elapsed / windowNanos;
+        if (!rotatedAt.compareAndSet(rotated, rotated + elapsedWindows * windowNanos)) {
+            return false; // Thread khác đã xoay
+        }
+        Windows old = windows;
+        if (elapsedWindows >= 2) {
+            // Idle ít nhất hai windows: cả hai đều cũ, không đưa dữ liệu trước khoảng idle vào phân phối
+            old.previous.reset();
+            old.current.reset();
+            windows = new Windows(old.previous, old.current);
+        } else {
+            // Phân phối gồm window vừa xong và window mới
+            LatencyHistogram recycled = old.previous;
+            recycled.reset();
+            windows = new Windows(recycled, old.current);
+        }
+        sinceRecompute.add(RECOMPUTE_EVERY);
+        return true;
+    }
+
+    private void recompute() {
+        if (!recomputing.compareAndSet(false, true)) {
+            return; // Thread khác đang tính
+        }
+        try {
+            if (sinceRecompute.sum() < RECOMPUTE_EVERY && (thresholds != null || getCount() < minSamples)) {
+                return; // Thread khác vừa tính xong
+            }
+            sinceRecompute.reset();
+            Windows current = windows;
+            long total = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                total += current.previous.getBucketCount(i) + current.current.getBucketCount(i);
+            }
+            if (total == 0 || total < minSamples) {
+                thresholds = null;
+                return;
+            }
+            long min = Math.min(minOf(current.previous), minOf(current.current));
+            long max = Math.max(current.previous.getMax(), current.current.getMax());
+            long[] computed = new long[percentiles.length];
+            for (int i = 0; i < percentiles.length; i++) {
+                computed[i] = interpolate(current, total, percentiles[i] / 100 * total, min, max);
+            }
+            thresholds = computed;
+        } finally {
+            recomputing.set(false);
+        }
+    }
+
+    private static long minOf(LatencyHistogram histogram) {
+        return histogram.getCount() == 0 ? Long.MAX_VALUE : histogram.getMin();
+    }
+
+    /**
+     * Giá trị tại rank (số giá trị nhỏ hơn hoặc bằng nó), coi các giá trị trong một bucket phân bố đều
+     * trên phần giao của bucket với [min, max]
+     */
+    private static long interpolate(Windows windows, long total, double rank, long min, long max) {
+        long seen = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long count = windows.previous.getBucketCount(i) + windows.current.getBucketCount(i);
+            if (count != 0 && seen + count >= rank) {
+                long low = Math.max(LatencyHistogram.bucketLowerBound(i), min);
+                long high = Math.min(LatencyHistogram.bucketUpperBound(i), max);
+                if (high <= low) {
+                    return low;
+                }
+                return low + (long) ((high - low) * ((rank - seen) / count));
+            }
+            seen += count;
+            if (seen >= total) {
+                break;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Ngưỡng của percentile thứ index (theo thứ tự truyền vào constructor), -1 khi chưa đủ samples
+     */
+    long threshold(int index) {
+        if (rotateIfDue(clock.getAsLong())) {
+            recompute(); // Không trả về ngưỡng của window đã hết hạn khi chưa có giá trị mới
+        }
+        long[] current = thresholds;
+        return current != null ? current[index] : -1;
+    }
+
+    /**
+     * Số giá trị trong phân phối hiện tại (hai windows)
+     */
+    long getCount() {
+        Windows current = windows;
+        return current.previous.getCount() + current.current.getCount();
+    }
+}
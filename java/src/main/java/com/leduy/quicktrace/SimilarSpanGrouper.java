@@ -0,0 +1,190 @@
+package com.leduy.quicktrace;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nhóm các spans có duration gần nhau (chênh lệch <= threshold) trong O(n log n).
+ *
+ * <p>Kết quả giống hệt thuật toán greedy cũ: duyệt spans theo thứ tự ghi, span chưa thuộc nhóm nào
+ * trở thành anchor và gom mọi span còn lại có |duration - anchor| <= threshold. Vì mọi span đứng trước
+ * anchor đều đã được xử lý, "các span phía sau chưa xử lý" chính là "các span chưa xử lý trong khoảng
+ * [anchor - threshold, anchor + threshold]" - tìm bằng binary search trên mảng đã sort, còn các span
+ * đã lấy được bỏ qua bằng skip pointers nên mỗi span chỉ bị duyệt một lần.
+ */
+final class SimilarSpanGrouper {
+
+    private SimilarSpanGrouper() {
+    }
+
+    static List<GroupedMeasurement> group(List<Measurement> measurements, Duration threshold) {
+        int n = measurements.size();
+        List<GroupedMeasurement> groups = new ArrayList<>();
+        if (n == 0) {
+            return groups;
+        }
+
+        String[] names = new String[n];
+        long[] nanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            Measurement m = measurements.get(i);
+            names[i] = m.getStatement();
+            nanos[i] = m.getDurationNanos();
+        }
+
+        // order: index theo duration tăng dần; position[i]: vị trí của span i trong order
+        int[] order = sortedIndices(nanos);
+        long[] sorted = new long[n];
+        int[] position = new int[n];
+        for (int p = 0; p < n; p++) {
+            sorted[p] = nanos[order[p]];
+            position[order[p]] = p;
+        }
+
+        // next[p]: vị trí chưa xử lý đầu tiên >= p (n nếu không còn)
+        int[] next = new int[n + 1];
+        for (int p = 0; p <= n; p++) {
+            next[p] = p;
+        }
+
+        long thresholdNanos = toNanos(threshold);
+        for (int i = 0; i < n; i++) {
+            int anchor = position[i];
+            if (find(next, anchor) != anchor) {
+                continue; // Đã thuộc nhóm của anchor trước đó
+            }
+            next[anchor] = anchor + 1;
+
+            long duration = nanos[i];
+            long total = duration;
+            long min = duration;
+            long max = duration;
+            int similar = 0;
+
+            int from = lowerBound(sorted, saturatedSubtract(duration, thresholdNanos));
+            int to = upperBound(sorted, saturatedAdd(duration, thresholdNanos));
+            for (int p = find(next, from); p < to; p = find(next, p + 1)) {
+                long d = sorted[p];
+                total += d;
+                min = Math.min(min, d);
+                max = Math.max(max, d);
+                similar++;
+                next[p] = p + 1;
+            }
+
+            int count = similar + 1;
+            String groupName = names[i];
+            // Nếu có nhiều operations tương tự, cập nhật tên group
+            if (similar > 0) {
+                groupName = groupName + " + " + similar + (similar <= 2 ? " similar" : " others");
+            }
+
+            groups.add(new GroupedMeasurement(groupName, count, Duration.ofNanos(total),
+                    Duration.ofNanos(total / count), Duration.ofNanos(min), Duration.ofNanos(max)));
+        }
+
+        return groups;
+    }
+
+    /**
+     * Union-find với path halving trên skip pointers
+     */
+    private static int find(int[] next, int p) {
+        while (next[p] != p) {
+            next[p] = next[next[p]];
+            p = next[p];
+        }
+        return p;
+    }
+
+    /**
+     * Vị trí đầu tiên có sorted[p] >= value
+     */
+    private static int lowerBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Vị trí đầu tiên có sorted[p] > value
+     */
+    private static int upperBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Stable merge sort các index theo key - không boxing
+     */
+    private static int[] sortedIndices(long[] keys) {
+        int n = keys.length;
+        int[] indices = new int[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int low = 0; low < n; low += width << 1) {
+                int mid = Math.min(low + width, n);
+                int high = Math.min(low + (width << 1), n);
+                int left = low;
+                int right = mid;
+                for (int k = low; k < high; k++) {
+                    if (left < mid && (right >= high || keys[indices[left]] <= keys[indices[right]])) {
+                        buffer[k] = indices[left++];
+                    } else {
+                        buffer[k] = indices[right++];
+                    }
+                }
+            }
+            int[] swap = indices;
+            indices = buffer;
+            buffer = swap;
+        }
+        return indices;
+    }
+
+    private static long toNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long result = a + b;
+        // Overflow khi a và b cùng dấu nhưng result khác dấu
+        if (((a ^ result) & (b ^ result)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return result;
+    }
+
+    private static long saturatedSubtract(long a, long b) {
+        long result = a - b;
+        if (((a ^ b) & (a ^ result)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,207 @@
+package com.leduy.quicktrace;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar storage cho spans của một Tracer.
+ * Mỗi span chỉ tốn một slot trong các mảng primitive thay vì một object Measurement + Duration.
+ * Nested spans lưu thêm parent index và tổng duration của các con trực tiếp (để tính self time);
+ * hai cột này chỉ được allocate khi trace có span lồng nhau đầu tiên. Timeline gộp từ nhiều thread
+ * (concurrent tracer) có thêm cột thread id.
+ * Không thread-safe - thuộc về một Tracer duy nhất.
+ */
+final class SpanBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long[] EMPTY_LONGS = new long[0];
+    private static final String[] EMPTY_NAMES = new String[0];
+
+    private String[] names = EMPTY_NAMES;
+    private long[] startNanos = EMPTY_LONGS;
+    private long[] durationNanos = EMPTY_LONGS;
+    private int size;
+
+    // null khi mọi span đều ở root (trace phẳng)
+    private int[] parents;
+    private long[] childNanos;
+
+    // null khi mọi span được ghi trên cùng một thread
+    private long[] threadIds;
+
+    /**
+     * Ghi thêm một span, trả về index của span đó
+     */
+    int add(String name, long start, long duration) {
+        return add(name, start, duration, -1);
+    }
+
+    /**
+     * Ghi thêm một span con của parent (-1 cho root), trả về index của span đó
+     */
+    int add(String name, long start, long duration, int parent) {
+        if (size == names.length) {
+            grow();
+        }
+        int index = size;
+        names[index] = name;
+        startNanos[index] = start;
+        durationNanos[index] = duration;
+        if (parent >= 0 && parents == null) {
+            enableHierarchy();
+        }
+        if (parents != null) {
+            parents[index] = parent;
+            if (parent >= 0) {
+                childNanos[parent] += duration;
+            }
+        }
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Chốt duration của span đang mở (nested scope) khi nó kết thúc tại end
+     */
+    void finish(int index, long end) {
+        long duration = end - startNanos[index];
+        durationNanos[index] = duration;
+        if (parents != null && parents[index] >= 0) {
+            childNanos[parents[index]] += duration;
+        }
+    }
+
+    private void enableHierarchy() {
+        parents = new int[names.length];
+        Arrays.fill(parents, -1);
+        childNanos = new long[names.length];
+    }
+
+    private void grow() {
+        int newCapacity = names.length == 0 ? INITIAL_CAPACITY : names.length << 1;
+        names = Arrays.copyOf(names, newCapacity);
+        startNanos = Arrays.copyOf(startNanos, newCapacity);
+        durationNanos = Arrays.copyOf(durationNanos, newCapacity);
+        if (parents != null) {
+            parents = Arrays.copyOf(parents, newCapacity);
+            childNanos = Arrays.copyOf(childNanos, newCapacity);
+        }
+        if (threadIds != null) {
+            threadIds = Arrays.copyOf(threadIds, newCapacity);
+        }
+    }
+
+    /**
+     * Gán thread đã ghi span tại index
+     */
+    void setThreadId(int index, long threadId) {
+        if (threadIds == null) {
+            threadIds = new long[names.length];
+        }
+        threadIds[index] = threadId;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    long startNanos(int index) {
+        return startNanos[index];
+    }
+
+    long durationNanos(int index) {
+        return durationNanos[index];
+    }
+
+    /**
+     * true nếu có ít nhất một span lồng trong span khác
+     */
+    boolean hasHierarchy() {
+        return parents != null;
+    }
+
+    /**
+     * Index của span cha, -1 cho span ở root
+     */
+    int parent(int index) {
+        return parents != null ? parents[index] : -1;
+    }
+
+    /**
+     * Độ sâu lồng nhau: 0 cho root
+     */
+    int depth(int index) {
+        int depth = 0;
+        if (parents != null) {
+            for (int p = parents[index]; p >= 0; p = parents[p]) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Tổng duration của các span con trực tiếp
+     */
+    long childNanos(int index) {
+        return childNanos != null ? childNanos[index] : 0;
+    }
+
+    /**
+     * true nếu spans đến từ nhiều thread
+     */
+    boolean hasThreads() {
+        return threadIds != null;
+    }
+
+    /**
+     * Id của thread đã ghi span, -1 nếu không có thông tin thread
+     */
+    long threadId(int index) {
+        return threadIds != null ? threadIds[index] : -1;
+    }
+
+    /**
+     * Self time: duration trừ thời gian của các span con trực tiếp
+     */
+    long selfNanos(int index) {
+        return durationNanos[index] - childNanos(index);
+    }
+
+    /**
+     * View read-only trên {@code size} spans đầu tiên tại thời điểm gọi.
+     * Không copy dữ liệu - Measurement chỉ được tạo khi đọc từng phần tử.
+     */
+    List<Measurement> view() {
+        return new MeasurementView(this, size);
+    }
+
+    private static final class MeasurementView extends AbstractList<Measurement> implements RandomAccess {
+        private final SpanBuffer buffer;
+        private final int size;
+
+        MeasurementView(SpanBuffer buffer, int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        @Override
+        public Measurement get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return new Measurement(buffer.names[index], buffer.durationNanos[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
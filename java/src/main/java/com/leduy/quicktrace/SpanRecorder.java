@@ -0,0 +1,134 @@
+package com.leduy.quicktrace;
+
+import java.util.Arrays;
+
+/**
+ * Trạng thái ghi spans của một thread: buffer, thời điểm kết thúc span trước và stack nested scopes đang mở.
+ * Single writer - chỉ thread sở hữu recorder được ghi. Số spans đã ghi được publish qua một field volatile
+ * để thread khác (merge trong concurrent tracer) đọc được phần đã hoàn chỉnh mà không cần lock.
+ */
+final class SpanRecorder {
+
+    private static final int[] NO_OPEN_SPANS = new int[0];
+
+    private final SpanBuffer spans = new SpanBuffer();
+    private final long threadId;
+    private long lastNanos;
+
+    // Stack index của các nested spans đang mở (innermost ở cuối)
+    private int[] openSpans = NO_OPEN_SPANS;
+    private int openCount;
+
+    private volatile int published;
+
+    SpanRecorder(long threadId, long startNanos) {
+        this.threadId = threadId;
+        this.lastNanos = startNanos;
+    }
+
+    /**
+     * Bắt đầu tính span tiếp theo từ thời điểm này
+     */
+    void reset(long nowNanos) {
+        lastNanos = nowNanos;
+    }
+
+    /**
+     * Span phẳng: từ span trước (hoặc lúc bắt đầu) tới bây giờ
+     */
+    void span(String name) {
+        long now = System.nanoTime();
+        spans.add(name, lastNanos, now - lastNanos, currentParent());
+        lastNanos = now;
+        published = spans.size();
+    }
+
+    /**
+     * Ghi span với duration cho trước, không đọc clock
+     */
+    void recordSpan(String name, long durationNanos) {
+        spans.add(name, lastNanos, durationNanos);
+        lastNanos += durationNanos;
+        published = spans.size();
+    }
+
+    /**
+     * Mở nested span, trả về index của nó
+     */
+    int startSpan(String name) {
+        long now = System.nanoTime();
+        int index = spans.add(name, now, 0, currentParent());
+        if (openCount == openSpans.length) {
+            openSpans = Arrays.copyOf(openSpans, Math.max(4, openCount << 1));
+        }
+        openSpans[openCount++] = index;
+        lastNanos = now;
+        published = spans.size();
+        return index;
+    }
+
+    /**
+     * Đóng nested span tại index cùng mọi span con còn mở bên trong nó
+     */
+    void closeSpan(int index) {
+        int position = -1;
+        for (int k = openCount - 1; k >= 0; k--) {
+            if (openSpans[k] == index) {
+                position = k;
+                break;
+            }
+        }
+        if (position < 0) {
+            return; // Đã đóng
+        }
+
+        long now = System.nanoTime();
+        for (int k = openCount - 1; k >= position; k--) {
+            spans.finish(openSpans[k], now);
+        }
+        openCount = position;
+        lastNanos = now;
+        published = spans.size();
+    }
+
+    /**
+     * Đóng mọi scope còn mở
+     */
+    void closeAll() {
+        if (openCount > 0) {
+            closeSpan(openSpans[0]);
+        }
+    }
+
+    private int currentParent() {
+        return openCount > 0 ? openSpans[openCount - 1] : -1;
+    }
+
+    SpanBuffer spans() {
+        return spans;
+    }
+
+    long threadId() {
+        return threadId;
+    }
+
+    long lastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Index của các nested spans còn mở (ngoài cùng trước). Gọi từ thread khác sau {@link #published()}
+     * thì thấy trạng thái tại lần publish đó hoặc mới hơn
+     */
+    int[] openSpans() {
+        int[] open = openSpans;
+        return Arrays.copyOf(open, Math.min(openCount, open.length));
+    }
+
+    /**
+     * Số spans đã ghi xong, an toàn để đọc từ thread khác
+     */
+    int published() {
+        return published;
+    }
+}
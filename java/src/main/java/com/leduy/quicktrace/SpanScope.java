@@ -0,0 +1,39 @@
+package com.leduy.quicktrace;
+
+/**
+ * Span lồng nhau được mở bằng {@link Tracer#startSpan(String)}, kết thúc khi close().
+ * Spans (kể cả span() phẳng) được ghi khi scope đang mở trở thành con của nó.
+ *
+ * <pre>{@code
+ * try (SpanScope scope = tracer.startSpan("Load user")) {
+ *     tracer.span("Query");
+ *     try (SpanScope inner = tracer.startSpan("Decode")) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ *
+ * Đóng một scope cũng đóng mọi scope con còn mở bên trong nó; close() lần hai không làm gì.
+ */
+public final class SpanScope implements AutoCloseable {
+
+    /**
+     * Scope của tracer disabled hoặc không được sample
+     */
+    static final SpanScope NOOP = new SpanScope(null, -1);
+
+    private final SpanRecorder recorder;
+    private final int index;
+
+    SpanScope(SpanRecorder recorder, int index) {
+        this.recorder = recorder;
+        this.index = index;
+    }
+
+    @Override
+    public void close() {
+        if (recorder != null) {
+            recorder.closeSpan(index);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.leduy.quicktrace;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Sink mặc định - render trace theo output style và print ra console
+ */
+public class StdoutTraceSink implements TraceSink {
+
+    /**
+     * Ghi ra System.out (resolve tại thời điểm ghi nên vẫn đúng sau System.setOut)
+     */
+    public static final StdoutTraceSink INSTANCE = new StdoutTraceSink(null);
+
+    private final PrintStream out;
+
+    public StdoutTraceSink(PrintStream out) {
+        this.out = out;
+    }
+
+    private PrintStream stream() {
+        return out != null ? out : System.out;
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        stream().print(trace.render());
+    }
+
+    @Override
+    public void acceptBatch(List<Tracer> traces) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < traces.size(); i++) {
+            traces.get(i).renderTo(sb);
+        }
+        PrintStream stream = stream();
+        stream.print(sb);
+        stream.flush();
+    }
+}
@@ -0,0 +1,102 @@
+package com.leduy.quicktrace;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LatencyHistogram chia thành nhiều shard theo thread: mỗi thread ghi vào shard của nó nên các bucket
+ * counters không bị tranh chấp giữa cores. Các shard được gộp lại khi đọc.
+ *
+ * <p>Shard chỉ được allocate khi có thread đầu tiên ghi vào, nên chi phí memory tỉ lệ với số thread
+ * thực sự dùng histogram chứ không phải số cores. Worst case là {@code stripes x}
+ * {@value LatencyHistogram#APPROX_BYTES} bytes; mặc định số stripes là số cores nhưng không quá
+ * {@value #DEFAULT_MAX_STRIPES}.
+ */
+public final class StripedHistogram {
+
+    private static final int MAX_STRIPES = 64;
+    static final int DEFAULT_MAX_STRIPES = 8;
+
+    /**
+     * Số stripes mặc định: số cores làm tròn lên lũy thừa 2, tối đa {@value #DEFAULT_MAX_STRIPES}
+     */
+    public static final int DEFAULT_STRIPES =
+            stripesFor(Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_STRIPES));
+
+    private final AtomicReferenceArray<LatencyHistogram> shards;
+    private final int mask;
+
+    public StripedHistogram() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes số shard tối đa, được làm tròn lên lũy thừa 2 (tối đa 64)
+     */
+    public StripedHistogram(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be > 0: " + stripes);
+        }
+        int size = stripesFor(stripes);
+        this.shards = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    static int stripesFor(int parallelism) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(parallelism, MAX_STRIPES)));
+        return size < parallelism && size < MAX_STRIPES ? size << 1 : size;
+    }
+
+    /**
+     * Ghi một giá trị (nanoseconds) vào shard của thread hiện tại
+     */
+    public void record(long nanos) {
+        shard().record(nanos);
+    }
+
+    private LatencyHistogram shard() {
+        int index = stripe(Thread.currentThread().getId()) & mask;
+        LatencyHistogram shard = shards.get(index);
+        if (shard == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            shard = shards.compareAndSet(index, null, created) ? created : shards.get(index);
+        }
+        return shard;
+    }
+
+    /**
+     * Trộn bit của thread id để các id liên tiếp rơi vào các shard khác nhau
+     */
+    private static int stripe(long threadId) {
+        long h = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Gộp mọi shard thành một histogram mới. Không block các thread đang ghi
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int i = 0; i < shards.length(); i++) {
+            LatencyHistogram shard = shards.get(i);
+            if (shard != null) {
+                merged.add(shard);
+            }
+        }
+        return merged;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < shards.length(); i++) {
+            LatencyHistogram shard = shards.get(i);
+            if (shard != null) {
+                count += shard.getCount();
+            }
+        }
+        return count;
+    }
+
+    public int getStripeCount() {
+        return shards.length();
+    }
+}
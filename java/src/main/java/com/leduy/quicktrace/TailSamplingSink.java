@@ -0,0 +1,341 @@
+package com.leduy.quicktrace;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Tail sampling: chỉ giao cho delegate những trace chậm nhất, quyết định sau khi trace đã kết thúc.
+ *
+ * <p>Hai mode:
+ * <ul>
+ *   <li>{@link Mode#PERCENTILE} - giữ trace có total > percentile (vd. p99) của phân phối latency
+ *       gần đây của chính tracer name đó. Phân phối là hai {@link LatencyHistogram} xoay vòng theo window;
+ *       percentile được nội suy bên trong bucket nên tỉ lệ trace được giữ xấp xỉ {@code 100 - p}%. Việc giữ
+ *       trace bắt đầu ngay khi tracer name có đủ {@code minSamples} trace</li>
+ *   <li>{@link Mode#TOP_K} - giữ K trace chậm nhất mỗi tracer name trong mỗi window, giao cho delegate
+ *       khi window kết thúc (hoặc khi {@link #flush()}/{@link #close()}). Một daemon thread kiểm tra window
+ *       định kỳ nên trace vẫn được giao khi traffic dừng hẳn - delegate vì vậy có thể được gọi từ thread đó</li>
+ * </ul>
+ * Số trace được giữ bị chặn bởi percentile/K chứ không phụ thuộc traffic.
+ *
+ * <p>Sink chỉ thấy những trace được giao cho nó, nên tracer nên dùng {@code minTotalDuration(Duration.ZERO)}
+ * hoặc đăng ký sink này làm observer để phân phối không bị lệch bởi print condition mặc định.
+ */
+public class TailSamplingSink implements TraceSink {
+
+    /**
+     * Cách chọn trace được giữ
+     */
+    public enum Mode {
+        PERCENTILE,
+        TOP_K
+    }
+
+    private static final int MAX_NAMES = 1024;
+    // TOP_K: số lần kiểm tra window mỗi window - trace được giao trễ tối đa 1/4 window
+    private static final int CHECKS_PER_WINDOW = 4;
+
+    private final TraceSink delegate;
+    private final Mode mode;
+    private final double percentile;
+    private final int topK;
+    private final long windowNanos;
+    private final long minSamples;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, NameState> states = new ConcurrentHashMap<>();
+    private final LongAdder kept = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // TOP_K: window dùng chung cho mọi tracer names
+    private final Object windowLock = new Object();
+    private long windowStart;
+    private final ScheduledExecutorService scheduler;
+
+    private TailSamplingSink(Builder builder) {
+        this.delegate = builder.delegate;
+        this.mode = builder.mode;
+        this.percentile = builder.percentile;
+        this.topK = builder.topK;
+        this.windowNanos = builder.window.toNanos();
+        this.minSamples = builder.minSamples;
+        this.clock = builder.clock;
+        this.windowStart = clock.getAsLong();
+        this.scheduler = mode == Mode.TOP_K && builder.scheduledFlush ? startScheduler() : null;
+    }
+
+    private ScheduledExecutorService startScheduler() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "quicktrace-tail-sampling");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(windowNanos / CHECKS_PER_WINDOW, TimeUnit.MILLISECONDS.toNanos(1));
+        executor.scheduleAtFixedRate(this::flushIfWindowEndedQuietly, period, period, TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    /**
+     * Tạo builder để customize sink
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder class cho TailSamplingSink
+     */
+    public static class Builder {
+        private TraceSink delegate = StdoutTraceSink.INSTANCE;
+        private Mode mode = Mode.PERCENTILE;
+        private double percentile = 99;
+        private int topK = 10;
+        private Duration window = Duration.ofMinutes(1);
+        private long minSamples = 100;
+        private LongSupplier clock = System::nanoTime;
+        private boolean scheduledFlush = true;
+
+        /**
+         * Sink nhận các trace được giữ lại
+         */
+        public Builder delegate(TraceSink delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Giữ trace có total > percentile (0-100) của tracer name đó
+         */
+        public Builder percentile(double percentile) {
+            if (!(percentile > 0 && percentile < 100)) {
+                throw new IllegalArgumentException("percentile must be in (0, 100): " + percentile);
+            }
+            this.mode = Mode.PERCENTILE;
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Giữ K trace chậm nhất mỗi tracer name trong mỗi window
+         */
+        public Builder topK(int k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be > 0: " + k);
+            }
+            this.mode = Mode.TOP_K;
+            this.topK = k;
+            return this;
+        }
+
+        /**
+         * PERCENTILE: độ dài mỗi nửa của phân phối rolling. TOP_K: độ dài window
+         */
+        public Builder window(Duration window) {
+            if (window.isNegative() || window.isZero()) {
+                throw new IllegalArgumentException("window must be > 0: " + window);
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * PERCENTILE: số trace tối thiểu của một tracer name trước khi bắt đầu giữ trace
+         */
+        public Builder minSamples(long minSamples) {
+            if (minSamples < 1) {
+                throw new IllegalArgumentException("minSamples must be >= 1: " + minSamples);
+            }
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * TOP_K: bật/tắt daemon thread giao trace khi window kết thúc mà không có trace mới. Tắt thì window
+         * chỉ được đóng trong accept() hoặc khi gọi {@link TailSamplingSink#flush()}
+         */
+        public Builder scheduledFlush(boolean scheduledFlush) {
+            this.scheduledFlush = scheduledFlush;
+            return this;
+        }
+
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public TailSamplingSink build() {
+            return new TailSamplingSink(this);
+        }
+    }
+
+    /**
+     * State của một tracer name
+     */
+    private static final class NameState {
+        // PERCENTILE - null ở mode TOP_K
+        final RollingHistogram latency;
+
+        // TOP_K - min-heap theo total để bỏ trace nhanh nhất khi đầy
+        final PriorityQueue<Tracer> slowest = new PriorityQueue<>(
+                (a, b) -> Long.compare(a.getTotalNanos(), b.getTotalNanos()));
+
+        NameState(RollingHistogram latency) {
+            this.latency = latency;
+        }
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        if (closed.get()) {
+            dropped.increment(); // Delegate đã đóng, window không còn được giao
+            return;
+        }
+        if (mode == Mode.PERCENTILE) {
+            acceptPercentile(trace);
+        } else {
+            acceptTopK(trace);
+        }
+    }
+
+    private NameState state(String name) {
+        name = TraceAggregator.keyOf(name);
+        NameState state = states.get(name);
+        if (state != null) {
+            return state;
+        }
+        if (states.size() >= MAX_NAMES) {
+            name = TraceAggregator.OTHER;
+        }
+        return states.computeIfAbsent(name, key -> new NameState(mode == Mode.PERCENTILE
+                ? new RollingHistogram(windowNanos, minSamples, clock, percentile)
+                : null));
+    }
+
+    private void acceptPercentile(Tracer trace) {
+        NameState state = state(trace.getName());
+        long total = trace.getTotalNanos();
+        state.latency.record(total);
+
+        long threshold = state.latency.threshold(0);
+        if (threshold >= 0 && total > threshold) {
+            kept.increment();
+            delegate.accept(trace);
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private void acceptTopK(Tracer trace) {
+        flushIfWindowEnded();
+
+        NameState state = state(trace.getName());
+        Tracer evicted = null;
+        synchronized (state) {
+            state.slowest.add(trace);
+            if (state.slowest.size() > topK) {
+                evicted = state.slowest.poll();
+            }
+        }
+        if (evicted != null) {
+            dropped.increment();
+        }
+        // close() có thể đã giao window cuối giữa lúc check closed và lúc thêm vào heap
+        if (closed.get()) {
+            synchronized (state) {
+                if (state.slowest.remove(trace)) {
+                    dropped.increment();
+                }
+            }
+        }
+    }
+
+    private void flushIfWindowEnded() {
+        long now = clock.getAsLong();
+        synchronized (windowLock) {
+            if (now - windowStart < windowNanos) {
+                return;
+            }
+            windowStart = now;
+        }
+        flushTopK();
+    }
+
+    private void flushIfWindowEndedQuietly() {
+        try {
+            flushIfWindowEnded();
+        } catch (RuntimeException e) {
+            // Lỗi của delegate không được dừng lịch kiểm tra window
+        }
+    }
+
+    private void flushTopK() {
+        List<Tracer> batch = new ArrayList<>();
+        for (Map.Entry<String, NameState> entry : states.entrySet()) {
+            NameState state = entry.getValue();
+            int start = batch.size();
+            synchronized (state) {
+                batch.addAll(state.slowest);
+                state.slowest.clear();
+            }
+            // Chậm nhất trước
+            batch.subList(start, batch.size()).sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+        }
+        if (!batch.isEmpty()) {
+            kept.add(batch.size());
+            delegate.acceptBatch(batch);
+        }
+    }
+
+    /**
+     * TOP_K: giao ngay các trace đang giữ trong window hiện tại cho delegate
+     */
+    public void flush() {
+        if (mode == Mode.TOP_K) {
+            synchronized (windowLock) {
+                windowStart = clock.getAsLong();
+            }
+            flushTopK();
+        }
+    }
+
+    /**
+     * Dừng daemon thread (TOP_K), giao nốt window hiện tại rồi đóng delegate. Gọi nhiều lần chỉ đóng một lần;
+     * trace tới sau close() bị bỏ và tính vào dropped
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flush();
+        delegate.close();
+    }
+
+    /**
+     * PERCENTILE: threshold hiện tại (nanoseconds) của tracer name - trace có total lớn hơn giá trị này được giữ.
+     * Long.MAX_VALUE khi chưa đủ samples
+     */
+    public long getThresholdNanos(String tracerName) {
+        NameState state = states.get(TraceAggregator.keyOf(tracerName));
+        long threshold = state != null && state.latency != null ? state.latency.threshold(0) : -1;
+        return threshold >= 0 ? threshold : Long.MAX_VALUE;
+    }
+
+    public long getKeptCount() { return kept.sum(); }
+    public long getDroppedCount() { return dropped.sum(); }
+    public Mode getMode() { return mode; }
+}
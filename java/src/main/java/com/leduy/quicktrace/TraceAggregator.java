@@ -0,0 +1,267 @@
+package com.leduy.quicktrace;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gộp các trace đã kết thúc thành thống kê theo (tracer name, span statement):
+ * count, sum, min, max và {@link LatencyHistogram} cho từng span và cho total của từng tracer.
+ *
+ * <p>Memory bị chặn nhưng không nhỏ: mỗi (tracer, span) là một histogram
+ * ~{@value LatencyHistogram#APPROX_BYTES} bytes, nên worst case khoảng
+ * {@code (maxTracerNames + 1) x (maxSpanNames + 2) x 4 KB} - ~9 MB với giới hạn mặc định 64 x 32,
+ * ~275 MB với 256 x 256 (xem {@link #getMaxFootprintBytes()}). Phần vượt giới hạn được gộp vào key
+ * {@value #OTHER}, tên null vào key {@value #NULL_NAME}. Đăng ký như một observer
+ * ({@link Tracer.Builder#observer(TraceSink)} hoặc {@link Tracer#addGlobalObserver(TraceSink)}) để nhận cả
+ * những trace không được in ra.
+ */
+public class TraceAggregator implements TraceSink {
+
+    /**
+     * Key cho tracer/span names vượt quá giới hạn cardinality
+     */
+    public static final String OTHER = "(other)";
+
+    /**
+     * Key cho tracer/span name null - ConcurrentHashMap không nhận key null
+     */
+    public static final String NULL_NAME = "(null)";
+
+    public static final int DEFAULT_MAX_TRACER_NAMES = 64;
+    public static final int DEFAULT_MAX_SPAN_NAMES = 32;
+
+    /**
+     * Giá trị thống kê dùng khi render aggregate qua các output styles
+     */
+    public enum Statistic {
+        MEAN, MIN, MAX, P50, P90, P99;
+
+        public long of(LatencyHistogram histogram) {
+            switch (this) {
+                case MEAN:
+                    return Math.round(histogram.getMean());
+                case MIN:
+                    return histogram.getMin();
+                case MAX:
+                    return histogram.getMax();
+                case P50:
+                    return histogram.getPercentile(50);
+                case P90:
+                    return histogram.getPercentile(90);
+                default:
+                    return histogram.getPercentile(99);
+            }
+        }
+    }
+
+    private final int maxTracerNames;
+    private final int maxSpanNames;
+    private final ConcurrentHashMap<String, TracerStats> tracers = new ConcurrentHashMap<>();
+    private final LongAdder overflowCount = new LongAdder();
+
+    public TraceAggregator() {
+        this(DEFAULT_MAX_TRACER_NAMES, DEFAULT_MAX_SPAN_NAMES);
+    }
+
+    /**
+     * @param maxTracerNames số tracer names tối đa được theo dõi riêng
+     * @param maxSpanNames số span names tối đa được theo dõi riêng trong mỗi tracer
+     */
+    public TraceAggregator(int maxTracerNames, int maxSpanNames) {
+        if (maxTracerNames <= 0) {
+            throw new IllegalArgumentException("maxTracerNames must be > 0: " + maxTracerNames);
+        }
+        if (maxSpanNames <= 0) {
+            throw new IllegalArgumentException("maxSpanNames must be > 0: " + maxSpanNames);
+        }
+        this.maxTracerNames = maxTracerNames;
+        this.maxSpanNames = maxSpanNames;
+    }
+
+    /**
+     * Thống kê của một tracer name: histogram total và histogram cho từng span
+     */
+    public static final class TracerStats {
+        private final String name;
+        private final int maxSpanNames;
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final ConcurrentHashMap<String, LatencyHistogram> spans = new ConcurrentHashMap<>();
+        // Thứ tự span xuất hiện lần đầu - để render giống thứ tự trong trace
+        private final List<String> spanOrder = new CopyOnWriteArrayList<>();
+
+        TracerStats(String name, int maxSpanNames) {
+            this.name = name;
+            this.maxSpanNames = maxSpanNames;
+        }
+
+        private LatencyHistogram span(String spanName) {
+            spanName = keyOf(spanName);
+            LatencyHistogram histogram = spans.get(spanName);
+            if (histogram != null) {
+                return histogram;
+            }
+            synchronized (this) {
+                histogram = spans.get(spanName);
+                if (histogram == null) {
+                    if (spans.size() >= maxSpanNames) {
+                        spanName = OTHER;
+                        histogram = spans.get(OTHER);
+                    }
+                    if (histogram == null) {
+                        histogram = new LatencyHistogram();
+                        spans.put(spanName, histogram);
+                        spanOrder.add(spanName);
+                    }
+                }
+                return histogram;
+            }
+        }
+
+        public String getName() { return name; }
+        public LatencyHistogram getTotal() { return total; }
+        public long getCount() { return total.getCount(); }
+
+        /**
+         * Span names theo thứ tự xuất hiện lần đầu
+         */
+        public List<String> getSpanNames() { return Collections.unmodifiableList(spanOrder); }
+
+        /**
+         * Histogram của span, null nếu span chưa từng xuất hiện
+         */
+        public LatencyHistogram getSpan(String spanName) { return spans.get(keyOf(spanName)); }
+    }
+
+    @Override
+    public void accept(Tracer trace) {
+        TracerStats stats = stats(trace.getName());
+        stats.total.record(trace.getTotalNanos());
+
+        // Bỏ span "End" cuối cùng giống các renderers
+        SpanBuffer spans = trace.spans();
+        for (int i = 0; i < spans.size() - 1; i++) {
+            stats.span(spans.name(i)).record(spans.durationNanos(i));
+        }
+    }
+
+    /**
+     * Cộng thống kê của aggregator khác vào aggregator này (vd. gộp các time slot thành một window).
+     * Giới hạn cardinality của aggregator này vẫn được áp dụng
+     */
+    public void merge(TraceAggregator other) {
+        for (TracerStats source : other.tracers.values()) {
+            TracerStats target = stats(source.name);
+            target.total.add(source.total);
+            for (String spanName : source.spanOrder) {
+                target.span(spanName).add(source.spans.get(spanName));
+            }
+        }
+        overflowCount.add(other.overflowCount.sum());
+    }
+
+    /**
+     * Key trong các map theo tên: tên null được gộp vào {@value #NULL_NAME}
+     */
+    static String keyOf(String name) {
+        return name != null ? name : NULL_NAME;
+    }
+
+    private TracerStats stats(String tracerName) {
+        tracerName = keyOf(tracerName);
+        TracerStats stats = tracers.get(tracerName);
+        if (stats != null) {
+            return stats;
+        }
+        if (tracers.size() >= maxTracerNames) {
+            overflowCount.increment();
+            tracerName = OTHER;
+        }
+        return tracers.computeIfAbsent(tracerName, key -> new TracerStats(key, maxSpanNames));
+    }
+
+    /**
+     * Memory tối đa (bytes, ước lượng) của các histograms khi mọi giới hạn đã đầy:
+     * tracer names cộng {@value #OTHER}, mỗi tracer có total, span names và {@value #OTHER}
+     */
+    public long getMaxFootprintBytes() {
+        return (long) (maxTracerNames + 1) * (maxSpanNames + 2) * LatencyHistogram.APPROX_BYTES;
+    }
+
+    /**
+     * Tracer names đang có thống kê, sắp xếp theo tên
+     */
+    public List<String> getTracerNames() {
+        List<String> names = new ArrayList<>(tracers.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Thống kê của tracer name, null nếu chưa có trace nào
+     */
+    public TracerStats getStats(String tracerName) {
+        return tracers.get(keyOf(tracerName));
+    }
+
+    /**
+     * Số trace bị gộp vào {@value #OTHER} vì vượt giới hạn tracer names
+     */
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    /**
+     * Xóa toàn bộ thống kê
+     */
+    public void reset() {
+        tracers.clear();
+        overflowCount.reset();
+    }
+
+    /**
+     * Dựng một Tracer (không in, không end) chứa statistic của từng span để render qua các output styles.
+     * Total là statistic của tổng thời gian trace nếu lớn hơn tổng các span, phần chênh lệch nằm ở "End".
+     * Trả về null nếu tracer name chưa có thống kê
+     */
+    public Tracer toTracer(String tracerName, Statistic statistic, OutputStyle style) {
+        TracerStats stats = tracers.get(keyOf(tracerName));
+        if (stats == null) {
+            return null;
+        }
+
+        Tracer tracer = Tracer.builder(tracerName + " [" + statistic + " of " + stats.getCount() + " traces]")
+                .outputStyle(style)
+                .captureCaller(false)
+                .minTotalDuration(Duration.ZERO)
+                .build();
+
+        long spanTotal = 0;
+        for (String spanName : stats.spanOrder) {
+            long value = statistic.of(stats.spans.get(spanName));
+            tracer.recordSpan(spanName, value);
+            spanTotal += value;
+        }
+        tracer.recordSpan("End", Math.max(0, statistic.of(stats.total) - spanTotal));
+        tracer.markEnded();
+        return tracer;
+    }
+
+    /**
+     * Render thống kê của mọi tracer names theo output style
+     */
+    public String render(OutputStyle style, Statistic statistic) {
+        StringBuilder sb = new StringBuilder(2048);
+        for (String tracerName : getTracerNames()) {
+            Tracer tracer = toTracer(tracerName, statistic, style);
+            if (tracer != null) {
+                tracer.renderTo(sb);
+            }
+        }
+        return sb.toString();
+    }
+}
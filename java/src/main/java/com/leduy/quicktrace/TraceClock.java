@@ -0,0 +1,27 @@
+package com.leduy.quicktrace;
+
+import java.time.Instant;
+
+/**
+ * Quy đổi System.nanoTime() sang epoch nanoseconds.
+ * Wall clock chỉ được đọc một lần khi class load; sau đó mọi timestamp đều suy ra từ
+ * monotonic clock nên không bị NTP step làm lệch trong một process.
+ */
+final class TraceClock {
+
+    private static final long ANCHOR_NANO_TIME;
+    private static final long ANCHOR_EPOCH_NANOS;
+
+    static {
+        Instant now = Instant.now();
+        ANCHOR_NANO_TIME = System.nanoTime();
+        ANCHOR_EPOCH_NANOS = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private TraceClock() {
+    }
+
+    static long toEpochNanos(long nanoTime) {
+        return ANCHOR_EPOCH_NANOS + (nanoTime - ANCHOR_NANO_TIME);
+    }
+}
@@ -0,0 +1,235 @@
+package com.leduy.quicktrace;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Tracer hiện tại của thread, để code downstream gọi {@code Tracer.current().span(...)} thay vì nhận
+ * Tracer qua mọi method signature.
+ *
+ * <pre>{@code
+ * try (TraceContext.Scope scope = tracer.makeCurrent()) {
+ *     TraceContext.supplyAsync(() -> loadUser(), pool)
+ *         .thenApplyAsync(user -> render(user), TraceContext.wrap(pool))
+ *         .thenAccept(TraceContext.wrapConsumer(html -> Tracer.current().span("Rendered")));
+ * }
+ * }</pre>
+ *
+ * Các wrap*(...) capture tracer hiện tại lúc wrap và attach nó trên thread chạy task. Khi tracer được
+ * dùng song song trên nhiều thread, tạo nó với {@link Tracer.Builder#concurrent(boolean)}.
+ *
+ * <p>{@link Storage#THREAD_LOCAL} (mặc định) dùng một ThreadLocal. {@link Storage#THREAD_MAP} giữ context
+ * trong một map dùng chung chỉ chứa các thread đang có context - phù hợp khi có hàng triệu virtual threads,
+ * vì không tạo ThreadLocalMap cho mỗi thread. Map được key theo thread id nên không giữ Thread nào sống; entry
+ * bị xóa khi scope được close, nên scope không được close sẽ giữ tracer của nó trong map.
+ */
+public final class TraceContext {
+
+    /**
+     * Nơi lưu tracer hiện tại của mỗi thread
+     */
+    public enum Storage {
+        THREAD_LOCAL,
+        THREAD_MAP
+    }
+
+    private static final ThreadLocal<Tracer> LOCAL = new ThreadLocal<>();
+    // Key là thread id - không giữ reference tới Thread đã kết thúc
+    private static final ConcurrentHashMap<Long, Tracer> MAP = new ConcurrentHashMap<>();
+    private static volatile Storage storage = Storage.THREAD_LOCAL;
+
+    private TraceContext() {
+    }
+
+    /**
+     * Chọn storage cho cả process. Nên gọi lúc khởi động, trước khi có context nào được attach
+     */
+    public static void setStorage(Storage storage) {
+        TraceContext.storage = Objects.requireNonNull(storage, "storage");
+    }
+
+    public static Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Tracer hiện tại, hoặc no-op tracer dùng chung nếu thread không có context
+     */
+    public static Tracer current() {
+        Tracer tracer = get(storage);
+        return tracer != null ? tracer : Tracer.noop();
+    }
+
+    /**
+     * Đặt tracer (null để xóa context) làm tracer hiện tại cho tới khi scope được close
+     */
+    public static Scope attach(Tracer tracer) {
+        Storage target = storage;
+        Tracer previous = get(target);
+        set(target, tracer);
+        return new Scope(target, previous);
+    }
+
+    /**
+     * Attach context cho một task vừa bắt đầu chạy trên thread này
+     */
+    private static Scope enter(Tracer tracer) {
+        Scope scope = attach(tracer);
+        if (tracer != null && tracer != scope.previous) {
+            // Concurrent tracer: span phẳng đầu tiên của task tính từ lúc task bắt đầu
+            tracer.resumeOnCurrentThread();
+        }
+        return scope;
+    }
+
+    /**
+     * Khôi phục tracer trước đó khi close
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Storage storage;
+        private final Tracer previous;
+
+        private Scope(Storage storage, Tracer previous) {
+            this.storage = storage;
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            set(storage, previous);
+        }
+    }
+
+    private static Tracer get(Storage storage) {
+        return storage == Storage.THREAD_LOCAL ? LOCAL.get() : MAP.get(Thread.currentThread().getId());
+    }
+
+    private static void set(Storage storage, Tracer tracer) {
+        if (storage == Storage.THREAD_LOCAL) {
+            if (tracer != null) {
+                LOCAL.set(tracer);
+            } else {
+                LOCAL.remove();
+            }
+        } else if (tracer != null) {
+            MAP.put(Thread.currentThread().getId(), tracer);
+        } else {
+            MAP.remove(Thread.currentThread().getId());
+        }
+    }
+
+    /**
+     * Số thread đang có context trong {@link Storage#THREAD_MAP}
+     */
+    static int threadMapSize() {
+        return MAP.size();
+    }
+
+    /**
+     * Xóa mọi context trong {@link Storage#THREAD_MAP}, kể cả của scope không được close
+     */
+    static void clearThreadMap() {
+        MAP.clear();
+    }
+
+    // ===== Wrappers: capture context lúc wrap, attach khi chạy. Stage không async của CompletableFuture
+    // chạy trên thread hoàn thành stage trước, nên cần wrapFunction/wrapConsumer. Scope chỉ dùng để
+    // detach context khi close, nên các wrapper tắt lint "try" =====
+
+    @SuppressWarnings("try")
+    public static Runnable wrap(Runnable task) {
+        Tracer tracer = get(storage);
+        return () -> {
+            try (Scope scope = enter(tracer)) {
+                task.run();
+            }
+        };
+    }
+
+    @SuppressWarnings("try")
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Tracer tracer = get(storage);
+        return () -> {
+            try (Scope scope = enter(tracer)) {
+                return task.call();
+            }
+        };
+    }
+
+    @SuppressWarnings("try")
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        Tracer tracer = get(storage);
+        return () -> {
+            try (Scope scope = enter(tracer)) {
+                return supplier.get();
+            }
+        };
+    }
+
+    @SuppressWarnings("try")
+    public static <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+        Tracer tracer = get(storage);
+        return value -> {
+            try (Scope scope = enter(tracer)) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    @SuppressWarnings("try")
+    public static <T> Consumer<T> wrapConsumer(Consumer<T> consumer) {
+        Tracer tracer = get(storage);
+        return value -> {
+            try (Scope scope = enter(tracer)) {
+                consumer.accept(value);
+            }
+        };
+    }
+
+    @SuppressWarnings("try")
+    public static <T, U, R> BiFunction<T, U, R> wrapFunction(BiFunction<T, U, R> function) {
+        Tracer tracer = get(storage);
+        return (t, u) -> {
+            try (Scope scope = enter(tracer)) {
+                return function.apply(t, u);
+            }
+        };
+    }
+
+    /**
+     * Executor chạy mỗi task với context của thread đã submit nó
+     */
+    public static Executor wrap(Executor executor) {
+        Objects.requireNonNull(executor, "executor");
+        return command -> executor.execute(wrap(command));
+    }
+
+    /**
+     * ExecutorService chạy mỗi task với context của thread đã submit nó
+     */
+    public static ExecutorService wrap(ExecutorService executor) {
+        return new ContextExecutorService(Objects.requireNonNull(executor, "executor"));
+    }
+
+    /**
+     * {@link CompletableFuture#supplyAsync(Supplier, Executor)} với context hiện tại
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(wrapSupplier(supplier), executor);
+    }
+
+    /**
+     * {@link CompletableFuture#runAsync(Runnable, Executor)} với context hiện tại
+     */
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        return CompletableFuture.runAsync(wrap(task), executor);
+    }
+}
@@ -0,0 +1,83 @@
+package com.leduy.quicktrace;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Quyết định head sampling trong Tracer.Builder.build(): sample theo xác suất và giới hạn
+ * N traces mỗi giây cho từng tracer name. Không lock trên đường quyết định.
+ */
+final class TraceSampler {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long ORIGIN = System.nanoTime();
+
+    // Count được pack cùng window id trong một long: 24 bit thấp là count trong window hiện tại
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    /**
+     * Rate limit tối đa - giới hạn bởi số bit dành cho count
+     */
+    static final int MAX_RATE_LIMIT = (int) COUNT_MASK;
+
+    // Giới hạn số limiters để tên động (vd. có id trong tên) không làm map phình vô hạn
+    private static final int MAX_LIMITERS = 4096;
+    private static final ConcurrentHashMap<String, RateLimiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final RateLimiter OVERFLOW_LIMITER = new RateLimiter();
+
+    private TraceSampler() {
+    }
+
+    /**
+     * true nếu trace với name này được sample
+     */
+    static boolean sample(String name, double sampleRate, int perSecond) {
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return false;
+        }
+        return perSecond <= 0 || limiter(name).tryAcquire(perSecond);
+    }
+
+    private static RateLimiter limiter(String name) {
+        name = TraceAggregator.keyOf(name);
+        RateLimiter limiter = LIMITERS.get(name);
+        if (limiter != null) {
+            return limiter;
+        }
+        if (LIMITERS.size() >= MAX_LIMITERS) {
+            return OVERFLOW_LIMITER;
+        }
+        return LIMITERS.computeIfAbsent(name, key -> new RateLimiter());
+    }
+
+    /**
+     * Fixed window một giây, state (window id, count) nằm trong một AtomicLong để cập nhật bằng một CAS
+     */
+    static final class RateLimiter {
+        private final AtomicLong state = new AtomicLong();
+
+        boolean tryAcquire(int perSecond) {
+            return tryAcquire(perSecond, System.nanoTime());
+        }
+
+        boolean tryAcquire(int perSecond, long nowNanos) {
+            long window = (nowNanos - ORIGIN) / NANOS_PER_SECOND + 1;
+            while (true) {
+                long current = state.get();
+                long next;
+                if ((current >>> COUNT_BITS) != window) {
+                    next = (window << COUNT_BITS) | 1;
+                } else if ((current & COUNT_MASK) >= perSecond) {
+                    return false;
+                } else {
+                    next = current + 1;
+                }
+                if (state.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.leduy.quicktrace;
+
+import java.util.List;
+
+/**
+ * Đích đến của các trace đã kết thúc.
+ * Sink nhận chính Tracer (tên, spans, total duration, caller info...) thay vì một String đã format,
+ * nên sink không cần text (metrics, binary log...) có thể bỏ qua hoàn toàn OutputRenderer.
+ * Sink cần text gọi {@link Tracer#render()}.
+ */
+@FunctionalInterface
+public interface TraceSink extends AutoCloseable {
+
+    /**
+     * Nhận một trace đã kết thúc
+     */
+    void accept(Tracer trace);
+
+    /**
+     * Nhận nhiều trace một lần. Sink ghi ra I/O nên override để gom thành một lần ghi
+     */
+    default void acceptBatch(List<Tracer> traces) {
+        for (int i = 0; i < traces.size(); i++) {
+            accept(traces.get(i));
+        }
+    }
+
+    /**
+     * Giải phóng tài nguyên (file, thread...). Mặc định không làm gì
+     */
+    @Override
+    default void close() {
+    }
+}
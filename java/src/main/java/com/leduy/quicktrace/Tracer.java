@@ -1,15 +1,12 @@
 package com.leduy.quicktrace;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-import java.io.PrintStream;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * QuickTrace Tracer cho Java
@@ -20,17 +17,58 @@ public class Tracer {
     // Default minimum duration để hiển thị trace
     public static final Duration DEFAULT_MIN_DURATION = Duration.ofMillis(100);
     
+    // Sink dùng khi tracer không được cấu hình sink riêng
+    private static volatile TraceSink defaultSink = StdoutTraceSink.INSTANCE;
+    
+    // Observers nhận mọi trace đã end() (kể cả silent/không đạt print condition) - copy-on-write
+    private static final TraceSink[] NO_OBSERVERS = new TraceSink[0];
+    private static volatile TraceSink[] globalObservers = NO_OBSERVERS;
+    
+    // Số lần sink throw tại end() - lỗi bị nuốt để không làm hỏng code đang được trace
+    private static final AtomicLong SINK_FAILURES = new AtomicLong();
+    
+    static final String UNKNOWN_CALLER = "Unknown:0";
+    
+    // Giới hạn số frame được walk khi tìm caller - không bao giờ materialize toàn bộ stack
+    private static final int MAX_CALLER_DEPTH = 8;
+    private static final StackWalker CALLER_WALKER = StackWalker.getInstance();
+    private static final Function<Stream<StackWalker.StackFrame>, StackWalker.StackFrame> FIND_CALLER =
+        frames -> frames.limit(MAX_CALLER_DEPTH)
+            .filter(frame -> !isTracerFrame(frame))
+            .findFirst()
+            .orElse(null);
+    
+    // Instance dùng chung cho mọi trace không được sample - không đọc clock, không capture caller,
+    // không lưu spans và bỏ qua mọi setter
+    private static final Tracer NOOP = new Tracer(new Builder("unsampled").enabled(false).captureCaller(false));
+    
     private final String name;
-    private final List<Measurement> measurements;
-    private Instant lastTime;
-    private final Instant totalTime;
+    
+    // Tracer thường: một recorder cho thread sở hữu tracer. Concurrent tracer: một recorder mỗi thread,
+    // gộp thành timeline tại end()
+    private final SpanRecorder recorder;
+    private final ConcurrentSpans concurrentSpans;
+    private volatile SpanBuffer mergedSpans;
+    
+    // Monotonic clock (System.nanoTime) - không bị ảnh hưởng bởi NTP step như Instant.now().
+    // Tracer tạo ở trạng thái disabled chỉ bắt đầu đọc clock khi được enable
+    private long startNanos;
+    private boolean started;
+    private long endNanos;
+    // nanoTime có origin tùy ý và có thể âm - không dùng dấu của endNanos làm sentinel
+    private boolean ended;
     private boolean enabled;
     private boolean silent;
     private OutputStyle outputStyle;
     private Predicate<Tracer> printCondition;
+    private TraceSink sink;
+    private final TraceSink observer;
+    // Thread đã tạo tracer - thread của spans khi trace không có thread id cho từng span
+    private final long threadId;
     
-    // Caller info
-    private final String callerInfo;
+    // Caller info - frame được capture lúc tạo tracer (stack không còn sau đó), chỉ format thành String khi có người hỏi
+    private StackWalker.StackFrame callerFrame;
+    private String callerInfo;
     
     // Smart filtering options
     private boolean showSlowOnly;
@@ -39,25 +77,44 @@ public class Tracer {
     private Duration ultraFastThreshold;
     private boolean groupSimilar;
     private Duration similarThreshold;
+    // Ngưỡng học từ lịch sử của từng span - null thì chỉ dùng ngưỡng cố định
+    private final AdaptiveThresholds adaptiveThresholds;
     
     private Tracer(Builder builder) {
         this.name = builder.name;
-        this.measurements = new ArrayList<>();
-        this.lastTime = Instant.now();
-        this.totalTime = Instant.now();
+        this.threadId = Thread.currentThread().getId();
+        this.concurrentSpans = builder.concurrent ? new ConcurrentSpans() : null;
+        this.recorder = builder.concurrent ? null : new SpanRecorder(threadId, 0);
         this.enabled = builder.enabled;
         this.silent = builder.silent;
         this.outputStyle = builder.outputStyle;
         this.printCondition = builder.printCondition;
+        this.sink = builder.sink;
+        this.observer = builder.observer;
         this.showSlowOnly = builder.showSlowOnly;
         this.slowThreshold = builder.slowThreshold;
         this.hideUltraFast = builder.hideUltraFast;
         this.ultraFastThreshold = builder.ultraFastThreshold;
         this.groupSimilar = builder.groupSimilar;
         this.similarThreshold = builder.similarThreshold;
+        this.adaptiveThresholds = builder.adaptiveThresholds;
         
-        // Capture caller information
-        this.callerInfo = captureCallerInfo();
+        // Caller frame (bounded walk, không format) luôn lấy tại nơi tạo tracer, kể cả khi tạo ở trạng thái
+        // disabled - setEnabled(true) có thể được gọi ở chỗ khác và nơi tạo không còn trên stack
+        if (builder.captureCaller) {
+            callerFrame = CALLER_WALKER.walk(FIND_CALLER);
+        }
+        if (enabled) {
+            start();
+        }
+    }
+    
+    private void start() {
+        startNanos = System.nanoTime();
+        if (recorder != null) {
+            recorder.reset(startNanos);
+        }
+        started = true;
     }
     
     /**
@@ -67,6 +124,24 @@ public class Tracer {
         return new Builder(name).build();
     }
     
+    /**
+     * Tracer của context hiện tại (xem {@link TraceContext}), hoặc no-op tracer nếu thread không có context
+     */
+    public static Tracer current() {
+        return TraceContext.current();
+    }
+    
+    /**
+     * Đặt tracer này làm {@link #current()} cho tới khi scope được close
+     */
+    public TraceContext.Scope makeCurrent() {
+        return TraceContext.attach(this);
+    }
+    
+    static Tracer noop() {
+        return NOOP;
+    }
+    
     /**
      * Tạo builder để customize tracer
      */
@@ -82,8 +157,13 @@ public class Tracer {
         private boolean enabled = true;
         private boolean silent = false;
         private OutputStyle outputStyle = OutputStyle.DEFAULT;
-        private Predicate<Tracer> printCondition = tracer -> 
-            Duration.between(tracer.totalTime, Instant.now()).compareTo(DEFAULT_MIN_DURATION) >= 0;
+        private boolean captureCaller = true;
+        private boolean concurrent = false;
+        private double sampleRate = 1.0;
+        private int rateLimit;
+        private TraceSink sink;
+        private TraceSink observer;
+        private Predicate<Tracer> printCondition = minTotalNanosCondition(DEFAULT_MIN_DURATION.toNanos());
         
         // Smart filtering
         private boolean showSlowOnly = false;
@@ -92,6 +172,7 @@ public class Tracer {
         private Duration ultraFastThreshold = Duration.ZERO;
         private boolean groupSimilar = false;
         private Duration similarThreshold = Duration.ZERO;
+        private AdaptiveThresholds adaptiveThresholds;
         
         public Builder(String name) {
             this.name = name;
@@ -112,16 +193,83 @@ public class Tracer {
             return this;
         }
         
+        /**
+         * Bật/tắt capture file:line nơi tạo tracer. Mặc định bật: mỗi tracer (kể cả tracer tạo disabled) walk tối đa
+         * vài frame ngay trong constructor (caller không còn trên stack khi output cần tới), chỉ phần format
+         * được hoãn. Tắt đi để bỏ hẳn chi phí stack walk
+         */
+        public Builder captureCaller(boolean captureCaller) {
+            this.captureCaller = captureCaller;
+            return this;
+        }
+        
+        /**
+         * Concurrent tracer: span()/startSpan() an toàn khi gọi từ nhiều thread cùng lúc (vd. một request
+         * fan-out trên thread pool). Mỗi thread ghi vào buffer riêng, end() gộp thành một timeline có thread id.
+         * Span phẳng đầu tiên của mỗi thread được tính từ lúc bắt đầu trace - code chạy trên worker nên dùng
+         * {@link Tracer#startSpan(String)}
+         */
+        public Builder concurrent(boolean concurrent) {
+            this.concurrent = concurrent;
+            return this;
+        }
+        
+        /**
+         * Head sampling: chỉ rate (0-1) phần trăm số trace được ghi. Trace không được sample
+         * nhận một no-op tracer dùng chung từ build()
+         */
+        public Builder sampleRate(double rate) {
+            if (!(rate >= 0 && rate <= 1)) {
+                throw new IllegalArgumentException("sampleRate must be in [0, 1]: " + rate);
+            }
+            this.sampleRate = rate;
+            return this;
+        }
+        
+        /**
+         * Giới hạn số trace được sample mỗi giây cho tracer name này. 0 là không giới hạn
+         */
+        public Builder rateLimit(int tracesPerSecond) {
+            if (tracesPerSecond < 0 || tracesPerSecond > TraceSampler.MAX_RATE_LIMIT) {
+                throw new IllegalArgumentException("rateLimit must be in [0, " + TraceSampler.MAX_RATE_LIMIT + "]: "
+                        + tracesPerSecond);
+            }
+            this.rateLimit = tracesPerSecond;
+            return this;
+        }
+        
+        /**
+         * Sink nhận trace khi end(). Không set thì dùng {@link Tracer#getDefaultSink()}
+         */
+        public Builder sink(TraceSink sink) {
+            this.sink = sink;
+            return this;
+        }
+        
+        /**
+         * Observer nhận trace tại end() trước khi xét silent và print condition (vd. TraceAggregator)
+         */
+        public Builder observer(TraceSink observer) {
+            this.observer = observer;
+            return this;
+        }
+        
         public Builder minTotalDuration(Duration minDuration) {
-            this.printCondition = tracer -> 
-                Duration.between(tracer.totalTime, Instant.now()).compareTo(minDuration) >= 0;
+            this.printCondition = minTotalNanosCondition(minDuration.toNanos());
             return this;
         }
         
         public Builder minSpanDuration(Duration minDuration) {
-            this.printCondition = tracer -> 
-                tracer.measurements.stream()
-                    .anyMatch(m -> m.getDuration().compareTo(minDuration) >= 0);
+            long minNanos = minDuration.toNanos();
+            this.printCondition = tracer -> {
+                SpanBuffer spans = tracer.spans();
+                for (int i = 0; i < spans.size(); i++) {
+                    if (spans.durationNanos(i) >= minNanos) {
+                        return true;
+                    }
+                }
+                return false;
+            };
             return this;
         }
         
@@ -142,6 +290,15 @@ public class Tracer {
             return this;
         }
         
+        /**
+         * Học latency của từng span tại end() và để showSlowOnly/hideUltraFast so span với lịch sử của chính nó
+         * (vd. p95/p10); ngưỡng cố định chỉ còn là fallback khi span chưa đủ lịch sử
+         */
+        public Builder adaptiveThresholds(AdaptiveThresholds thresholds) {
+            this.adaptiveThresholds = Objects.requireNonNull(thresholds, "thresholds");
+            return this;
+        }
+        
         public Builder groupSimilar(Duration threshold) {
             this.groupSimilar = true;
             this.similarThreshold = threshold;
@@ -161,9 +318,19 @@ public class Tracer {
             return this;
         }
         
+        /**
+         * Tạo tracer, hoặc trả về no-op tracer dùng chung nếu trace không được sample
+         */
         public Tracer build() {
+            if ((sampleRate < 1.0 || rateLimit > 0) && !TraceSampler.sample(name, sampleRate, rateLimit)) {
+                return NOOP;
+            }
             return new Tracer(this);
         }
+        
+        private static Predicate<Tracer> minTotalNanosCondition(long minNanos) {
+            return tracer -> tracer.getTotalNanos() >= minNanos;
+        }
     }
     
     /**
@@ -174,10 +341,53 @@ public class Tracer {
             return;
         }
         
-        Instant now = Instant.now();
-        Duration duration = Duration.between(lastTime, now);
-        measurements.add(new Measurement(statement, duration));
-        lastTime = now;
+        recorder().span(statement);
+    }
+    
+    /**
+     * Mở một nested span, kết thúc khi scope được close (dùng với try-with-resources).
+     * Spans ghi trong lúc scope mở là con của nó
+     */
+    public SpanScope startSpan(String name) {
+        if (!enabled) {
+            return SpanScope.NOOP;
+        }
+        
+        SpanRecorder current = recorder();
+        return new SpanScope(current, current.startSpan(name));
+    }
+    
+    /**
+     * Context của tracer vừa được attach trên thread hiện tại (task mới bắt đầu). Concurrent tracer tính
+     * span phẳng tiếp theo của thread này từ bây giờ thay vì từ span trước đó của thread
+     */
+    void resumeOnCurrentThread() {
+        if (concurrentSpans != null && enabled && started) {
+            concurrentSpans.current(startNanos).reset(System.nanoTime());
+        }
+    }
+    
+    /**
+     * Recorder của thread đang gọi
+     */
+    private SpanRecorder recorder() {
+        return recorder != null ? recorder : concurrentSpans.current(startNanos);
+    }
+    
+    /**
+     * Ghi span với duration cho trước, không đọc clock.
+     * Dùng để dựng trace từ dữ liệu đã có (aggregates, tests)
+     */
+    void recordSpan(String statement, long durationNanos) {
+        recorder().recordSpan(statement, durationNanos);
+    }
+    
+    /**
+     * Cố định total duration tại span cuối cùng mà không giao trace cho sink
+     */
+    void markEnded() {
+        endNanos = recorder().lastNanos();
+        ended = true;
     }
     
     /**
@@ -188,7 +398,19 @@ public class Tracer {
             return;
         }
         
-        span("End");
+        // Scope nào chưa được close (trên thread gọi end) thì kết thúc tại đây
+        SpanRecorder current = recorder();
+        current.closeAll();
+        if (concurrentSpans == null) {
+            current.span("End");
+            endNanos = current.lastNanos();
+        } else {
+            endNanos = System.nanoTime();
+            mergedSpans = concurrentSpans.merge(startNanos, endNanos, current.threadId());
+        }
+        ended = true;
+        
+        notifyObservers();
         
         if (silent) {
             return;
@@ -199,130 +421,225 @@ public class Tracer {
             return;
         }
         
-        // Print output theo style
-        String output = getOutput();
-        System.out.print(output);
+        // Giao trace cho sink - sink quyết định có render text hay không
+        TraceSink target = sink != null ? sink : defaultSink;
+        try {
+            target.accept(this);
+        } catch (RuntimeException e) {
+            // Disk đầy, sink đã close... không được lan ra code đang được trace
+            SINK_FAILURES.incrementAndGet();
+        }
     }
     
     /**
-     * Lấy output theo style hiện tại
+     * Giao trace cho observers. Lỗi của observer không được làm hỏng code đang được trace
      */
-    private String getOutput() {
-        switch (outputStyle) {
-            case COLORFUL:
-                return getColorfulOutput();
-            case MINIMAL:
-                return getMinimalOutput();
-            case DETAILED:
-                return getDetailedOutput();
-            case TABLE:
-                return getTableOutput();
-            case JSON:
-                return getJSONOutput();
-            default:
-                return getDefaultOutput();
+    private void notifyObservers() {
+        if (adaptiveThresholds != null) {
+            try {
+                adaptiveThresholds.accept(this);
+            } catch (RuntimeException e) {
+                // bỏ qua
+            }
         }
+        if (observer != null) {
+            try {
+                observer.accept(this);
+            } catch (RuntimeException e) {
+                // bỏ qua
+            }
+        }
+        TraceSink[] observers = globalObservers;
+        for (int i = 0; i < observers.length; i++) {
+            try {
+                observers[i].accept(this);
+            } catch (RuntimeException e) {
+                // bỏ qua
+            }
+        }
+    }
+    
+    /**
+     * Đăng ký observer cho mọi tracer trong process. Observer chạy trên thread gọi end() nên cần nhanh
+     */
+    public static synchronized void addGlobalObserver(TraceSink observer) {
+        Objects.requireNonNull(observer, "observer");
+        TraceSink[] current = globalObservers;
+        TraceSink[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = observer;
+        globalObservers = updated;
     }
     
     /**
-     * Capture caller information cho debugging
+     * Gỡ observer đã đăng ký. Trả về false nếu observer chưa từng được đăng ký
      */
-    private String captureCallerInfo() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-        // Skip: getStackTrace() -> captureCallerInfo() -> constructor -> newSimpleTracer/builder -> user code
-        if (stackTrace.length > 4) {
-            StackTraceElement caller = stackTrace[4];
-            String fileName = caller.getFileName();
-            int lineNumber = caller.getLineNumber();
-            return String.format("%s:%d", fileName != null ? fileName : "Unknown", lineNumber);
+    public static synchronized boolean removeGlobalObserver(TraceSink observer) {
+        TraceSink[] current = globalObservers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == observer) {
+                TraceSink[] updated = new TraceSink[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                globalObservers = updated;
+                return true;
+            }
         }
-        return "Unknown:0";
+        return false;
     }
     
-    // Getters
-    public String getName() { return name; }
-    public List<Measurement> getMeasurements() { return new ArrayList<>(measurements); }
-    public Duration getTotalDuration() { return Duration.between(totalTime, Instant.now()); }
-    public boolean isEnabled() { return enabled; }
-    public boolean isSilent() { return silent; }
-    public OutputStyle getOutputStyle() { return outputStyle; }
-    public String getCallerInfo() { return callerInfo; }
+    /**
+     * Sink global cho mọi tracer không có sink riêng
+     */
+    public static void setDefaultSink(TraceSink sink) {
+        defaultSink = Objects.requireNonNull(sink, "sink");
+    }
     
-    // Setters for runtime control
-    public void setEnabled(boolean enabled) { this.enabled = enabled; }
-    public void setSilent(boolean silent) { this.silent = silent; }
-    public void setOutputStyle(OutputStyle style) { this.outputStyle = style; }
-    public void setPrintCondition(Predicate<Tracer> condition) { this.printCondition = condition; }
+    public static TraceSink getDefaultSink() {
+        return defaultSink;
+    }
+    
+    /**
+     * Số lần sink của một tracer throw exception tại end() kể từ khi process khởi động
+     */
+    public static long getSinkFailureCount() {
+        return SINK_FAILURES.get();
+    }
+    
+    /**
+     * Render trace thành text theo output style hiện tại
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder(1024);
+        renderTo(sb);
+        return sb.toString();
+    }
+    
+    /**
+     * Render trace nối vào sb - sinks có thể tái sử dụng một builder cho cả batch
+     */
+    public void renderTo(StringBuilder sb) {
+        OutputRenderer.render(this, sb);
+    }
     
-    // Output methods using OutputRenderer
-    private String getDefaultOutput() {
-        return OutputRenderer.renderDefault(this);
+    /**
+     * Frame thuộc về Tracer (constructor, Builder, factory methods) - bỏ qua khi tìm caller
+     */
+    private static boolean isTracerFrame(StackWalker.StackFrame frame) {
+        String className = frame.getClassName();
+        return className.equals(Tracer.class.getName())
+            || className.startsWith(Tracer.class.getName() + "$");
     }
     
-    private String getColorfulOutput() {
-        return OutputRenderer.renderColorful(this);
+    /**
+     * Format caller frame thành "File.java:line" - chỉ chạy khi caller info thực sự được dùng
+     */
+    private static String formatCallerInfo(StackWalker.StackFrame frame) {
+        if (frame == null) {
+            return UNKNOWN_CALLER;
+        }
+        String fileName = frame.getFileName();
+        return (fileName != null ? fileName : "Unknown") + ":" + frame.getLineNumber();
     }
     
-    private String getMinimalOutput() {
-        return OutputRenderer.renderMinimal(this);
+    /**
+     * Tổng thời gian tính bằng nanoseconds. Sau end() giá trị được cố định tại span "End",
+     * nên mọi renderer đọc cùng một total thay vì mỗi lần gọi lại lấy "now" mới.
+     */
+    public long getTotalNanos() {
+        if (!started) {
+            return 0;
+        }
+        return (ended ? endNanos : System.nanoTime()) - startNanos;
     }
     
-    private String getDetailedOutput() {
-        return OutputRenderer.renderDetailed(this);
+    /**
+     * Truy cập trực tiếp columnar storage cho renderers/sinks trong package.
+     * Concurrent tracer trả về timeline đã gộp (trước end() là snapshot gộp tại thời điểm gọi)
+     */
+    SpanBuffer spans() {
+        if (recorder != null) {
+            return recorder.spans();
+        }
+        SpanBuffer merged = mergedSpans;
+        if (merged != null) {
+            return merged;
+        }
+        long now = System.nanoTime();
+        return concurrentSpans.merge(startNanos, now, Thread.currentThread().getId());
     }
     
-    private String getTableOutput() {
-        return OutputRenderer.renderTable(this);
+    /**
+     * Thời điểm bắt đầu trace theo System.nanoTime()
+     */
+    long getStartNanos() {
+        return startNanos;
     }
     
-    private String getJSONOutput() {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectNode root = mapper.createObjectNode();
-            
-            root.put("tracer_name", name);
-            root.put("total_duration", getTotalDuration().toString());
-            root.put("total_ns", getTotalDuration().toNanos());
-            
-            if (!callerInfo.equals("Unknown:0")) {
-                ObjectNode callerNode = mapper.createObjectNode();
-                callerNode.put("file", callerInfo);
-                root.set("caller_info", callerNode);
-            }
-            
-            ArrayNode spansArray = mapper.createArrayNode();
-            Duration totalDur = getTotalDuration();
-            
-            for (Measurement m : measurements.subList(0, measurements.size() - 1)) {
-                ObjectNode span = mapper.createObjectNode();
-                span.put("name", m.getStatement());
-                span.put("duration", m.getDuration().toString());
-                span.put("ns", m.getDuration().toNanos());
-                span.put("percent", (double) m.getDuration().toNanos() / totalDur.toNanos() * 100);
-                
-                // Add color classification
-                String colorClass = getColorClass(m.getDuration());
-                span.put("color_class", colorClass);
-                
-                spansArray.add(span);
-            }
-            
-            root.set("spans", spansArray);
-            
-            return ColorRules.colorizeWithStyle("📄 JSON Output:", ColorRules.MAGENTA, ColorRules.BOLD) + "\n" +
-                   mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root) + "\n";
-                   
-        } catch (Exception e) {
-            return "Error generating JSON output: " + e.getMessage() + "\n";
+    /**
+     * Id của thread đã tạo tracer
+     */
+    long getThreadId() {
+        return threadId;
+    }
+    
+    /**
+     * Thời điểm bắt đầu trace tính bằng epoch nanoseconds (suy ra từ monotonic clock)
+     */
+    public long getStartEpochNanos() {
+        return TraceClock.toEpochNanos(startNanos);
+    }
+    
+    // Getters
+    public String getName() { return name; }
+    /**
+     * Copy mutable của các spans đã ghi - caller có thể sort/remove tùy ý
+     */
+    public List<Measurement> getMeasurements() { return new ArrayList<>(spans().view()); }
+    /**
+     * View read-only trên các spans đã ghi tại thời điểm gọi (không copy dữ liệu)
+     */
+    public List<Measurement> getMeasurementsView() { return spans().view(); }
+    public Duration getTotalDuration() { return Duration.ofNanos(getTotalNanos()); }
+    public boolean isEnabled() { return enabled; }
+    public boolean isSilent() { return silent; }
+    public boolean isConcurrent() { return concurrentSpans != null; }
+    /**
+     * false nếu đây là no-op tracer của một trace không được sample
+     */
+    public boolean isSampled() { return this != NOOP; }
+    public OutputStyle getOutputStyle() { return outputStyle; }
+    public TraceSink getSink() { return sink; }
+    public String getCallerInfo() {
+        String info = callerInfo;
+        if (info == null) {
+            info = formatCallerInfo(callerFrame);
+            callerInfo = info;
         }
+        return info;
     }
     
-    private String getColorClass(Duration duration) {
-        if (duration.compareTo(Duration.ofSeconds(1)) > 0) {
+    // Setters for runtime control - bị bỏ qua trên no-op tracer dùng chung
+    public void setEnabled(boolean enabled) {
+        if (this == NOOP) {
+            return;
+        }
+        this.enabled = enabled;
+        // Tracer tạo ở trạng thái disabled bắt đầu tính giờ từ lần enable đầu tiên
+        if (enabled && !started) {
+            start();
+        }
+    }
+    public void setSilent(boolean silent) { if (this != NOOP) this.silent = silent; }
+    public void setOutputStyle(OutputStyle style) { if (this != NOOP) this.outputStyle = style; }
+    public void setPrintCondition(Predicate<Tracer> condition) { if (this != NOOP) this.printCondition = condition; }
+    public void setSink(TraceSink sink) { if (this != NOOP) this.sink = sink; }
+    
+    static String getColorClass(long nanos) {
+        if (nanos > 1_000_000_000L) {
             return "slow";
-        } else if (duration.compareTo(Duration.ofMillis(100)) > 0) {
+        } else if (nanos > 100_000_000L) {
             return "medium";
-        } else if (duration.compareTo(Duration.ofMillis(10)) > 0) {
+        } else if (nanos > 10_000_000L) {
             return "fast";
         } else {
             return "very_fast";
@@ -340,22 +657,38 @@ public class Tracer {
         // Bước 1: Filter theo slow threshold
         List<Measurement> filtered = measurements;
         if (showSlowOnly) {
-            filtered = measurements.stream()
-                    .filter(m -> m.getDuration().compareTo(slowThreshold) >= 0)
-                    .collect(Collectors.toList());
+            if (adaptiveThresholds != null) {
+                long fallbackNanos = slowThreshold.toNanos();
+                filtered = measurements.stream()
+                        .filter(m -> adaptiveThresholds.isSlow(name, m.getStatement(), m.getDurationNanos(),
+                                fallbackNanos))
+                        .collect(Collectors.toList());
+            } else {
+                filtered = measurements.stream()
+                        .filter(m -> m.getDuration().compareTo(slowThreshold) >= 0)
+                        .collect(Collectors.toList());
+            }
         }
         
         // Bước 2: Filter bỏ ultra fast
         if (hideUltraFast) {
-            filtered = filtered.stream()
-                    .filter(m -> m.getDuration().compareTo(ultraFastThreshold) >= 0)
-                    .collect(Collectors.toList());
+            if (adaptiveThresholds != null) {
+                long fallbackNanos = ultraFastThreshold.toNanos();
+                filtered = filtered.stream()
+                        .filter(m -> !adaptiveThresholds.isUltraFast(name, m.getStatement(), m.getDurationNanos(),
+                                fallbackNanos))
+                        .collect(Collectors.toList());
+            } else {
+                filtered = filtered.stream()
+                        .filter(m -> m.getDuration().compareTo(ultraFastThreshold) >= 0)
+                        .collect(Collectors.toList());
+            }
         }
         
         // Bước 3: Group similar nếu cần
         List<Object> result = new ArrayList<>();
         if (groupSimilar && !filtered.isEmpty()) {
-            List<GroupedMeasurement> groups = groupSimilarMeasurements(filtered);
+            List<GroupedMeasurement> groups = SimilarSpanGrouper.group(filtered, similarThreshold);
             result.addAll(groups);
         } else {
             result.addAll(filtered);
@@ -364,79 +697,6 @@ public class Tracer {
         return result;
     }
     
-    /**
-     * Nhóm các measurements có duration tương tự
-     */
-    private List<GroupedMeasurement> groupSimilarMeasurements(List<Measurement> measurements) {
-        if (measurements.isEmpty()) {
-            return new ArrayList<>();
-        }
-        
-        List<GroupedMeasurement> groups = new ArrayList<>();
-        Set<Integer> processed = new HashSet<>();
-        
-        for (int i = 0; i < measurements.size(); i++) {
-            if (processed.contains(i)) {
-                continue;
-            }
-            
-            Measurement m1 = measurements.get(i);
-            
-            // Tạo nhóm mới
-            String groupName = m1.getStatement();
-            int count = 1;
-            Duration totalTime = m1.getDuration();
-            Duration minTime = m1.getDuration();
-            Duration maxTime = m1.getDuration();
-            
-            processed.add(i);
-            List<String> similarNames = new ArrayList<>();
-            
-            // Tìm các measurements tương tự
-            for (int j = i + 1; j < measurements.size(); j++) {
-                if (processed.contains(j)) {
-                    continue;
-                }
-                
-                Measurement m2 = measurements.get(j);
-                
-                // Kiểm tra nếu duration gần nhau
-                Duration diff = m1.getDuration().compareTo(m2.getDuration()) >= 0 
-                    ? m1.getDuration().minus(m2.getDuration())
-                    : m2.getDuration().minus(m1.getDuration());
-                
-                if (diff.compareTo(similarThreshold) <= 0) {
-                    count++;
-                    totalTime = totalTime.plus(m2.getDuration());
-                    if (m2.getDuration().compareTo(minTime) < 0) {
-                        minTime = m2.getDuration();
-                    }
-                    if (m2.getDuration().compareTo(maxTime) > 0) {
-                        maxTime = m2.getDuration();
-                    }
-                    similarNames.add(m2.getStatement());
-                    processed.add(j);
-                }
-            }
-            
-            // Tính average time
-            Duration avgTime = totalTime.dividedBy(count);
-            
-            // Nếu có nhiều operations tương tự, cập nhật tên group
-            if (!similarNames.isEmpty()) {
-                if (similarNames.size() <= 2) {
-                    groupName = String.format("%s + %d similar", groupName, similarNames.size());
-                } else {
-                    groupName = String.format("%s + %d others", groupName, similarNames.size());
-                }
-            }
-            
-            groups.add(new GroupedMeasurement(groupName, count, totalTime, avgTime, minTime, maxTime));
-        }
-        
-        return groups;
-    }
-    
     // Getters for smart filtering info
     public boolean hasActiveFilters() {
         return showSlowOnly || hideUltraFast || groupSimilar;
@@ -445,14 +705,22 @@ public class Tracer {
     public String getActiveFiltersInfo() {
         List<String> activeFilters = new ArrayList<>();
         if (showSlowOnly) {
-            activeFilters.add("slow>" + slowThreshold);
+            activeFilters.add(adaptiveThresholds != null
+                    ? "slow>p" + formatPercentile(adaptiveThresholds.getSlowPercentile())
+                    : "slow>" + slowThreshold);
         }
         if (hideUltraFast) {
-            activeFilters.add("hide<" + ultraFastThreshold);
+            activeFilters.add(adaptiveThresholds != null
+                    ? "hide<p" + formatPercentile(adaptiveThresholds.getUltraFastPercentile())
+                    : "hide<" + ultraFastThreshold);
         }
         if (groupSimilar) {
             activeFilters.add("group±" + similarThreshold);
         }
         return String.join(", ", activeFilters);
     }
+    
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
 }
@@ -0,0 +1,245 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests cho AdaptiveThresholds và adaptive smart filtering của Tracer
+ */
+public class AdaptiveThresholdsTest {
+
+    private static final long MS = 1_000_000L;
+
+    /**
+     * Trace giả với các span có duration cố định (nanos), kết thúc bằng span "End" như end()
+     */
+    private static Tracer trace(String name, String[] spans, long[] nanos) {
+        Tracer tracer = Tracer.builder(name).silent(true).build();
+        for (int i = 0; i < spans.length; i++) {
+            tracer.recordSpan(spans[i], nanos[i]);
+        }
+        tracer.recordSpan("End", 0);
+        tracer.markEnded();
+        return tracer;
+    }
+
+    @Test
+    void testThresholdsAreLearnedPerSpan() {
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder().minSamples(100).build();
+        String[] names = {"Cache", "Batch"};
+        assertEquals(-1, thresholds.getSlowThresholdNanos("Job", "Cache"));
+
+        // Cache: 1..100µs, Batch: 10..1000ms
+        for (int i = 1; i <= 100; i++) {
+            thresholds.accept(trace("Job", names, new long[] {i * 1_000L, i * 10 * MS}));
+        }
+
+        long cacheSlow = thresholds.getSlowThresholdNanos("Job", "Cache");
+        long batchSlow = thresholds.getSlowThresholdNanos("Job", "Batch");
+        // p95 trong độ chính xác của histogram (sai số tương đối < 12.5%)
+        assertEquals(95_000, cacheSlow, 95_000 * 0.125);
+        assertEquals(950 * MS, batchSlow, 950 * MS * 0.125);
+        assertEquals(10_000, thresholds.getUltraFastThresholdNanos("Job", "Cache"), 10_000 * 0.125);
+
+        // Cùng 50ms: bình thường với Batch, rất chậm với Cache
+        assertTrue(thresholds.isSlow("Job", "Cache", 50 * MS, Long.MAX_VALUE));
+        assertFalse(thresholds.isSlow("Job", "Batch", 50 * MS, 0));
+        assertTrue(thresholds.isUltraFast("Job", "Batch", MS, 0));
+        assertFalse(thresholds.isUltraFast("Job", "Cache", 50 * MS, Long.MAX_VALUE));
+
+        // Span và tracer chưa có lịch sử: dùng fallback
+        assertEquals(-1, thresholds.getSlowThresholdNanos("Job", "Unknown"));
+        assertEquals(-1, thresholds.getSlowThresholdNanos("Other", "Cache"));
+        assertTrue(thresholds.isSlow("Job", "Unknown", 5 * MS, 5 * MS));
+        assertFalse(thresholds.isSlow("Job", "Unknown", 4 * MS, 5 * MS));
+    }
+
+    @Test
+    void testSlowFractionMatchesPercentileOnNarrowDistribution() {
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder().minSamples(100).build();
+        String[] names = {"Query"};
+        // 100-110ms: cả dải nằm trong 2 buckets của histogram
+        Random random = new Random(7);
+        long[] samples = new long[20_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 100 * MS + (long) (random.nextDouble() * 10 * MS);
+            thresholds.accept(trace("Api", names, new long[] {samples[i]}));
+        }
+
+        int slow = 0;
+        int ultraFast = 0;
+        for (long sample : samples) {
+            if (thresholds.isSlow("Api", "Query", sample, 0)) {
+                slow++;
+            }
+            if (thresholds.isUltraFast("Api", "Query", sample, 0)) {
+                ultraFast++;
+            }
+        }
+        assertEquals(0.05, (double) slow / samples.length, 0.01);
+        assertEquals(0.10, (double) ultraFast / samples.length, 0.015);
+    }
+
+    @Test
+    void testMinSamplesAndWindowRotation() {
+        AtomicLong now = new AtomicLong();
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder()
+                .minSamples(10)
+                .window(Duration.ofSeconds(1))
+                .clock(now::get)
+                .build();
+        String[] names = {"Query"};
+
+        for (int i = 0; i < 9; i++) {
+            thresholds.accept(trace("Api", names, new long[] {MS}));
+        }
+        assertEquals(-1, thresholds.getSlowThresholdNanos("Api", "Query"));
+        thresholds.accept(trace("Api", names, new long[] {MS}));
+        long fast = thresholds.getSlowThresholdNanos("Api", "Query");
+        assertTrue(fast > 0 && fast <= MS);
+
+        // Latency tăng lên: sau 2 windows lịch sử cũ bị quên hẳn
+        for (int w = 1; w <= 2; w++) {
+            now.addAndGet(Duration.ofSeconds(1).toNanos());
+            for (int i = 0; i < RollingHistogram.RECOMPUTE_EVERY; i++) {
+                thresholds.accept(trace("Api", names, new long[] {100 * MS}));
+            }
+        }
+        long slow = thresholds.getSlowThresholdNanos("Api", "Query");
+        assertTrue(slow > 80 * MS && slow <= 100 * MS, "threshold: " + slow);
+        assertTrue(thresholds.getUltraFastThresholdNanos("Api", "Query") > 80 * MS);
+    }
+
+    @Test
+    void testIdleGapForgetsHistoryBeforeTheGap() {
+        AtomicLong now = new AtomicLong();
+        long window = Duration.ofSeconds(1).toNanos();
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder()
+                .minSamples(10)
+                .window(Duration.ofSeconds(1))
+                .clock(now::get)
+                .build();
+        String[] names = {"Query"};
+
+        for (int i = 0; i < RollingHistogram.RECOMPUTE_EVERY; i++) {
+            thresholds.accept(trace("Api", names, new long[] {100 * MS}));
+        }
+        assertTrue(thresholds.getSlowThresholdNanos("Api", "Query") > 80 * MS);
+
+        // Idle ba windows: ngưỡng cũ không còn hiệu lực dù chưa có giá trị mới
+        now.addAndGet(3 * window + window / 2);
+        assertEquals(-1, thresholds.getSlowThresholdNanos("Api", "Query"));
+        assertEquals(-1, thresholds.getSlowTraceThresholdNanos("Api"));
+
+        // Giá trị đầu tiên sau khoảng idle không kéo dữ liệu trước đó vào phân phối
+        for (int i = 0; i < 10; i++) {
+            thresholds.accept(trace("Api", names, new long[] {MS}));
+        }
+        long fast = thresholds.getSlowThresholdNanos("Api", "Query");
+        assertTrue(fast > 0 && fast <= MS, "threshold: " + fast);
+
+        // Ranh giới window giữ theo bội số của window (tại 4s), không trôi theo thời điểm có traffic
+        now.addAndGet(window / 2);
+        for (int i = 0; i < 10; i++) {
+            thresholds.accept(trace("Api", names, new long[] {2 * MS}));
+        }
+        now.addAndGet(window);
+        // Tại 5s window 3s-4s (các giá trị 1ms) đã rơi khỏi phân phối, chỉ còn các giá trị 2ms
+        thresholds.accept(trace("Api", names, new long[] {2 * MS}));
+        assertEquals(2 * MS, thresholds.getUltraFastThresholdNanos("Api", "Query"));
+    }
+
+    @Test
+    void testNullNamesDoNotCollideWithTotal() {
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder().minSamples(10).build();
+        // Span tên null rất nhanh, total của trace chậm: hai phân phối phải tách biệt
+        for (int i = 0; i < 10; i++) {
+            thresholds.accept(trace(null, new String[] {null, "Work"}, new long[] {MS, 100 * MS}));
+        }
+        long span = thresholds.getSlowThresholdNanos(null, null);
+        long total = thresholds.getSlowTraceThresholdNanos(null);
+        assertTrue(span > 0 && span <= MS, "span threshold: " + span);
+        assertTrue(total >= 100 * MS, "total threshold: " + total);
+        assertTrue(thresholds.isSlow(null, null, 50 * MS, Long.MAX_VALUE));
+    }
+
+    @Test
+    void testLimitsAndSlowTraceCondition() {
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder().minSamples(1).limits(1, 1).build();
+        thresholds.accept(trace("First", new String[] {"A", "B"}, new long[] {MS, MS}));
+        thresholds.accept(trace("Second", new String[] {"A"}, new long[] {MS}));
+
+        assertTrue(thresholds.getSlowThresholdNanos("First", "A") > 0);
+        assertEquals(-1, thresholds.getSlowThresholdNanos("First", "B"));
+        assertEquals(-1, thresholds.getSlowThresholdNanos("Second", "A"));
+
+        AdaptiveThresholds learned = AdaptiveThresholds.builder().minSamples(20).build();
+        for (int i = 0; i < 20; i++) {
+            learned.accept(trace("Request", new String[] {"Handle"}, new long[] {10 * MS}));
+        }
+        assertTrue(learned.getSlowTraceThresholdNanos("Request") > 0);
+        assertTrue(learned.slowTraceCondition(Duration.ofSeconds(1))
+                .test(trace("Request", new String[] {"Handle"}, new long[] {200 * MS})));
+        assertFalse(learned.slowTraceCondition(Duration.ofSeconds(1))
+                .test(trace("Request", new String[] {"Handle"}, new long[] {2 * MS})));
+        // Tracer name chưa có lịch sử: dùng fallback
+        assertFalse(learned.slowTraceCondition(Duration.ofSeconds(1))
+                .test(trace("New", new String[] {"Handle"}, new long[] {200 * MS})));
+
+        assertEquals(64L * 33 * 2 * LatencyHistogram.APPROX_BYTES,
+                AdaptiveThresholds.builder().build().getMaxFootprintBytes());
+        assertTrue(AdaptiveThresholds.builder().build().getMaxFootprintBytes() < 20L * 1024 * 1024);
+
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveThresholds.builder().slowPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveThresholds.builder().minSamples(0));
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveThresholds.builder().window(Duration.ZERO));
+    }
+
+    @Test
+    void testTracerFiltersAgainstSpanHistory() {
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder().minSamples(50).build();
+        String[] names = {"Cache", "Batch"};
+        for (int i = 1; i <= 100; i++) {
+            thresholds.accept(trace("Job", names, new long[] {i * 1_000L, i * 10 * MS}));
+        }
+
+        Tracer tracer = Tracer.builder("Job")
+                .silent(true)
+                .adaptiveThresholds(thresholds)
+                .showSlowOnly(Duration.ZERO)
+                .build();
+        List<Measurement> measurements = new ArrayList<>();
+        measurements.add(new Measurement("Cache", 50 * MS));
+        measurements.add(new Measurement("Batch", 50 * MS));
+        measurements.add(new Measurement("New", 1_000L));
+
+        List<Object> filtered = tracer.applySmartFiltering(measurements);
+        assertEquals(2, filtered.size());
+        assertEquals("Cache", ((Measurement) filtered.get(0)).getStatement());
+        assertEquals("New", ((Measurement) filtered.get(1)).getStatement());
+        assertEquals("slow>p95", tracer.getActiveFiltersInfo());
+
+        // Tracer học tại end()
+        tracer.recordSpan("Fresh", MS);
+        tracer.end();
+        Tracer hiding = Tracer.builder("Job")
+                .silent(true)
+                .adaptiveThresholds(thresholds)
+                .hideUltraFast(Duration.ofMillis(5))
+                .build();
+        assertEquals("hide<p10", hiding.getActiveFiltersInfo());
+        measurements.clear();
+        measurements.add(new Measurement("Batch", 20 * MS));
+        measurements.add(new Measurement("Batch", 500 * MS));
+        measurements.add(new Measurement("Fresh", 4 * MS));
+        filtered = hiding.applySmartFiltering(measurements);
+        assertEquals(1, filtered.size());
+        assertEquals(500 * MS, ((Measurement) filtered.get(0)).getDurationNanos());
+    }
+}
@@ -0,0 +1,190 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Allocation budget cho hot path: bytes allocate mỗi span(), mỗi lần tạo tracer và mỗi end()/render
+ * theo từng cấu hình. Đo bằng {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * sau warmup; fail khi vượt budget. Budget có headroom so với số đo thực tế để không flaky giữa các JVM.
+ * Các đường "zero" (disabled, unsampled, silent end, render vào buffer tái sử dụng) đo được 0 byte/op với C2,
+ * nhưng vẫn được chừa {@value #ZERO_BUDGET} bytes/op vì C1 ({@code -XX:TieredStopAtLevel=1}), interpreter
+ * hay coverage agents không có escape analysis - allocation theo span vẫn vượt xa mức này.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 10_000;
+    private static final long ZERO_BUDGET = 16;
+
+    // Render 8 spans vào StringBuilder tái sử dụng - JSON tạo generator của Jackson mỗi lần
+    private static final Map<OutputStyle, Long> RENDER_BUDGETS = new EnumMap<>(OutputStyle.class);
+
+    static {
+        RENDER_BUDGETS.put(OutputStyle.DEFAULT, ZERO_BUDGET);
+        RENDER_BUDGETS.put(OutputStyle.COLORFUL, ZERO_BUDGET);
+        RENDER_BUDGETS.put(OutputStyle.MINIMAL, ZERO_BUDGET);
+        RENDER_BUDGETS.put(OutputStyle.DETAILED, ZERO_BUDGET);
+        RENDER_BUDGETS.put(OutputStyle.TABLE, ZERO_BUDGET);
+        RENDER_BUDGETS.put(OutputStyle.JSON, 2048L);
+        RENDER_BUDGETS.put(OutputStyle.NDJSON, 2048L);
+        RENDER_BUDGETS.put(OutputStyle.CHROME_TRACE, 2048L);
+    }
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static long threadId;
+
+    @BeforeAll
+    static void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "JVM không có com.sun.management.ThreadMXBean");
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Thread allocation counter không được hỗ trợ");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        threadId = Thread.currentThread().getId();
+    }
+
+    /**
+     * Bytes allocate trung bình mỗi lần chạy op (đã trừ chi phí của chính phép đo), sau warmup
+     */
+    private static double bytesPerOp(Runnable op) {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long baseline = measure(() -> { });
+        return (double) (measure(op) - baseline) / ITERATIONS;
+    }
+
+    private static long measure(Runnable op) {
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static void assertBudget(String what, double budgetBytes, double measured) {
+        assertTrue(measured <= budgetBytes,
+                String.format("%s: %.1f bytes/op vượt budget %.0f bytes/op", what, measured, budgetBytes));
+    }
+
+    // ===== span() =====
+
+    @Test
+    void testDisabledSpanIsAllocationFree() {
+        Tracer disabled = Tracer.builder("Disabled").enabled(false).build();
+        assertBudget("disabled span()", ZERO_BUDGET, bytesPerOp(() -> disabled.span("operation")));
+        assertBudget("disabled startSpan()", ZERO_BUDGET, bytesPerOp(() -> disabled.startSpan("operation").close()));
+    }
+
+    @Test
+    void testUnsampledAndContextFreeSpanIsAllocationFree() {
+        Tracer unsampled = Tracer.builder("Unsampled").sampleRate(0).build();
+        assertFalse(unsampled.isSampled());
+        assertBudget("unsampled span()", ZERO_BUDGET, bytesPerOp(() -> unsampled.span("operation")));
+        assertBudget("Tracer.current().span() không có context", ZERO_BUDGET,
+                bytesPerOp(() -> Tracer.current().span("operation")));
+    }
+
+    @Test
+    void testSilentSpanAmortizedBudget() {
+        // Buffer tăng gấp đôi: mỗi span tốn trung bình ~2 slot (tên 4-8 bytes, start 8, duration 8)
+        Tracer[] holder = {newSilentTracer()};
+        int[] count = {0};
+        double measured = bytesPerOp(() -> {
+            if (++count[0] == 4096) {
+                count[0] = 0;
+                holder[0] = newSilentTracer();
+            }
+            holder[0].span("operation");
+        });
+        assertBudget("silent span()", 64, measured);
+    }
+
+    @Test
+    void testConcurrentTracerSpanAmortizedBudget() {
+        Tracer[] holder = {Tracer.builder("Concurrent").silent(true).captureCaller(false).concurrent(true).build()};
+        int[] count = {0};
+        double measured = bytesPerOp(() -> {
+            if (++count[0] == 4096) {
+                count[0] = 0;
+                holder[0] = Tracer.builder("Concurrent").silent(true).captureCaller(false).concurrent(true).build();
+            }
+            holder[0].span("operation");
+        });
+        assertBudget("concurrent span()", 64, measured);
+    }
+
+    // ===== Tạo tracer =====
+
+    @Test
+    void testConstructionBudgets() {
+        assertBudget("build() không caller capture", 512,
+                bytesPerOp(() -> Tracer.builder("Build").silent(true).captureCaller(false).build()));
+        assertBudget("build() có caller capture", 4096,
+                bytesPerOp(() -> Tracer.builder("Build").silent(true).build()));
+        assertBudget("build() disabled", 512,
+                bytesPerOp(() -> Tracer.builder("Build").enabled(false).captureCaller(false).build()));
+        // Tracer disabled vẫn giữ nơi tạo làm caller
+        assertBudget("build() disabled có caller capture", 4096,
+                bytesPerOp(() -> Tracer.builder("Build").enabled(false).build()));
+        assertBudget("build() unsampled", 128,
+                bytesPerOp(() -> Tracer.builder("Build").sampleRate(0).build()));
+    }
+
+    // ===== end() =====
+
+    @Test
+    void testSilentEndIsAllocationFree() {
+        Tracer[] tracers = new Tracer[WARMUP + 2 * ITERATIONS];
+        for (int i = 0; i < tracers.length; i++) {
+            tracers[i] = newSilentTracer();
+            for (int s = 0; s < 8; s++) {
+                tracers[i].span("operation");
+            }
+        }
+        int[] next = {0};
+        assertBudget("silent end()", ZERO_BUDGET, bytesPerOp(() -> tracers[next[0]++].end()));
+    }
+
+    @Test
+    void testAdaptiveThresholdsAcceptAmortizedBudget() {
+        // accept() chạy trong end(): chỉ mảng ngưỡng mới mỗi RECOMPUTE_EVERY giá trị, không histogram gộp
+        AdaptiveThresholds thresholds = AdaptiveThresholds.builder().minSamples(1).build();
+        Tracer tracer = newSilentTracer();
+        for (int s = 0; s < 8; s++) {
+            tracer.span("Operation " + s);
+        }
+        tracer.end();
+        assertBudget("AdaptiveThresholds.accept() 8 spans", 16, bytesPerOp(() -> thresholds.accept(tracer)));
+    }
+
+    @Test
+    void testRenderBudgets() {
+        StringBuilder sb = new StringBuilder(16384);
+        for (OutputStyle style : OutputStyle.values()) {
+            Tracer tracer = Tracer.builder("Render").silent(true).captureCaller(false).outputStyle(style).build();
+            for (int s = 0; s < 8; s++) {
+                tracer.span("Operation " + s);
+            }
+            tracer.end();
+            Long budget = RENDER_BUDGETS.get(style);
+            assertNotNull(budget, "Thiếu allocation budget cho style " + style);
+            double measured = bytesPerOp(() -> {
+                sb.setLength(0);
+                tracer.renderTo(sb);
+            });
+            assertBudget("renderTo() " + style, budget, measured);
+        }
+    }
+
+    private static Tracer newSilentTracer() {
+        return Tracer.builder("Silent").silent(true).captureCaller(false).build();
+    }
+}
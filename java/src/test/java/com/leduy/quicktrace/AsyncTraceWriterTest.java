@@ -0,0 +1,162 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests cho AsyncTraceWriter
+ */
+public class AsyncTraceWriterTest {
+
+    private static Tracer newTracer(String name, AsyncTraceWriter writer) {
+        return Tracer.builder(name)
+                .outputStyle(OutputStyle.MINIMAL)
+                .minTotalDuration(Duration.ZERO)
+                .sink(writer)
+                .build();
+    }
+
+    @Test
+    void testTracesAreWrittenInBackground() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (AsyncTraceWriter writer = AsyncTraceWriter.builder()
+                .output(new PrintStream(bytes, true, StandardCharsets.UTF_8))
+                .batchSize(4)
+                .build()) {
+            for (int i = 0; i < 10; i++) {
+                Tracer tracer = newTracer("Async " + i, writer);
+                tracer.span("Work " + i);
+                tracer.end();
+            }
+            writer.flush();
+
+            assertEquals(10, writer.getSubmittedCount());
+            assertEquals(10, writer.getWrittenCount());
+            assertEquals(0, writer.getDroppedCount());
+        }
+
+        String output = bytes.toString(StandardCharsets.UTF_8);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(output.contains("Async " + i));
+        }
+    }
+
+    @Test
+    void testDropPolicyCountsDroppedTraces() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        try (AsyncTraceWriter writer = AsyncTraceWriter.builder()
+                .output(new PrintStream(blocking))
+                .capacity(2)
+                .batchSize(1)
+                .overflowPolicy(AsyncTraceWriter.OverflowPolicy.DROP)
+                .build()) {
+            // Trace đầu tiên làm writer thread kẹt trong write()
+            newTracer("Blocker", writer).end();
+            writing.await();
+
+            for (int i = 0; i < 5; i++) {
+                newTracer("Queued " + i, writer).end();
+            }
+
+            assertEquals(2, writer.getQueueSize());
+            assertEquals(3, writer.getDroppedCount());
+            assertEquals(3, writer.getSubmittedCount());
+
+            release.countDown();
+            writer.flush();
+            assertEquals(3, writer.getWrittenCount());
+        }
+    }
+
+    @Test
+    void testCloseWritesQueueWithoutInterruptingDelegate() {
+        List<Boolean> interrupted = new CopyOnWriteArrayList<>();
+        TraceSink slow = trace -> {
+            try {
+                // Giống ghi qua interruptible channel: interrupt làm batch lỗi
+                Thread.sleep(20);
+                interrupted.add(false);
+            } catch (InterruptedException e) {
+                interrupted.add(true);
+                throw new IllegalStateException(e);
+            }
+        };
+        AsyncTraceWriter writer = AsyncTraceWriter.builder().delegate(slow).batchSize(1).build();
+        for (int i = 0; i < 5; i++) {
+            newTracer("Pending " + i, writer).end();
+        }
+        writer.close();
+
+        assertEquals(5, writer.getWrittenCount());
+        assertEquals(0, writer.getFailedCount());
+        assertFalse(interrupted.contains(true));
+    }
+
+    @Test
+    void testCloseIsBoundedWhenDelegateHangs() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        TraceSink stuck = trace -> {
+            writing.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        };
+        AsyncTraceWriter writer = AsyncTraceWriter.builder()
+                .delegate(stuck)
+                .batchSize(1)
+                .closeTimeout(Duration.ofMillis(200))
+                .build();
+        newTracer("Stuck", writer).end();
+        writing.await();
+        newTracer("Pending", writer).end();
+
+        // Hai close() đồng thời: chỉ một lời gọi thực hiện shutdown, không lời gọi nào block vô hạn
+        Thread other = new Thread(writer::close);
+        other.start();
+        writer.close();
+        other.join(5_000);
+
+        assertFalse(other.isAlive());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, writer.getFailedCount());
+        assertEquals(0, writer.getQueueSize());
+    }
+
+    @Test
+    void testSubmitAfterCloseIsDropped() {
+        AsyncTraceWriter writer = AsyncTraceWriter.builder()
+                .output(new PrintStream(new ByteArrayOutputStream()))
+                .build();
+        writer.close();
+
+        newTracer("Late", writer).end();
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(0, writer.getSubmittedCount());
+    }
+}
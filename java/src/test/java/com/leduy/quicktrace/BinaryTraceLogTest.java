@@ -0,0 +1,196 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests cho BinaryTraceLogSink và BinaryTraceLogReader
+ */
+public class BinaryTraceLogTest {
+
+    private static Tracer record(String name, TraceSink sink, int spans) {
+        Tracer tracer = Tracer.builder(name)
+                .minTotalDuration(Duration.ZERO)
+                .captureCaller(false)
+                .sink(sink)
+                .build();
+        for (int i = 0; i < spans; i++) {
+            tracer.span("Step " + (i % 3));
+        }
+        tracer.end();
+        return tracer;
+    }
+
+    @Test
+    void testRoundTripAcrossChunks(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("traces.qtb");
+        List<Tracer> written = new ArrayList<>();
+        try (BinaryTraceLogSink sink = new BinaryTraceLogSink(file, 1024)) {
+            for (int i = 0; i < 200; i++) {
+                written.add(record("Importer " + (i % 2), sink, 1 + i % 5));
+            }
+            assertEquals(200, sink.getTraceCount());
+            // 2 tracer names + "Step 0..2" + "End"
+            assertEquals(6, sink.getNameCount());
+        }
+
+        try (BinaryTraceLogReader reader = BinaryTraceLogReader.open(file)) {
+            int index = 0;
+            BinaryTraceLogReader.Record record;
+            while ((record = reader.next()) != null) {
+                Tracer expected = written.get(index++);
+                assertEquals(expected.getName(), record.getTracerName());
+                assertEquals(expected.getStartEpochNanos(), record.getStartEpochNanos());
+                assertEquals(expected.getTotalNanos(), record.getTotalNanos());
+
+                List<Measurement> measurements = expected.getMeasurements();
+                assertEquals(measurements.size(), record.getSpanCount());
+                int span = 0;
+                while (record.nextSpan()) {
+                    assertEquals(measurements.get(span).getStatement(), record.getSpanName());
+                    assertEquals(measurements.get(span).getDurationNanos(), record.getSpanDurationNanos());
+                    span++;
+                }
+                assertEquals(record.getSpanCount(), span);
+            }
+            assertEquals(200, index);
+        }
+    }
+
+    @Test
+    void testRoundTripNestedAndConcurrentSpans(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("traces.qtb");
+        List<Tracer> written = new ArrayList<>();
+        try (BinaryTraceLogSink sink = new BinaryTraceLogSink(file)) {
+            Tracer nested = Tracer.builder("Nested").minTotalDuration(Duration.ZERO).sink(sink).build();
+            try (SpanScope load = nested.startSpan("Load")) {
+                nested.span("Query");
+                try (SpanScope parse = nested.startSpan("Parse")) {
+                    nested.span("Decode");
+                }
+            }
+            nested.end();
+            written.add(nested);
+
+            Tracer concurrent = Tracer.builder("Fan-out").concurrent(true).minTotalDuration(Duration.ZERO)
+                    .sink(sink).build();
+            Thread[] workers = new Thread[3];
+            for (int t = 0; t < workers.length; t++) {
+                workers[t] = new Thread(() -> {
+                    try (SpanScope scope = concurrent.startSpan("Work")) {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            concurrent.end();
+            written.add(concurrent);
+        }
+
+        try (BinaryTraceLogReader reader = BinaryTraceLogReader.open(file)) {
+            assertEquals(BinaryTraceFormat.VERSION, reader.getVersion());
+            for (Tracer expected : written) {
+                BinaryTraceLogReader.Record record = reader.next();
+                assertNotNull(record);
+                assertEquals(expected.getName(), record.getTracerName());
+                assertEquals(expected.getTotalNanos(), record.getTotalNanos());
+                assertEquals(expected.getThreadId(), record.getThreadId());
+
+                SpanBuffer spans = expected.spans();
+                int span = 0;
+                while (record.nextSpan()) {
+                    assertEquals(spans.name(span), record.getSpanName());
+                    assertEquals(spans.durationNanos(span), record.getSpanDurationNanos());
+                    assertEquals(spans.startNanos(span) - expected.getStartNanos(), record.getSpanStartOffsetNanos());
+                    assertEquals(spans.parent(span), record.getSpanParent());
+                    assertEquals(spans.hasThreads() ? spans.threadId(span) : expected.getThreadId(),
+                            record.getSpanThreadId());
+                    span++;
+                }
+                assertEquals(spans.size(), span);
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void testReopenAppendsAndReusesDictionary(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("traces.qtb");
+        try (BinaryTraceLogSink sink = new BinaryTraceLogSink(file)) {
+            record("First run", sink, 2);
+        }
+        try (BinaryTraceLogSink sink = new BinaryTraceLogSink(file)) {
+            assertEquals(1, sink.getTraceCount());
+            int names = sink.getNameCount();
+            record("First run", sink, 2);
+            assertEquals(names, sink.getNameCount());
+            record("Second run", sink, 1);
+        }
+
+        List<String> names = new ArrayList<>();
+        try (BinaryTraceLogReader reader = BinaryTraceLogReader.open(file)) {
+            BinaryTraceLogReader.Record record;
+            while ((record = reader.next()) != null) {
+                names.add(record.getTracerName());
+            }
+        }
+        assertEquals(List.of("First run", "First run", "Second run"), names);
+    }
+
+    @Test
+    void testNullNamesRoundTrip(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("traces.qtb");
+        for (int run = 0; run < 2; run++) {
+            try (BinaryTraceLogSink sink = new BinaryTraceLogSink(file, 1024)) {
+                Tracer tracer = Tracer.builder(null).minTotalDuration(Duration.ZERO).sink(sink).build();
+                tracer.span(null);
+                tracer.span("");
+                tracer.end();
+                // Mở lại file: null và "" vẫn là hai tên riêng trong dictionary
+                assertEquals(3, sink.getNameCount());
+                assertEquals(run + 1, sink.getTraceCount());
+            }
+        }
+
+        try (BinaryTraceLogReader reader = BinaryTraceLogReader.open(file)) {
+            for (int run = 0; run < 2; run++) {
+                BinaryTraceLogReader.Record record = reader.next();
+                assertNull(record.getTracerName());
+                assertTrue(record.nextSpan());
+                assertNull(record.getSpanName());
+                assertTrue(record.nextSpan());
+                assertEquals("", record.getSpanName());
+                assertTrue(record.nextSpan());
+                assertEquals("End", record.getSpanName());
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void testVarintRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Long.MAX_VALUE};
+        for (long value : values) {
+            BinaryTraceFormat.putVarint(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, BinaryTraceFormat.getVarint(buffer));
+        }
+    }
+}
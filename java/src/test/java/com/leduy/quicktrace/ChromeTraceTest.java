@@ -0,0 +1,127 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit tests cho ChromeTraceEncoder, OutputStyle.CHROME_TRACE và ChromeTraceSink
+ */
+public class ChromeTraceTest {
+
+    // BigDecimal để kiểm tra ts epoch giữ đủ phần nanoseconds
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testOutputStyleWritesCompleteEvents() throws Exception {
+        Tracer tracer = Tracer.builder("Checkout").silent(true).outputStyle(OutputStyle.CHROME_TRACE).build();
+        try (SpanScope scope = tracer.startSpan("Payment")) {
+            tracer.span("Authorize");
+        }
+        tracer.span("Notify");
+        tracer.end();
+
+        String output = tracer.render();
+        assertEquals(1, output.trim().split("\n").length, "một dòng mỗi trace");
+        JsonNode root = MAPPER.readTree(output);
+        assertEquals("ns", root.get("displayTimeUnit").asText());
+        JsonNode events = root.get("traceEvents");
+        assertEquals(4, events.size());
+
+        JsonNode trace = events.get(0);
+        assertEquals("Checkout", trace.get("name").asText());
+        assertEquals("trace", trace.get("cat").asText());
+        assertEquals(0, BigDecimal.valueOf(tracer.getStartEpochNanos(), 3).compareTo(trace.get("ts").decimalValue()));
+        assertEquals(tracer.getTotalNanos() / 1000.0, trace.get("dur").asDouble(), 0.0005);
+
+        SpanBuffer spans = tracer.spans();
+        long tid = Thread.currentThread().getId();
+        for (int i = 0; i < 3; i++) {
+            JsonNode event = events.get(i + 1);
+            assertEquals("X", event.get("ph").asText());
+            assertEquals(spans.name(i), event.get("name").asText());
+            assertEquals(tid, event.get("tid").asLong());
+            assertEquals(spans.durationNanos(i) / 1000.0, event.get("dur").asDouble(), 0.0005);
+            assertEquals(spans.selfNanos(i), event.get("args").get("self_ns").asLong());
+            assertTrue(event.get("ts").asDouble() >= trace.get("ts").asDouble());
+        }
+        // Con nằm trong khoảng thời gian của cha
+        JsonNode payment = events.get(1);
+        JsonNode authorize = events.get(2);
+        assertTrue(authorize.get("ts").asDouble() >= payment.get("ts").asDouble());
+        assertTrue(authorize.get("ts").asDouble() + authorize.get("dur").asDouble()
+                <= payment.get("ts").asDouble() + payment.get("dur").asDouble() + 0.001);
+    }
+
+    @Test
+    void testConcurrentTracerUsesThreadTimelines() throws Exception {
+        Tracer tracer = Tracer.builder("Fan-out").concurrent(true).silent(true).build();
+        tracer.span("Main");
+        Thread[] workers = new Thread[3];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread(() -> tracer.span("Work"));
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        tracer.end();
+
+        StringBuilder sb = new StringBuilder();
+        ChromeTraceEncoder.appendTo(tracer, sb);
+        Set<Long> tids = new HashSet<>();
+        for (JsonNode event : MAPPER.readTree(sb.toString()).get("traceEvents")) {
+            if (event.get("name").asText().equals("Work")) {
+                tids.add(event.get("tid").asLong());
+            }
+        }
+        Set<Long> expected = new HashSet<>();
+        for (Thread worker : workers) {
+            expected.add(worker.getId());
+        }
+        assertEquals(expected, tids);
+    }
+
+    @Test
+    void testSinkStreamsManyTracesIntoOneFile() throws Exception {
+        Path file = tempDir.resolve("traces/app.json");
+        ChromeTraceSink sink = new ChromeTraceSink(file);
+        for (int i = 0; i < 3; i++) {
+            Tracer tracer = Tracer.builder("Request " + i).sink(sink).minTotalDuration(Duration.ZERO).build();
+            tracer.span("Handle");
+            tracer.end();
+        }
+
+        // Trước close(): events đã được flush, mảng chưa có "]"
+        String partial = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(partial.startsWith("[\n"));
+        assertTrue(partial.contains("\"Request 2\""));
+        assertFalse(partial.trim().endsWith("]"));
+
+        sink.close();
+        sink.close();
+        JsonNode events = MAPPER.readTree(file.toFile());
+        assertTrue(events.isArray());
+        assertEquals(1 + 3 * 2, events.size());
+        assertEquals("M", events.get(0).get("ph").asText());
+        assertEquals("Request 0", events.get(1).get("name").asText());
+        assertEquals("Handle", events.get(2).get("name").asText());
+        assertEquals("Request 0", events.get(2).get("cat").asText());
+    }
+}
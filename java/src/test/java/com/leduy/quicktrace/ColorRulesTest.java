@@ -4,6 +4,9 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Unit tests cho ColorRules class
@@ -125,4 +128,50 @@ public class ColorRulesTest {
         assertEquals("Very Fast", ColorRules.getDurationColorName(Duration.ofMillis(10))); // Exactly 10ms
         assertEquals("Ultra Fast", ColorRules.getDurationColorName(Duration.ofMillis(0))); // Zero duration
     }
+    
+    @Test
+    void testCompiledTableMatchesLinearScan() {
+        // Rules không sắp xếp + threshold trùng: compiled table phải giống "rule đầu tiên match"
+        List<ColorRules.ColorRule> rules = Arrays.asList(
+                new ColorRules.ColorRule(Duration.ofMillis(20), ColorRules.RED, "A"),
+                new ColorRules.ColorRule(Duration.ofMillis(100), ColorRules.GREEN, "B"),
+                new ColorRules.ColorRule(Duration.ofMillis(5), ColorRules.BLUE, "C"),
+                new ColorRules.ColorRule(Duration.ofMillis(20), ColorRules.CYAN, "D"),
+                new ColorRules.ColorRule(Duration.ofMillis(1), ColorRules.YELLOW, "E"));
+        ColorRules.DurationRuleTable table = ColorRules.DurationRuleTable.compile(rules);
+        
+        for (long millis = 0; millis <= 150; millis++) {
+            long nanos = Duration.ofMillis(millis).toNanos();
+            String expected = "Unknown";
+            for (ColorRules.ColorRule rule : rules) {
+                if (nanos >= rule.getThreshold().toNanos()) {
+                    expected = rule.getName();
+                    break;
+                }
+            }
+            assertEquals(expected, table.name(nanos), "millis=" + millis);
+        }
+        assertEquals(ColorRules.WHITE, ColorRules.DurationRuleTable.compile(Collections.emptyList()).color(0));
+    }
+    
+    @Test
+    void testCustomRulesReplaceDefaults() {
+        try {
+            ColorRules.setDurationColorRules(Arrays.asList(
+                    new ColorRules.ColorRule(Duration.ofMillis(1), ColorRules.MAGENTA, "Slow"),
+                    new ColorRules.ColorRule(Duration.ZERO, ColorRules.WHITE, "Fast")));
+            ColorRules.setProgressColorRules(Collections.singletonList(
+                    new ColorRules.PercentageColorRule(50, ColorRules.RED, "Half")));
+            
+            assertEquals(ColorRules.MAGENTA, ColorRules.getSpanColor(Duration.ofMillis(2)));
+            assertEquals("Fast", ColorRules.getDurationColorName(Duration.ofNanos(999_999)));
+            assertEquals("Half", ColorRules.getProgressColorName(75.0));
+            assertEquals("Unknown", ColorRules.getProgressColorName(10.0));
+            assertEquals("Unknown", ColorRules.getProgressColorName(Double.NaN));
+        } finally {
+            ColorRules.resetColorRules();
+        }
+        assertEquals("Ultra Fast", ColorRules.getDurationColorName(Duration.ofMillis(2)));
+        assertEquals("Very Slow", ColorRules.getDurationColorName(Duration.ofSeconds(Long.MAX_VALUE)));
+    }
 }
@@ -0,0 +1,174 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Unit tests cho concurrent Tracer (Builder.concurrent)
+ */
+public class ConcurrentTracerTest {
+
+    @Test
+    void testSpansFromManyThreadsMergeIntoOneTimeline() throws Exception {
+        int threads = 8;
+        int spansPerThread = 500;
+        Tracer tracer = Tracer.builder("Fan-out").concurrent(true).silent(true).build();
+        tracer.span("Prepare");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    for (int i = 0; i < spansPerThread; i++) {
+                        try (SpanScope scope = tracer.startSpan("Call")) {
+                            tracer.span("Decode");
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        tracer.end();
+
+        SpanBuffer spans = tracer.spans();
+        assertEquals(1 + threads * spansPerThread * 2 + 1, spans.size());
+        assertEquals("End", spans.name(spans.size() - 1));
+        assertTrue(spans.hasThreads());
+        assertTrue(spans.hasHierarchy());
+
+        Set<Long> threadIds = new HashSet<>();
+        for (int i = 0; i < spans.size() - 1; i++) {
+            threadIds.add(spans.threadId(i));
+            if (i > 0) {
+                assertTrue(spans.startNanos(i - 1) <= spans.startNanos(i), "timeline sorted by start");
+            }
+            if (spans.name(i).equals("Decode")) {
+                // Con nằm trên cùng thread với cha
+                int parent = spans.parent(i);
+                assertEquals("Call", spans.name(parent));
+                assertEquals(spans.threadId(parent), spans.threadId(i));
+            }
+        }
+        assertEquals(threads + 1, threadIds.size());
+    }
+
+    @Test
+    void testSingleThreadRendersLikeRegularTracer() {
+        Tracer tracer = Tracer.builder("Single").concurrent(true).silent(true).build();
+        tracer.span("A");
+        tracer.span("B");
+        tracer.end();
+
+        SpanBuffer spans = tracer.spans();
+        assertFalse(spans.hasThreads());
+        assertEquals(3, spans.size());
+        assertEquals(tracer.getTotalNanos(),
+                spans.durationNanos(0) + spans.durationNanos(1) + spans.durationNanos(2));
+        assertFalse(OutputRenderer.renderTable(tracer).contains("[T"));
+    }
+
+    @Test
+    void testThreadIdsInRenderAndJson() throws Exception {
+        Tracer tracer = Tracer.builder("Two threads").concurrent(true).silent(true).build();
+        tracer.span("Main");
+        Thread worker = new Thread(() -> {
+            try (SpanScope scope = tracer.startSpan("Worker")) {
+                tracer.span("Inner");
+            }
+        });
+        worker.start();
+        worker.join();
+        tracer.end();
+
+        assertTrue(OutputRenderer.renderDetailed(tracer).contains("[T" + worker.getId() + "] Worker"));
+
+        StringBuilder sb = new StringBuilder();
+        JsonTraceEncoder.appendTo(tracer, sb, false);
+        JsonNode spans = new ObjectMapper().readTree(sb.toString()).get("spans");
+        assertEquals(3, spans.size());
+        boolean foundWorker = false;
+        for (JsonNode span : spans) {
+            assertTrue(span.get("start_ns").asLong() >= 0);
+            if (span.get("name").asText().equals("Worker")) {
+                assertEquals(worker.getId(), span.get("thread_id").asLong());
+                foundWorker = true;
+            }
+        }
+        assertTrue(foundWorker);
+    }
+
+    @Test
+    void testScopeStillOpenOnWorkerIsClampedToEnd() throws Exception {
+        Tracer tracer = Tracer.builder("Open worker").concurrent(true).silent(true).build();
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread worker = new Thread(() -> {
+            try (SpanScope scope = tracer.startSpan("Slow call")) {
+                opened.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        worker.start();
+        opened.await();
+        Thread.sleep(20);
+        tracer.end();
+        release.countDown();
+        worker.join();
+
+        // Scope chưa đóng khi end() chạy được tính tới lúc end thay vì duration 0
+        SpanBuffer spans = tracer.spans();
+        int slow = -1;
+        for (int i = 0; i < spans.size(); i++) {
+            if ("Slow call".equals(spans.name(i))) {
+                slow = i;
+            }
+        }
+        assertTrue(slow >= 0);
+        assertTrue(spans.durationNanos(slow) >= 20_000_000L, "duration=" + spans.durationNanos(slow));
+        assertEquals(tracer.getStartNanos() + tracer.getTotalNanos(),
+                spans.startNanos(slow) + spans.durationNanos(slow));
+    }
+
+    @Test
+    void testTracerDoesNotRetainWorkerThreads() throws Exception {
+        Tracer tracer = Tracer.builder("Long lived").concurrent(true).silent(true).build();
+        Thread worker = new Thread(() -> tracer.span("Work"));
+        worker.start();
+        worker.join();
+        WeakReference<Thread> ref = new WeakReference<>(worker);
+        worker = null;
+
+        // Recorders được key theo thread id - thread đã kết thúc không bị tracer giữ lại
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        tracer.end();
+        assertEquals(2, tracer.spans().size());
+    }
+}
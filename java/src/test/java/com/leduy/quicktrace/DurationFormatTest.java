@@ -0,0 +1,90 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Unit tests cho DurationFormat - output phải giống hệt Duration.toString() và String.format
+ */
+public class DurationFormatTest {
+
+    private static String iso(long nanos) {
+        StringBuilder sb = new StringBuilder();
+        DurationFormat.appendIso(sb, nanos);
+        return sb.toString();
+    }
+
+    private static String oneDecimal(double value) {
+        StringBuilder sb = new StringBuilder();
+        DurationFormat.appendOneDecimal(sb, value);
+        return sb.toString();
+    }
+
+    @Test
+    void testIsoMatchesDurationToString() {
+        long[] samples = {0, 1, 999, 1_000, 1_500_000, 999_999_999, 1_000_000_000L, 1_000_000_001L,
+                59_999_999_999L, 60_000_000_000L, 61_250_000_000L, 3_600_000_000_000L, 3_661_000_000_007L,
+                -1, -1_500_000_000L, Long.MAX_VALUE};
+        for (long nanos : samples) {
+            assertEquals(Duration.ofNanos(nanos).toString(), iso(nanos), "nanos=" + nanos);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long nanos = random.nextLong() >>> random.nextInt(64);
+            assertEquals(Duration.ofNanos(nanos).toString(), iso(nanos), "nanos=" + nanos);
+        }
+    }
+
+    @Test
+    void testOneDecimalMatchesStringFormat() {
+        Locale previous = Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            for (Locale locale : new Locale[]{Locale.US, new Locale("vi", "VN")}) {
+                Locale.setDefault(Locale.Category.FORMAT, locale);
+                double[] samples = {0, 0.04, 0.05, 0.15, 0.25, 1.45, 12.35, 33.333, 99.95, 100, 250.5};
+                for (double value : samples) {
+                    assertEquals(String.format("%.1f", value), oneDecimal(value), "value=" + value);
+                }
+
+                Random random = new Random(7);
+                for (int i = 0; i < 10_000; i++) {
+                    double value = (double) random.nextInt(1_000_000_000) / 1_000_000_000 * 100;
+                    assertEquals(String.format("%.1f", value), oneDecimal(value), "value=" + value);
+                }
+            }
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, previous);
+        }
+    }
+
+    @Test
+    void testOneDecimalRoundingBoundaries() {
+        Locale previous = Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+            double[] samples = {0.0499999999, 0.04999999999999, 0.0500000001, 0.149999999999, 0.95, 0.9499999999,
+                    2.675, 1.0049999999, 99.94999999999, 99.95000000001, 123456789.45, 1e15 + 0.5, 1e17, 9.2e18};
+            for (double value : samples) {
+                assertEquals(String.format("%.1f", value), oneDecimal(value), "value=" + value);
+                assertEquals(String.format("%.1f", -value), oneDecimal(-value), "value=" + -value);
+            }
+
+            // Giá trị ngay sát hai bên biên x.x5
+            Random random = new Random(11);
+            for (int i = 0; i < 10_000; i++) {
+                double boundary = random.nextInt(1_000_000) / 10.0 + 0.05;
+                for (double value : new double[]{boundary, Math.nextDown(boundary), Math.nextUp(boundary),
+                        boundary - 1e-10, boundary + 1e-10}) {
+                    assertEquals(String.format("%.1f", value), oneDecimal(value), "value=" + value);
+                }
+            }
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, previous);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests cho JfrTraceObserver: ghi recording thật và đọc lại events
+ */
+public class JfrTraceObserverTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<RecordedEvent> record(boolean spans, Runnable traces) throws Exception {
+        Path file = tempDir.resolve("trace.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(JfrTraceObserver.TRACE_EVENT);
+            if (spans) {
+                recording.enable(JfrTraceObserver.SPAN_EVENT);
+            } else {
+                recording.disable(JfrTraceObserver.SPAN_EVENT);
+            }
+            recording.start();
+            traces.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().startsWith("com.leduy.quicktrace.")) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @Test
+    void testTraceAndSpanEvents() throws Exception {
+        JfrTraceObserver observer = new JfrTraceObserver();
+        Tracer[] holder = new Tracer[1];
+        List<RecordedEvent> events = record(true, () -> {
+            Tracer tracer = Tracer.builder("Checkout").silent(true).observer(observer).build();
+            try (SpanScope scope = tracer.startSpan("Payment")) {
+                tracer.span("Authorize");
+            }
+            tracer.span("Notify");
+            tracer.end();
+            holder[0] = tracer;
+        });
+
+        List<RecordedEvent> spans = new ArrayList<>();
+        RecordedEvent trace = null;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(JfrTraceObserver.SPAN_EVENT)) {
+                spans.add(event);
+            } else {
+                trace = event;
+            }
+        }
+        assertNotNull(trace);
+        assertEquals("Checkout", trace.getString("tracer"));
+        assertEquals(3, trace.getInt("spanCount"));
+        assertEquals(holder[0].getTotalNanos(), trace.getDuration("total").toNanos());
+
+        assertEquals(3, spans.size());
+        SpanBuffer buffer = holder[0].spans();
+        for (int i = 0; i < spans.size(); i++) {
+            RecordedEvent span = spans.get(i);
+            assertEquals(trace.getLong("traceId"), span.getLong("traceId"));
+            assertEquals("Checkout", span.getString("tracer"));
+            assertEquals(buffer.name(i), span.getString("name"));
+            assertEquals(buffer.durationNanos(i), span.getDuration("spanDuration").toNanos());
+            assertEquals(buffer.selfNanos(i), span.getDuration("selfTime").toNanos());
+            assertEquals(Thread.currentThread().getId(), span.getLong("spanThreadId"));
+        }
+        assertEquals("Authorize", spans.get(1).getString("name"));
+        assertEquals(1, spans.get(1).getInt("depth"));
+    }
+
+    @Test
+    void testSpanThreadIsTracerThreadWhenEndedElsewhere() throws Exception {
+        JfrTraceObserver observer = new JfrTraceObserver();
+        Tracer tracer = Tracer.builder("Handoff").silent(true).observer(observer).build();
+        tracer.span("Load");
+        List<RecordedEvent> events = record(true, () -> {
+            Thread ender = new Thread(tracer::end);
+            ender.start();
+            try {
+                ender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        RecordedEvent span = events.stream()
+                .filter(event -> event.getEventType().getName().equals(JfrTraceObserver.SPAN_EVENT))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("Load", span.getString("name"));
+        assertEquals(Thread.currentThread().getId(), span.getLong("spanThreadId"));
+    }
+
+    @Test
+    void testDisabledSpanEventsAndThreshold() throws Exception {
+        JfrTraceObserver observer = new JfrTraceObserver(Duration.ofMillis(20));
+        Runnable traces = () -> {
+            Tracer tracer = Tracer.builder("Batch").silent(true).observer(observer).build();
+            tracer.span("Fast");
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            tracer.span("Slow");
+            tracer.end();
+        };
+
+        List<RecordedEvent> events = record(true, traces);
+        assertEquals(2, events.size());
+        assertEquals("Slow", events.get(1).getString("name"));
+
+        events = record(false, traces);
+        assertEquals(1, events.size());
+        assertEquals(JfrTraceObserver.TRACE_EVENT, events.get(0).getEventType().getName());
+    }
+
+    @Test
+    void testNoRecordingDoesNothing() {
+        Tracer tracer = Tracer.builder("Idle").silent(true).observer(new JfrTraceObserver()).build();
+        tracer.span("Work");
+        assertDoesNotThrow(tracer::end);
+        assertThrows(IllegalArgumentException.class, () -> new JfrTraceObserver(Duration.ofMillis(-1)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit tests cho LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    void testBucketBoundsAreContiguous() {
+        assertEquals(0, LatencyHistogram.bucketLowerBound(0));
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertTrue(lower <= upper);
+            assertEquals(upper + 1, LatencyHistogram.bucketLowerBound(i + 1));
+            assertEquals(i, LatencyHistogram.bucketIndex(lower));
+            assertEquals(i, LatencyHistogram.bucketIndex(upper));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testStatisticsAndPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        Random random = new Random(5);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1_000 + random.nextInt(50_000_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+        assertEquals(Arrays.stream(values).sum(), histogram.getSum());
+
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(p);
+            // Sai số tương đối tối đa 1/8 (8 sub-buckets mỗi lũy thừa 2)
+            assertTrue(estimate >= exact && estimate <= exact + exact / 8 + 1, "p" + p + ": " + estimate + " vs " + exact);
+        }
+
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.record(7);
+        merged.add(histogram);
+        assertEquals(values.length + 1, merged.getCount());
+        assertEquals(7, merged.getMin());
+
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+    }
+}
@@ -0,0 +1,114 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit tests cho MetricsRegistry và StripedHistogram
+ */
+public class MetricsRegistryTest {
+
+    private static Tracer silentTracer(String name) {
+        return Tracer.builder(name).captureCaller(false).silent(true).build();
+    }
+
+    @Test
+    void testNullTracerNameUsesSentinel() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Tracer tracer = silentTracer(null);
+        tracer.recordSpan("work", 1_000);
+        tracer.markEnded();
+        registry.accept(tracer);
+
+        MetricsRegistry.TracerMetrics metrics = registry.get(null);
+        assertEquals(TraceAggregator.NULL_NAME, metrics.getName());
+        assertEquals(1, metrics.getCount());
+    }
+
+    @Test
+    void testConcurrentRecordingFromManyThreads() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        int threads = 8;
+        int perThread = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = t % 2 == 0 ? "Even" : "Odd";
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    Tracer tracer = silentTracer(name);
+                    tracer.recordSpan("work", 1_000 + i);
+                    tracer.markEnded();
+                    registry.accept(tracer);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(2, registry.getAll().size());
+        MetricsRegistry.TracerMetrics even = registry.get("Even");
+        assertEquals(threads / 2 * perThread, even.getCount());
+        assertEquals(threads / 2 * perThread, even.snapshot().getCount());
+        assertEquals(1_000, even.snapshot().getMin());
+        assertEquals(1_000 + perThread - 1, even.snapshot().getMax());
+        long p50 = even.getPercentile(50);
+        assertTrue(p50 >= 1_000 + perThread / 2 - 1 && p50 <= (1_000 + perThread / 2) * 9 / 8, "p50=" + p50);
+        assertTrue(even.getMeanRate() > 0);
+    }
+
+    @Test
+    void testGlobalRegistryObservesEveryTracer() {
+        MetricsRegistry global = MetricsRegistry.global();
+        assertSame(global, MetricsRegistry.global());
+
+        for (int i = 0; i < 3; i++) {
+            Tracer tracer = silentTracer("MetricsRegistryTest.global");
+            tracer.span("step");
+            tracer.end();
+        }
+        assertEquals(3, global.get("MetricsRegistryTest.global").getCount());
+    }
+
+    @Test
+    void testStripedHistogramMergesShards() throws InterruptedException {
+        StripedHistogram histogram = new StripedHistogram(4);
+        assertEquals(4, histogram.getStripeCount());
+        assertEquals(8, new StripedHistogram(5).getStripeCount());
+        assertTrue(new StripedHistogram().getStripeCount() <= 8);
+        assertEquals(3L * 4 * LatencyHistogram.APPROX_BYTES, new MetricsRegistry(2, 3).getMaxFootprintBytes());
+
+        Thread[] writers = new Thread[6];
+        for (int t = 0; t < writers.length; t++) {
+            long value = (t + 1) * 100L;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        LatencyHistogram merged = histogram.snapshot();
+        assertEquals(6_000, histogram.getCount());
+        assertEquals(6_000, merged.getCount());
+        assertEquals(100, merged.getMin());
+        assertEquals(600, merged.getMax());
+    }
+}
@@ -0,0 +1,101 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Unit tests cho OpenMetricsExporter
+ */
+public class OpenMetricsExporterTest {
+
+    private static void trace(String name, TraceAggregator aggregator, long... spanNanos) {
+        Tracer tracer = Tracer.builder(name)
+                .captureCaller(false)
+                .silent(true)
+                .observer(aggregator)
+                .build();
+        for (int i = 0; i < spanNanos.length; i++) {
+            tracer.recordSpan("step " + i, spanNanos[i]);
+        }
+        tracer.end();
+    }
+
+    @Test
+    void testHistogramExposition() {
+        TraceAggregator aggregator = new TraceAggregator();
+        for (int i = 0; i < 8; i++) {
+            trace("Checkout", aggregator, 500_000L, 20_000_000L);
+        }
+        trace("Checkout", aggregator, 3_000_000L, 20_000_000L);
+
+        OpenMetricsExporter exporter = OpenMetricsExporter.builder(aggregator)
+                .buckets(Duration.ofMillis(1), Duration.ofMillis(10), Duration.ofMillis(100))
+                .build();
+        String text = exporter.scrape();
+
+        assertTrue(text.startsWith("# TYPE quicktrace_trace_duration_seconds histogram\n"
+                + "# UNIT quicktrace_trace_duration_seconds seconds\n"));
+        assertTrue(text.endsWith("# EOF\n"));
+        assertTrue(text.contains("quicktrace_trace_duration_seconds_count{tracer=\"Checkout\"} 9\n"));
+
+        String span = "quicktrace_span_duration_seconds_bucket{tracer=\"Checkout\",span=\"step 0\",le=";
+        assertTrue(text.contains(span + "\"0.001\"} 8\n"), text);
+        assertTrue(text.contains(span + "\"0.01\"} 9\n"));
+        assertTrue(text.contains(span + "\"0.1\"} 9\n"));
+        assertTrue(text.contains(span + "\"+Inf\"} 9\n"));
+        assertTrue(text.contains("quicktrace_span_duration_seconds_sum{tracer=\"Checkout\",span=\"step 0\"} 0.007\n"));
+        assertTrue(text.contains("quicktrace_span_duration_seconds_bucket{tracer=\"Checkout\",span=\"step 1\",le=\"0.01\"} 0\n"));
+        assertTrue(text.contains("quicktrace_aggregator_overflow_traces_total 0\n"));
+    }
+
+    @Test
+    void testLabelEscaping() {
+        assertEquals("plain", OpenMetricsExporter.escape("plain"));
+        assertEquals("a\\\"b\\\\c\\nd", OpenMetricsExporter.escape("a\"b\\c\nd"));
+
+        TraceAggregator aggregator = new TraceAggregator();
+        trace("Say \"hi\"", aggregator, 1_000L);
+        String text = OpenMetricsExporter.builder(aggregator).build().scrape();
+        assertTrue(text.contains("{tracer=\"Say \\\"hi\\\"\"}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> OpenMetricsExporter.builder(aggregator).buckets(Duration.ofMillis(2), Duration.ofMillis(1)));
+    }
+
+    @Test
+    void testHttpEndpoint() throws Exception {
+        TraceAggregator aggregator = new TraceAggregator();
+        trace("Request", aggregator, 2_000_000L);
+
+        try (OpenMetricsExporter exporter = OpenMetricsExporter.builder(aggregator).build()) {
+            HttpServer server = exporter.startServer(new InetSocketAddress("127.0.0.1", 0));
+            assertThrows(IllegalStateException.class,
+                    () -> exporter.startServer(new InetSocketAddress("127.0.0.1", 0)));
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(OpenMetricsExporter.CONTENT_TYPE, connection.getContentType());
+            String body;
+            try (InputStream in = connection.getInputStream()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                in.transferTo(bytes);
+                body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            }
+            assertEquals(exporter.scrape(), body);
+
+            HttpURLConnection post = (HttpURLConnection) url.openConnection();
+            post.setRequestMethod("POST");
+            assertEquals(405, post.getResponseCode());
+        }
+    }
+}
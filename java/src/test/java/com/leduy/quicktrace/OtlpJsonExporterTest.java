@@ -0,0 +1,227 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests cho OtlpJsonExporter, dùng HttpServer local thay cho OTLP collector
+ */
+public class OtlpJsonExporterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Collector giả: statuses[i] là HTTP status cho request thứ i (hết danh sách thì 200)
+     */
+    private URI startCollector(CountDownLatch release, int... statuses) throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/traces", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                if (release != null) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                JsonNode body = MAPPER.readTree(in);
+                int call = calls.getAndIncrement();
+                int status = call < statuses.length ? statuses[call] : 200;
+                if (status == 200) {
+                    requests.add(body);
+                    authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+                }
+                exchange.sendResponseHeaders(status, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/traces");
+    }
+
+    private static Tracer trace(String name) {
+        Tracer tracer = Tracer.builder(name).silent(true).build();
+        try (SpanScope scope = tracer.startSpan("Load")) {
+            tracer.span("Query");
+        }
+        tracer.span("Render");
+        tracer.end();
+        return tracer;
+    }
+
+    private static List<JsonNode> spans(JsonNode request) {
+        List<JsonNode> spans = new ArrayList<>();
+        for (JsonNode span : request.get("resourceSpans").get(0).get("scopeSpans").get(0).get("spans")) {
+            spans.add(span);
+        }
+        return spans;
+    }
+
+    @Test
+    void testBatchesAndEncodesResourceSpans() throws Exception {
+        URI endpoint = startCollector(null);
+        OtlpJsonExporter exporter = OtlpJsonExporter.builder()
+                .endpoint(endpoint)
+                .serviceName("checkout")
+                .resourceAttribute("deployment.environment", "test")
+                .header("Authorization", "Bearer secret")
+                .batchSize(2)
+                .flushInterval(Duration.ofMinutes(1))
+                .build();
+        try {
+            exporter.accept(trace("Request"));
+            exporter.accept(trace("Request"));
+            exporter.accept(trace("Request"));
+            exporter.flush();
+        } finally {
+            exporter.close();
+        }
+
+        // Batch đầy (2 traces) gửi ngay, trace thứ 3 gửi khi flush()
+        assertEquals(2, requests.size());
+        assertEquals(3, exporter.getExportedCount());
+        assertEquals("Bearer secret", authorizations.get(0));
+
+        JsonNode resource = requests.get(0).get("resourceSpans").get(0).get("resource").get("attributes");
+        assertEquals("service.name", resource.get(0).get("key").asText());
+        assertEquals("checkout", resource.get(0).get("value").get("stringValue").asText());
+        assertEquals("test", resource.get(1).get("value").get("stringValue").asText());
+
+        List<JsonNode> spans = spans(requests.get(0));
+        assertEquals(2 * 4, spans.size());
+        Map<String, JsonNode> byName = new HashMap<>();
+        for (JsonNode span : spans.subList(0, 4)) {
+            byName.put(span.get("name").asText(), span);
+            assertTrue(span.get("traceId").asText().matches("[0-9a-f]{32}"));
+            assertTrue(span.get("spanId").asText().matches("[0-9a-f]{16}"));
+            assertEquals(spans.get(0).get("traceId").asText(), span.get("traceId").asText());
+            long start = Long.parseLong(span.get("startTimeUnixNano").asText());
+            long end = Long.parseLong(span.get("endTimeUnixNano").asText());
+            assertTrue(end >= start);
+        }
+        JsonNode root = byName.get("Request");
+        assertNull(root.get("parentSpanId"));
+        assertEquals(root.get("spanId").asText(), byName.get("Load").get("parentSpanId").asText());
+        assertEquals(byName.get("Load").get("spanId").asText(), byName.get("Query").get("parentSpanId").asText());
+        assertEquals(root.get("spanId").asText(), byName.get("Render").get("parentSpanId").asText());
+        assertNotEquals(spans.get(0).get("traceId").asText(), spans.get(4).get("traceId").asText());
+    }
+
+    @Test
+    void testRetriesTransientErrorsAndDropsPermanentOnes() throws Exception {
+        URI endpoint = startCollector(null, 503, 429, 200, 400);
+        OtlpJsonExporter exporter = OtlpJsonExporter.builder()
+                .endpoint(endpoint)
+                .batchSize(1)
+                .retry(3, Duration.ofMillis(1))
+                .build();
+        try {
+            exporter.accept(trace("Retried"));
+            exporter.flush();
+            assertEquals(1, exporter.getExportedCount());
+            assertEquals(2, exporter.getRetryCount());
+
+            // 400 không retry: batch bị bỏ ngay
+            exporter.accept(trace("Rejected"));
+            exporter.flush();
+            assertEquals(1, exporter.getFailedCount());
+            assertEquals(2, exporter.getRetryCount());
+        } finally {
+            exporter.close();
+        }
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void testBoundedQueueDropsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        URI endpoint = startCollector(release);
+        OtlpJsonExporter exporter = OtlpJsonExporter.builder()
+                .endpoint(endpoint)
+                .capacity(2)
+                .batchSize(1)
+                .build();
+        try {
+            assertTrue(exporter.submit(trace("Blocked")));
+            // Chờ worker lấy trace đầu tiên và bị collector giữ lại
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (exporter.getQueueSize() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            int accepted = 0;
+            for (int i = 0; i < 5; i++) {
+                if (exporter.submit(trace("Queued"))) {
+                    accepted++;
+                }
+            }
+            assertEquals(2, accepted);
+            assertEquals(3, exporter.getDroppedCount());
+
+            release.countDown();
+            exporter.flush();
+            assertEquals(3, exporter.getExportedCount());
+        } finally {
+            release.countDown();
+            exporter.close();
+        }
+        assertFalse(exporter.submit(trace("Closed")));
+        assertEquals(4, exporter.getDroppedCount());
+    }
+
+    @Test
+    void testFileExportWritesOneRequestPerLine() throws Exception {
+        Path file = tempDir.resolve("otlp/traces.jsonl");
+        try (OtlpJsonExporter exporter = OtlpJsonExporter.builder().file(file).batchSize(2).build()) {
+            for (int i = 0; i < 5; i++) {
+                exporter.accept(trace("File " + i));
+            }
+            exporter.flush();
+            assertEquals(5, exporter.getExportedCount());
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        int spans = 0;
+        for (String line : lines) {
+            spans += spans(MAPPER.readTree(line)).size();
+        }
+        assertEquals(5 * 4, spans);
+        assertThrows(IllegalArgumentException.class, () -> OtlpJsonExporter.builder().build());
+    }
+}
@@ -0,0 +1,138 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests cho PeriodicSummaryReporter
+ */
+public class PeriodicSummaryReporterTest {
+
+    private static void trace(String name, PeriodicSummaryReporter reporter, long... spanNanos) {
+        Tracer tracer = Tracer.builder(name)
+                .captureCaller(false)
+                .silent(true)
+                .observer(reporter)
+                .build();
+        for (int i = 0; i < spanNanos.length; i++) {
+            tracer.recordSpan("step " + i, spanNanos[i]);
+        }
+        tracer.end();
+    }
+
+    /**
+     * Cột Count của dòng window trong block của tracer name
+     */
+    private static String count(String report, String tracerName, String window) {
+        String block = report.substring(report.indexOf("\n" + tracerName + "\n"));
+        for (String line : block.split("\n")) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length > 1 && columns[0].equals(window)) {
+                return columns[1];
+            }
+        }
+        throw new AssertionError("Không có dòng " + window + " trong:\n" + report);
+    }
+
+    @Test
+    void testSlidingWindowsRollOver() {
+        PeriodicSummaryReporter reporter = PeriodicSummaryReporter.builder()
+                .windows(Duration.ofMinutes(1), Duration.ofMinutes(3))
+                .tableStyle(null)
+                .output(text -> { })
+                .build();
+
+        assertTrue(reporter.report().contains("(no traces)"));
+
+        trace("Checkout", reporter, 10_000_000L, 1_000_000L);
+        trace("Checkout", reporter, 12_000_000L, 1_000_000L);
+        String report = reporter.report();
+        assertTrue(report.contains("(1m / 3m)"));
+        assertEquals("2", count(report, "Checkout", "1m"));
+        assertEquals("2", count(report, "Checkout", "3m"));
+
+        trace("Checkout", reporter, 10_000_000L, 1_000_000L);
+        report = reporter.report();
+        assertEquals("1", count(report, "Checkout", "1m"));
+        assertEquals("3", count(report, "Checkout", "3m"));
+
+        // Slot rỗng: window 1m trống, window 3m vẫn gồm 3 slots gần nhất
+        report = reporter.report();
+        assertEquals("0", count(report, "Checkout", "1m"));
+        assertEquals("3", count(report, "Checkout", "3m"));
+
+        report = reporter.report();
+        assertEquals("1", count(report, "Checkout", "3m"));
+        report = reporter.report();
+        assertTrue(report.contains("(no traces)"));
+    }
+
+    @Test
+    void testSlowestSpansAndTable() {
+        PeriodicSummaryReporter reporter = PeriodicSummaryReporter.builder()
+                .slowestSpans(1)
+                .output(text -> { })
+                .build();
+        for (int i = 0; i < 10; i++) {
+            trace("Search", reporter, 1_000_000L, 20_000_000L);
+        }
+        trace("Index", reporter, 5_000_000L);
+
+        String report = reporter.report();
+        assertTrue(report.indexOf("\nIndex\n") < report.indexOf("\nSearch\n"), "tracer names sorted");
+        assertEquals("10", count(report, "Search", "15m"));
+
+        String searchRow = report.substring(report.indexOf("\nSearch\n")).split("\n")[3];
+        assertTrue(searchRow.contains("step 1 PT0.02"), searchRow);
+        assertFalse(searchRow.contains("step 0"), searchRow);
+
+        // Bảng theo span dùng renderer TABLE trên aggregate của window 1m
+        assertTrue(report.contains("Search [P99 of 10 traces]"));
+        assertTrue(report.contains("Index [P99 of 1 traces]"));
+    }
+
+    @Test
+    void testStartSuppressesPerTracePrinting() throws Exception {
+        TraceSink original = Tracer.getDefaultSink();
+        InMemoryTraceSink printed = new InMemoryTraceSink(16);
+        Tracer.setDefaultSink(printed);
+
+        List<String> reports = new CopyOnWriteArrayList<>();
+        CountDownLatch reported = new CountDownLatch(1);
+        PeriodicSummaryReporter reporter = PeriodicSummaryReporter.builder()
+                .interval(Duration.ofMillis(50))
+                .suppressTracePrinting(true)
+                .output(text -> {
+                    reports.add(text);
+                    if (text.contains("\nRequest\n")) {
+                        reported.countDown();
+                    }
+                })
+                .build();
+        try {
+            reporter.start();
+            assertThrows(IllegalStateException.class, reporter::start);
+
+            Tracer tracer = Tracer.builder("Request").minTotalDuration(Duration.ZERO).build();
+            tracer.span("Handle");
+            tracer.end();
+
+            assertTrue(reported.await(5, TimeUnit.SECONDS), String.join("\n", reports));
+            assertEquals(0, printed.size());
+        } finally {
+            reporter.close();
+            assertSame(printed, Tracer.getDefaultSink());
+            Tracer.setDefaultSink(original);
+        }
+
+        // Sau close() reporter không còn là global observer
+        Tracer.builder("After").silent(true).build().end();
+        assertFalse(reporter.report().contains("After"));
+    }
+}
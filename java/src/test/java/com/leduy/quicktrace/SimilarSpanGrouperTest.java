@@ -0,0 +1,103 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests cho SimilarSpanGrouper
+ */
+public class SimilarSpanGrouperTest {
+
+    /**
+     * Thuật toán greedy O(n²) ban đầu - dùng làm reference
+     */
+    private static List<GroupedMeasurement> referenceGroup(List<Measurement> measurements, Duration threshold) {
+        List<GroupedMeasurement> groups = new ArrayList<>();
+        boolean[] processed = new boolean[measurements.size()];
+        for (int i = 0; i < measurements.size(); i++) {
+            if (processed[i]) {
+                continue;
+            }
+            Measurement m1 = measurements.get(i);
+            int count = 1;
+            Duration total = m1.getDuration();
+            Duration min = m1.getDuration();
+            Duration max = m1.getDuration();
+            processed[i] = true;
+            for (int j = i + 1; j < measurements.size(); j++) {
+                if (processed[j]) {
+                    continue;
+                }
+                Duration d = measurements.get(j).getDuration();
+                if (m1.getDuration().minus(d).abs().compareTo(threshold) <= 0) {
+                    count++;
+                    total = total.plus(d);
+                    min = d.compareTo(min) < 0 ? d : min;
+                    max = d.compareTo(max) > 0 ? d : max;
+                    processed[j] = true;
+                }
+            }
+            String name = m1.getStatement();
+            if (count > 1) {
+                name = String.format(count - 1 <= 2 ? "%s + %d similar" : "%s + %d others", name, count - 1);
+            }
+            groups.add(new GroupedMeasurement(name, count, total, total.dividedBy(count), min, max));
+        }
+        return groups;
+    }
+
+    private static void assertSameGroups(List<GroupedMeasurement> expected, List<GroupedMeasurement> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            GroupedMeasurement e = expected.get(i);
+            GroupedMeasurement a = actual.get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getCount(), a.getCount());
+            assertEquals(e.getTotalTime(), a.getTotalTime());
+            assertEquals(e.getAvgTime(), a.getAvgTime());
+            assertEquals(e.getMinTime(), a.getMinTime());
+            assertEquals(e.getMaxTime(), a.getMaxTime());
+        }
+    }
+
+    @Test
+    void testMatchesGreedyReference() {
+        Random random = new Random(1234);
+        for (int round = 0; round < 500; round++) {
+            int size = random.nextInt(40);
+            List<Measurement> measurements = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                measurements.add(new Measurement("op" + i, (long) random.nextInt(50) * 1_000));
+            }
+            Duration threshold = Duration.ofNanos((long) random.nextInt(12) * 1_000 - 1_000);
+
+            assertSameGroups(referenceGroup(measurements, threshold),
+                    SimilarSpanGrouper.group(measurements, threshold));
+        }
+    }
+
+    @Test
+    void testGroupsLargeTraceQuickly() {
+        Random random = new Random(99);
+        List<Measurement> measurements = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            measurements.add(new Measurement("row " + i, random.nextInt(1_000_000_000)));
+        }
+
+        List<GroupedMeasurement> groups = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> SimilarSpanGrouper.group(measurements, Duration.ofMillis(1)));
+
+        int total = 0;
+        for (GroupedMeasurement group : groups) {
+            total += group.getCount();
+            assertTrue(group.getMaxTime().minus(group.getMinTime()).compareTo(Duration.ofMillis(2)) <= 0);
+        }
+        assertEquals(100_000, total);
+        assertEquals("row 0", groups.get(0).getName().substring(0, 5));
+    }
+}
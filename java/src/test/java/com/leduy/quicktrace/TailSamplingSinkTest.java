@@ -0,0 +1,187 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests cho TailSamplingSink
+ */
+public class TailSamplingSinkTest {
+
+    private static Tracer finished(String name, long totalNanos) {
+        Tracer tracer = Tracer.builder(name).captureCaller(false).build();
+        tracer.recordSpan("work", totalNanos);
+        tracer.recordSpan("End", 0);
+        tracer.markEnded();
+        return tracer;
+    }
+
+    @Test
+    void testPercentileModeKeepsOnlyOutliers() {
+        InMemoryTraceSink kept = new InMemoryTraceSink(1000);
+        TailSamplingSink sink = TailSamplingSink.builder()
+                .delegate(kept)
+                .percentile(99)
+                .minSamples(100)
+                .build();
+
+        // Warmup: chưa đủ samples thì chưa giữ gì
+        for (int i = 0; i < 99; i++) {
+            sink.accept(finished("Request", 1_000_000));
+        }
+        assertEquals(0, kept.size());
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 1; i <= 99; i++) {
+                sink.accept(finished("Request", i * 10_000L));
+            }
+            sink.accept(finished("Request", 50_000_000));
+        }
+
+        List<Tracer> traces = kept.getTraces();
+        assertFalse(traces.isEmpty());
+        for (Tracer trace : traces) {
+            assertTrue(trace.getTotalNanos() >= 900_000, "kept " + trace.getTotalNanos());
+        }
+        // Mọi outlier 50ms sau warmup đều được giữ, và volume bị chặn quanh 1-2%
+        assertTrue(traces.stream().filter(t -> t.getTotalNanos() == 50_000_000).count() >= 19);
+        assertTrue(traces.size() <= 60, "kept " + traces.size());
+        assertEquals(99 + 2000, sink.getKeptCount() + sink.getDroppedCount());
+        // p99 thực là 1ms, trong độ chính xác của bucket chứa nó
+        assertTrue(sink.getThresholdNanos("Request") <= 1_000_000 * 1.125);
+        assertEquals(Long.MAX_VALUE, sink.getThresholdNanos("Unknown"));
+    }
+
+    @Test
+    void testPercentileModeKeepsAboutOneMinusPOnNarrowDistribution() {
+        InMemoryTraceSink kept = new InMemoryTraceSink(20_000);
+        TailSamplingSink sink = TailSamplingSink.builder()
+                .delegate(kept)
+                .percentile(99)
+                .minSamples(100)
+                .build();
+
+        // 100-110ms: cả dải nằm trong 2 buckets của histogram (mỗi bucket rộng ~8ms)
+        Random random = new Random(42);
+        int traces = 20_000;
+        for (int i = 0; i < traces; i++) {
+            sink.accept(finished("Narrow", 100_000_000L + (long) (random.nextDouble() * 10_000_000L)));
+        }
+
+        double fraction = (double) kept.size() / traces;
+        assertTrue(fraction > 0.005 && fraction < 0.02, "kept fraction " + fraction);
+        long threshold = sink.getThresholdNanos("Narrow");
+        assertEquals(109_900_000, threshold, 100_000, "threshold " + threshold);
+    }
+
+    @Test
+    void testNullTracerNameUsesSentinel() {
+        InMemoryTraceSink kept = new InMemoryTraceSink(10);
+        TailSamplingSink sink = TailSamplingSink.builder().delegate(kept).percentile(50).minSamples(1).build();
+        for (int i = 1; i <= 10; i++) {
+            sink.accept(finished(null, i * 1_000_000L));
+        }
+        assertEquals(10, sink.getKeptCount() + sink.getDroppedCount());
+        assertTrue(sink.getThresholdNanos(null) < Long.MAX_VALUE);
+        assertFalse(kept.getTraces().isEmpty());
+    }
+
+    @Test
+    void testTopKPerWindow() {
+        AtomicLong now = new AtomicLong();
+        InMemoryTraceSink kept = new InMemoryTraceSink(1000);
+        TailSamplingSink sink = TailSamplingSink.builder()
+                .delegate(kept)
+                .topK(3)
+                .window(Duration.ofSeconds(10))
+                .scheduledFlush(false)
+                .clock(now::get)
+                .build();
+
+        for (int i = 1; i <= 100; i++) {
+            sink.accept(finished("A", i * 1_000L));
+            sink.accept(finished("B", i * 2_000L));
+        }
+        // Window chưa kết thúc - chưa giao gì
+        assertEquals(0, kept.size());
+
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        sink.accept(finished("A", 5));
+
+        List<Tracer> traces = kept.getTraces();
+        assertEquals(6, traces.size());
+        long a = traces.stream().filter(t -> t.getName().equals("A")).mapToLong(Tracer::getTotalNanos).min().getAsLong();
+        long b = traces.stream().filter(t -> t.getName().equals("B")).mapToLong(Tracer::getTotalNanos).min().getAsLong();
+        assertEquals(98_000, a);
+        assertEquals(196_000, b);
+        assertEquals(194, sink.getDroppedCount());
+
+        // close() giao nốt window hiện tại
+        sink.close();
+        assertEquals(7, kept.size());
+    }
+
+    @Test
+    void testTopKDeliversWhenTrafficStops() throws InterruptedException {
+        InMemoryTraceSink kept = new InMemoryTraceSink(100);
+        TailSamplingSink sink = TailSamplingSink.builder()
+                .delegate(kept)
+                .topK(2)
+                .window(Duration.ofMillis(50))
+                .build();
+        try {
+            for (int i = 1; i <= 5; i++) {
+                sink.accept(finished("Idle", i * 1_000L));
+            }
+            // Không có trace mới: daemon thread đóng window
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (kept.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, kept.size());
+            assertEquals(5_000, kept.getTraces().get(0).getTotalNanos());
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    void testAcceptAfterCloseIsDroppedAndCloseIsIdempotent() {
+        for (TailSamplingSink.Builder builder : new TailSamplingSink.Builder[] {
+                TailSamplingSink.builder().percentile(50).minSamples(1),
+                TailSamplingSink.builder().topK(2).scheduledFlush(false)}) {
+            AtomicLong delivered = new AtomicLong();
+            AtomicLong closes = new AtomicLong();
+            TailSamplingSink sink = builder.delegate(new TraceSink() {
+                @Override
+                public void accept(Tracer trace) {
+                    delivered.incrementAndGet();
+                }
+
+                @Override
+                public void close() {
+                    closes.incrementAndGet();
+                }
+            }).build();
+
+            sink.close();
+            sink.close();
+            assertEquals(1, closes.get(), sink.getMode().name());
+
+            for (int i = 1; i <= 10; i++) {
+                sink.accept(finished("Late", i * 1_000_000L));
+            }
+            sink.flush();
+            // Không giao gì cho delegate đã đóng, không giữ trace trong heap không còn ai flush
+            assertEquals(0, delivered.get(), sink.getMode().name());
+            assertEquals(0, sink.getKeptCount(), sink.getMode().name());
+            assertEquals(10, sink.getDroppedCount(), sink.getMode().name());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests cho TraceAggregator
+ */
+public class TraceAggregatorTest {
+
+    private static Tracer trace(String name, TraceAggregator aggregator, long... spanNanos) {
+        Tracer tracer = Tracer.builder(name)
+                .captureCaller(false)
+                .silent(true)
+                .observer(aggregator)
+                .build();
+        for (int i = 0; i < spanNanos.length; i++) {
+            tracer.recordSpan("step " + i, spanNanos[i]);
+        }
+        return tracer;
+    }
+
+    @Test
+    void testAggregatesSilentTracesPerSpan() {
+        TraceAggregator aggregator = new TraceAggregator();
+        for (int i = 1; i <= 100; i++) {
+            trace("Request", aggregator, i * 1_000L, 5_000L).end();
+        }
+        trace("Batch", aggregator, 1_000_000L).end();
+
+        assertEquals(Arrays.asList("Batch", "Request"), aggregator.getTracerNames());
+
+        TraceAggregator.TracerStats stats = aggregator.getStats("Request");
+        assertEquals(100, stats.getCount());
+        assertEquals(Arrays.asList("step 0", "step 1"), stats.getSpanNames());
+
+        LatencyHistogram step0 = stats.getSpan("step 0");
+        assertEquals(100, step0.getCount());
+        assertEquals(1_000, step0.getMin());
+        assertEquals(100_000, step0.getMax());
+        assertEquals(5_050_000, step0.getSum());
+        assertEquals(5_000, stats.getSpan("step 1").getPercentile(99));
+    }
+
+    @Test
+    void testCardinalityIsBounded() {
+        TraceAggregator aggregator = new TraceAggregator(2, 1);
+        for (int i = 0; i < 10; i++) {
+            trace("Tracer " + i, aggregator, 10L, 20L).end();
+        }
+
+        assertEquals(Arrays.asList("(other)", "Tracer 0", "Tracer 1"), aggregator.getTracerNames());
+        assertEquals(8, aggregator.getOverflowCount());
+        assertEquals(8, aggregator.getStats(TraceAggregator.OTHER).getCount());
+        assertEquals(Arrays.asList("step 0", "(other)"), aggregator.getStats("Tracer 0").getSpanNames());
+        // 3 tracers (gồm "(other)") x (total + 1 span + "(other)")
+        assertEquals(3L * 3 * LatencyHistogram.APPROX_BYTES, aggregator.getMaxFootprintBytes());
+        assertTrue(new TraceAggregator().getMaxFootprintBytes() < 10_000_000);
+    }
+
+    @Test
+    void testNullNamesAreAggregatedUnderSentinel() {
+        TraceAggregator aggregator = new TraceAggregator();
+        Tracer unnamed = Tracer.builder(null).silent(true).observer(aggregator).build();
+        unnamed.recordSpan(null, 10);
+        unnamed.recordSpan("step", 20);
+        assertDoesNotThrow(unnamed::end);
+
+        assertEquals(Arrays.asList(TraceAggregator.NULL_NAME), aggregator.getTracerNames());
+        TraceAggregator.TracerStats stats = aggregator.getStats(null);
+        assertSame(stats, aggregator.getStats(TraceAggregator.NULL_NAME));
+        assertEquals(1, stats.getCount());
+        assertEquals(Arrays.asList(TraceAggregator.NULL_NAME, "step"), stats.getSpanNames());
+        assertEquals(10, stats.getSpan(null).getMax());
+        assertNotNull(aggregator.toTracer(null, TraceAggregator.Statistic.MAX, OutputStyle.DEFAULT));
+    }
+
+    @Test
+    void testMergeAddsStatistics() {
+        TraceAggregator first = new TraceAggregator();
+        TraceAggregator second = new TraceAggregator();
+        trace("Request", first, 1_000L).end();
+        trace("Request", second, 3_000L, 5_000L).end();
+        trace("Batch", second, 7_000L).end();
+
+        TraceAggregator merged = new TraceAggregator(8, 8);
+        merged.merge(first);
+        merged.merge(second);
+
+        assertEquals(Arrays.asList("Batch", "Request"), merged.getTracerNames());
+        TraceAggregator.TracerStats stats = merged.getStats("Request");
+        assertEquals(2, stats.getCount());
+        assertEquals(Arrays.asList("step 0", "step 1"), stats.getSpanNames());
+        assertEquals(2, stats.getSpan("step 0").getCount());
+        assertEquals(1_000L, stats.getSpan("step 0").getMin());
+        assertEquals(1, stats.getSpan("step 1").getCount());
+        // Nguồn không bị thay đổi
+        assertEquals(1, first.getStats("Request").getCount());
+    }
+
+    @Test
+    void testRenderAggregateThroughOutputStyles() {
+        TraceAggregator aggregator = new TraceAggregator();
+        Tracer.addGlobalObserver(aggregator);
+        try {
+            trace("Checkout", null, 2_000_000L, 8_000_000L).end();
+            trace("Checkout", null, 4_000_000L, 8_000_000L).end();
+        } finally {
+            assertTrue(Tracer.removeGlobalObserver(aggregator));
+        }
+        assertFalse(Tracer.removeGlobalObserver(aggregator));
+
+        Tracer summary = aggregator.toTracer("Checkout", TraceAggregator.Statistic.MEAN, OutputStyle.TABLE);
+        assertEquals(3_000_000, summary.getMeasurements().get(0).getDurationNanos());
+        assertEquals(8_000_000, summary.getMeasurements().get(1).getDurationNanos());
+        assertTrue(summary.getTotalNanos() >= 11_000_000);
+
+        String output = aggregator.render(OutputStyle.TABLE, TraceAggregator.Statistic.MAX);
+        assertTrue(output.contains("Checkout [MAX of 2 traces]"));
+        assertTrue(output.contains("PT0.004S"));
+        assertNull(aggregator.toTracer("Missing", TraceAggregator.Statistic.P99, OutputStyle.DEFAULT));
+    }
+}
@@ -0,0 +1,172 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests cho TraceContext và các wrappers
+ */
+public class TraceContextTest {
+
+    @AfterEach
+    void tearDown() {
+        TraceContext.setStorage(TraceContext.Storage.THREAD_LOCAL);
+        TraceContext.clearThreadMap();
+    }
+
+    @Test
+    void testCurrentWithoutContextIsNoop() {
+        Tracer current = Tracer.current();
+        assertFalse(current.isSampled());
+        current.span("Ignored");
+        assertEquals(0, current.getMeasurements().size());
+    }
+
+    @Test
+    void testMakeCurrentRestoresPrevious() {
+        Tracer outer = Tracer.builder("Outer").silent(true).build();
+        Tracer inner = Tracer.builder("Inner").silent(true).build();
+
+        try (TraceContext.Scope a = outer.makeCurrent()) {
+            assertSame(outer, Tracer.current());
+            try (TraceContext.Scope b = inner.makeCurrent()) {
+                assertSame(inner, Tracer.current());
+            }
+            assertSame(outer, Tracer.current());
+        }
+        assertFalse(Tracer.current().isSampled());
+    }
+
+    @Test
+    void testExecutorServicePropagatesContext() throws Exception {
+        Tracer tracer = Tracer.builder("Request").concurrent(true).silent(true).build();
+        ExecutorService pool = TraceContext.wrap(Executors.newFixedThreadPool(4));
+        try (TraceContext.Scope scope = tracer.makeCurrent()) {
+            List<Future<Tracer>> futures = pool.invokeAll(Arrays.asList(
+                    () -> work("A"), () -> work("B"), () -> work("C")));
+            for (Future<Tracer> future : futures) {
+                assertSame(tracer, future.get());
+            }
+            Future<?> same = pool.submit(() -> assertSame(tracer, Tracer.current()));
+            same.get();
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        tracer.end();
+        assertEquals(4, tracer.getMeasurements().size());
+
+        // Task submit không có context không được thấy context cũ của worker thread
+        ExecutorService plain = TraceContext.wrap(Executors.newSingleThreadExecutor());
+        try {
+            assertFalse(plain.submit(() -> Tracer.current().isSampled()).get());
+        } finally {
+            plain.shutdown();
+        }
+    }
+
+    private static Tracer work(String name) {
+        Tracer current = Tracer.current();
+        current.span(name);
+        return current;
+    }
+
+    @Test
+    void testCompletableFutureStages() throws Exception {
+        Tracer tracer = Tracer.builder("Async").concurrent(true).silent(true).build();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<String> result;
+            try (TraceContext.Scope scope = tracer.makeCurrent()) {
+                result = TraceContext.supplyAsync(() -> work("Load").getName(), pool)
+                        .thenApplyAsync(TraceContext.wrapFunction(name -> work("Render").getName()), pool)
+                        .thenCombine(TraceContext.runAsync(() -> work("Audit"), TraceContext.wrap(pool)),
+                                TraceContext.wrapFunction((name, ignored) -> name));
+            }
+            assertEquals("Async", result.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+        tracer.end();
+        assertEquals(4, tracer.getMeasurements().size());
+    }
+
+    @Test
+    void testTaskSpanMeasuredFromTaskStart() throws Exception {
+        Tracer tracer = Tracer.builder("Resume").concurrent(true).silent(true).build();
+        Thread.sleep(50);
+        Runnable task;
+        try (TraceContext.Scope scope = tracer.makeCurrent()) {
+            task = TraceContext.wrap(() -> Tracer.current().span("Quick"));
+        }
+        Thread worker = new Thread(task);
+        worker.start();
+        worker.join();
+        tracer.end();
+
+        assertTrue(tracer.getMeasurements().get(0).getDuration().compareTo(Duration.ofMillis(50)) < 0);
+    }
+
+    @Test
+    void testThreadMapStorageDropsEntriesOnClose() throws Exception {
+        TraceContext.setStorage(TraceContext.Storage.THREAD_MAP);
+        Tracer tracer = Tracer.builder("Map").concurrent(true).silent(true).build();
+
+        Thread[] threads = new Thread[16];
+        try (TraceContext.Scope scope = tracer.makeCurrent()) {
+            assertSame(tracer, Tracer.current());
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(TraceContext.wrap(() -> {
+                    work("Task");
+                }));
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertEquals(0, TraceContext.threadMapSize());
+        tracer.end();
+        assertEquals(threads.length + 1, tracer.getMeasurements().size());
+    }
+
+    @Test
+    void testThreadMapDoesNotRetainFinishedThreads() throws Exception {
+        TraceContext.setStorage(TraceContext.Storage.THREAD_MAP);
+        Tracer tracer = Tracer.builder("Finished").concurrent(true).silent(true).build();
+
+        // Thread chạy task đã wrap rồi kết thúc: không còn entry
+        Thread finished = new Thread(TraceContext.wrap(() -> {
+            work("Task");
+        }));
+        finished.start();
+        finished.join();
+        assertEquals(0, TraceContext.threadMapSize());
+
+        // Scope không được close: entry còn lại nhưng Thread vẫn được GC
+        Thread leaked = new Thread(() -> tracer.makeCurrent());
+        leaked.start();
+        leaked.join();
+        assertEquals(1, TraceContext.threadMapSize());
+        WeakReference<Thread> reference = new WeakReference<>(leaked);
+        leaked = null;
+        finished = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        tracer.end();
+    }
+}
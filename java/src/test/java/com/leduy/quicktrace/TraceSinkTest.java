@@ -0,0 +1,136 @@
+package com.leduy.quicktrace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests cho TraceSink và các sink built-in
+ */
+public class TraceSinkTest {
+
+    private static Tracer finished(String name, TraceSink sink) {
+        Tracer tracer = Tracer.builder(name)
+                .minTotalDuration(Duration.ZERO)
+                .sink(sink)
+                .build();
+        tracer.span("Step");
+        tracer.end();
+        return tracer;
+    }
+
+    @Test
+    void testInMemorySinkReceivesStructuredTrace() {
+        InMemoryTraceSink sink = new InMemoryTraceSink(2);
+        Tracer first = finished("First", sink);
+        finished("Second", sink);
+        finished("Third", sink);
+
+        List<Tracer> traces = sink.getTraces();
+        assertEquals(2, traces.size());
+        assertEquals("Second", traces.get(0).getName());
+        assertEquals("Third", traces.get(1).getName());
+        assertEquals(1, sink.getEvictedCount());
+        assertEquals(2, first.getMeasurements().size());
+    }
+
+    @Test
+    void testSilentAndPrintConditionSkipSink() {
+        InMemoryTraceSink sink = new InMemoryTraceSink(10);
+
+        Tracer silent = Tracer.builder("Silent").silent(true).sink(sink).build();
+        silent.end();
+
+        Tracer filtered = Tracer.builder("Filtered")
+                .minTotalDuration(Duration.ofHours(1))
+                .sink(sink)
+                .build();
+        filtered.end();
+
+        assertEquals(0, sink.size());
+    }
+
+    @Test
+    void testCompositeSinkIsolatesFailures() {
+        AtomicInteger calls = new AtomicInteger();
+        InMemoryTraceSink memory = new InMemoryTraceSink(10);
+        CompositeTraceSink composite = new CompositeTraceSink(
+                trace -> { throw new IllegalStateException("boom"); },
+                trace -> calls.incrementAndGet(),
+                memory);
+
+        finished("Composite", composite);
+
+        assertEquals(1, calls.get());
+        assertEquals(1, memory.size());
+        assertEquals(1, composite.getFailureCount());
+    }
+
+    @Test
+    void testThrowingSinkDoesNotEscapeEnd() {
+        long before = Tracer.getSinkFailureCount();
+        TraceSink broken = trace -> {
+            throw new UncheckedIOException(new IOException("No space left on device"));
+        };
+
+        Tracer tracer = assertDoesNotThrow(() -> finished("Disk full", broken));
+        assertEquals(2, tracer.spans().size());
+        assertEquals(before + 1, Tracer.getSinkFailureCount());
+    }
+
+        @Test
+    void testDefaultSinkIsUsedWhenTracerHasNone() {
+        TraceSink previous = Tracer.getDefaultSink();
+        InMemoryTraceSink sink = new InMemoryTraceSink(10);
+        try {
+            Tracer.setDefaultSink(sink);
+            finished("Global", null);
+            assertEquals(1, sink.size());
+        } finally {
+            Tracer.setDefaultSink(previous);
+        }
+    }
+
+    @Test
+    void testRollingFileSinkRotates(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("traces.log");
+        try (RollingFileTraceSink sink = new RollingFileTraceSink(file, 512, 2)) {
+            for (int i = 0; i < 10; i++) {
+                finished("Rolling " + i, sink);
+            }
+        }
+
+        assertTrue(Files.exists(file));
+        assertTrue(Files.exists(dir.resolve("traces.log.1")));
+        assertTrue(Files.exists(dir.resolve("traces.log.2")));
+        assertFalse(Files.exists(dir.resolve("traces.log.3")));
+        assertTrue(Files.readString(file).contains("Rolling 9"));
+    }
+
+    @Test
+    void testRollingFileSinkWritesWithoutAnsiColors(@TempDir Path dir) throws IOException {
+        Path plain = dir.resolve("plain.log");
+        Path styled = dir.resolve("styled.log");
+        try (RollingFileTraceSink sink = new RollingFileTraceSink(plain, 1 << 20, 1)) {
+            finished("Plain", sink);
+        }
+        try (RollingFileTraceSink sink = new RollingFileTraceSink(styled, 1 << 20, 1, null)) {
+            finished("Styled", sink);
+        }
+
+        String content = Files.readString(plain);
+        assertTrue(content.startsWith("{"));
+        assertTrue(content.contains("Plain"));
+        assertFalse(content.contains("\u001b"));
+        // null style: giữ output style của tracer (DEFAULT có màu)
+        assertTrue(Files.readString(styled).contains("\u001b"));
+    }
+}
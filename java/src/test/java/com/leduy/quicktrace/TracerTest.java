@@ -4,6 +4,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
 
@@ -116,6 +121,28 @@ public class TracerTest {
         assertTrue(totalDuration.toMillis() <= (endTime - startTime + 10)); // Allow 10ms tolerance
     }
     
+    @Test
+    void testTotalDurationFrozenAfterEnd() throws InterruptedException {
+        tracer.setSilent(true);
+        tracer.span("Work");
+        Thread.sleep(5);
+        tracer.end();
+        
+        long total = tracer.getTotalNanos();
+        Thread.sleep(5);
+        assertEquals(total, tracer.getTotalNanos());
+        assertEquals(Duration.ofNanos(total), tracer.getTotalDuration());
+        
+        // Tổng các span (monotonic) không bao giờ vượt quá total
+        long sum = 0;
+        for (Measurement m : tracer.getMeasurements()) {
+            assertTrue(m.getDurationNanos() >= 0);
+            assertEquals(Duration.ofNanos(m.getDurationNanos()), m.getDuration());
+            sum += m.getDurationNanos();
+        }
+        assertEquals(total, sum);
+    }
+    
     @Test
     void testCallerInfo() {
         assertNotNull(tracer.getCallerInfo());
@@ -124,6 +151,19 @@ public class TracerTest {
         assertTrue(tracer.getCallerInfo().contains(":"));
     }
     
+    @Test
+    void testCallerInfoPointsAtUserCode() {
+        Tracer viaBuilder = Tracer.builder("Caller").build();
+        assertTrue(viaBuilder.getCallerInfo().startsWith("TracerTest.java:"));
+        assertTrue(tracer.getCallerInfo().startsWith("TracerTest.java:"));
+    }
+    
+    @Test
+    void testCallerCaptureDisabled() {
+        Tracer noCaller = Tracer.builder("No caller").captureCaller(false).build();
+        assertEquals("Unknown:0", noCaller.getCallerInfo());
+    }
+    
     @Test
     void testCustomPrintCondition() throws InterruptedException {
         tracer.setPrintCondition(t -> t.getTotalDuration().compareTo(Duration.ofMillis(100)) > 0);
@@ -146,5 +186,242 @@ public class TracerTest {
         // Should return different list instances (defensive copy)
         assertNotSame(measurements1, measurements2);
         assertEquals(measurements1.size(), measurements2.size());
+        
+        // Copy mutable như trước: sort/remove không ảnh hưởng tracer
+        measurements1.remove(0);
+        assertEquals(0, measurements1.size());
+        assertEquals(1, tracer.getMeasurements().size());
+    }
+    
+    @Test
+    void testMeasurementsViewIsSnapshotAndReadOnly() {
+        for (int i = 0; i < 100; i++) {
+            tracer.span("Span " + i);
+        }
+        List<Measurement> view = tracer.getMeasurementsView();
+        tracer.span("After view");
+        
+        assertEquals(100, view.size());
+        assertEquals(101, tracer.getMeasurementsView().size());
+        assertEquals("Span 42", view.get(42).getStatement());
+        assertThrows(UnsupportedOperationException.class, () -> view.add(new Measurement("x", 1L)));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(100));
+    }
+    
+    @Test
+    void testStreamingJsonOutput() throws Exception {
+        tracer.setSilent(true);
+        tracer.span("Load \"config\"");
+        tracer.span("Query");
+        tracer.end();
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonTraceEncoder.writeLine(tracer, out);
+        JsonTraceEncoder.writeLine(tracer, out);
+        String ndjson = out.toString(StandardCharsets.UTF_8);
+        String[] lines = ndjson.split("\n");
+        assertEquals(2, lines.length);
+        
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode root = mapper.readTree(lines[0]);
+        assertEquals("Test Tracer", root.get("tracer_name").asText());
+        assertEquals(tracer.getTotalNanos(), root.get("total_ns").asLong());
+        assertTrue(root.get("caller_info").get("file").asText().startsWith("TracerTest.java:"));
+        JsonNode spans = root.get("spans");
+        assertEquals(2, spans.size()); // "End" không được ghi
+        assertEquals("Load \"config\"", spans.get(0).get("name").asText());
+        assertEquals("very_fast", spans.get(0).get("color_class").asText());
+        
+        // Pretty JSON (OutputStyle.JSON) và NDJSON chứa cùng một document
+        tracer.setOutputStyle(OutputStyle.JSON);
+        String pretty = tracer.render();
+        JsonNode prettyRoot = mapper.readTree(pretty.substring(pretty.indexOf('{')));
+        assertEquals(root, prettyRoot);
+        
+        tracer.setOutputStyle(OutputStyle.NDJSON);
+        assertEquals(lines[0] + "\n", tracer.render());
+    }
+    
+    @Test
+    void testUnsampledTracersShareNoopInstance() {
+        Tracer unsampled = Tracer.builder("Sampled out").sampleRate(0).build();
+        assertFalse(unsampled.isSampled());
+        assertSame(unsampled, Tracer.builder("Other").sampleRate(0).build());
+        
+        // Setters bị bỏ qua - không thể bật lại instance dùng chung
+        unsampled.setEnabled(true);
+        unsampled.setSilent(false);
+        unsampled.span("Ignored");
+        unsampled.end();
+        assertFalse(unsampled.isEnabled());
+        assertEquals(0, unsampled.getMeasurements().size());
+        assertEquals(0, unsampled.getTotalNanos());
+        assertEquals(Tracer.UNKNOWN_CALLER, unsampled.getCallerInfo());
+        
+        assertTrue(Tracer.builder("Always").sampleRate(1).build().isSampled());
+        assertThrows(IllegalArgumentException.class, () -> Tracer.builder("Bad").sampleRate(1.5));
+    }
+    
+    @Test
+    void testRateLimitPerTracerName() {
+        int sampled = 0;
+        for (int i = 0; i < 50; i++) {
+            if (Tracer.builder("TracerTest.rateLimited").rateLimit(5).build().isSampled()) {
+                sampled++;
+            }
+        }
+        // 50 lần build chạy trong tối đa 2 cửa sổ một giây
+        assertTrue(sampled >= 5 && sampled <= 10, "sampled=" + sampled);
+        // Tracer name null dùng limiter của key sentinel thay vì NPE
+        assertTrue(Tracer.builder(null).rateLimit(5).build().isSampled());
+        
+        TraceSampler.RateLimiter limiter = new TraceSampler.RateLimiter();
+        long now = System.nanoTime();
+        assertTrue(limiter.tryAcquire(2, now));
+        assertTrue(limiter.tryAcquire(2, now));
+        assertFalse(limiter.tryAcquire(2, now));
+        assertTrue(limiter.tryAcquire(2, now + 1_000_000_000L));
+    }
+    
+    @Test
+    void testDisabledTracerStartsClockWhenEnabled() throws InterruptedException {
+        int line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        Tracer lazy = Tracer.builder("Lazy").enabled(false).build();
+        assertEquals(0, lazy.getTotalNanos());
+        
+        Thread.sleep(50);
+        lazy.setEnabled(true);
+        // Caller là nơi tạo tracer, không phải nơi gọi setEnabled(true)
+        assertEquals("TracerTest.java:" + line, lazy.getCallerInfo());
+        lazy.setSilent(true);
+        lazy.span("Work");
+        lazy.end();
+        
+        assertTrue(lazy.isSampled());
+        assertEquals(2, lazy.getMeasurements().size());
+        assertTrue(lazy.getTotalNanos() < Duration.ofMillis(50).toNanos());
+    }
+    
+    @Test
+    void testNestedSpansRecordParentAndSelfTime() throws Exception {
+        Tracer nested = Tracer.builder("Nested").silent(true).build();
+        try (SpanScope request = nested.startSpan("Request")) {
+            Thread.sleep(5);
+            try (SpanScope db = nested.startSpan("DB")) {
+                Thread.sleep(20);
+                nested.span("Query");
+            }
+            nested.span("Serialize");
+        }
+        nested.span("Flush");
+        nested.end();
+        
+        SpanBuffer spans = nested.spans();
+        assertTrue(spans.hasHierarchy());
+        assertEquals(6, spans.size());
+        assertEquals(-1, spans.parent(0));
+        assertEquals(0, spans.parent(1));
+        assertEquals(1, spans.parent(2));
+        assertEquals(0, spans.parent(3));
+        assertEquals(-1, spans.parent(4));
+        assertEquals(2, spans.depth(2));
+        
+        // DB chứa Query, Request chứa DB và Serialize
+        assertEquals(spans.durationNanos(2), spans.childNanos(1));
+        assertEquals(spans.durationNanos(1) + spans.durationNanos(3), spans.childNanos(0));
+        assertTrue(spans.durationNanos(0) >= spans.durationNanos(1));
+        assertTrue(spans.selfNanos(0) >= Duration.ofMillis(5).toNanos());
+        
+        StringBuilder sb = new StringBuilder();
+        JsonTraceEncoder.appendTo(nested, sb, false);
+        JsonNode json = new ObjectMapper().readTree(sb.toString());
+        assertFalse(json.get("spans").get(0).has("parent"));
+        assertEquals(1, json.get("spans").get(2).get("parent").asInt());
+        assertEquals(spans.selfNanos(0), json.get("spans").get(0).get("self_ns").asLong());
+    }
+    
+    @Test
+    void testUnclosedScopesCloseAtEnd() {
+        Tracer nested = Tracer.builder("Unclosed").silent(true).build();
+        SpanScope outer = nested.startSpan("Outer");
+        SpanScope inner = nested.startSpan("Inner");
+        nested.end();
+        
+        SpanBuffer spans = nested.spans();
+        assertEquals(3, spans.size());
+        assertEquals(-1, spans.parent(2)); // "End" không nằm trong scope nào
+        assertEquals(spans.startNanos(0) + spans.durationNanos(0), spans.startNanos(2));
+        
+        // Đóng lại sau end() không làm gì
+        inner.close();
+        outer.close();
+        assertEquals(3, spans.size());
+    }
+    
+    @Test
+    void testClosingOuterScopeClosesInnerScopes() {
+        Tracer nested = Tracer.builder("Out of order").silent(true).build();
+        SpanScope outer = nested.startSpan("Outer");
+        SpanScope inner = nested.startSpan("Inner");
+        outer.close();
+        nested.span("After");
+        inner.close();
+        nested.end();
+        
+        SpanBuffer spans = nested.spans();
+        assertEquals(-1, spans.parent(2));
+        assertEquals(spans.startNanos(0) + spans.durationNanos(0), spans.startNanos(1) + spans.durationNanos(1));
+    }
+    
+    @Test
+    void testDisabledTracerReturnsNoopScope() {
+        Tracer disabled = Tracer.builder("Disabled").enabled(false).build();
+        try (SpanScope scope = disabled.startSpan("Ignored")) {
+            assertSame(SpanScope.NOOP, scope);
+        }
+        assertEquals(0, disabled.getMeasurements().size());
+    }
+    
+    @Test
+    void testNestedSpansRenderAsTree() {
+        Tracer nested = Tracer.builder("Tree").silent(true).build();
+        try (SpanScope outer = nested.startSpan("Outer")) {
+            nested.span("Inner");
+        }
+        nested.end();
+        
+        String detailed = OutputRenderer.renderDetailed(nested);
+        assertTrue(detailed.contains("Self"));
+        assertTrue(detailed.contains("  Inner"));
+        
+        String minimal = OutputRenderer.renderMinimal(nested);
+        assertTrue(minimal.contains("    └─ Inner"));
+        assertTrue(minimal.contains("(self "));
+        
+        // Trace phẳng giữ layout cũ
+        assertFalse(OutputRenderer.renderDetailed(tracer).contains("Self"));
+    }
+    
+    @Test
+    void testNullNamesRenderAsNull() {
+        Tracer unnamed = Tracer.builder(null).silent(true).build();
+        unnamed.span(null);
+        unnamed.span("Named");
+        unnamed.end();
+        
+        // Như String.format: tên null hiện là "null" thay vì làm rơi cả trace
+        for (OutputStyle style : new OutputStyle[] {OutputStyle.DEFAULT, OutputStyle.TABLE, OutputStyle.COLORFUL}) {
+            StringBuilder sb = new StringBuilder();
+            OutputRenderer.render(unnamed, style, sb);
+            assertTrue(sb.indexOf("null") >= 0, style.name());
+            assertTrue(sb.indexOf("Named") >= 0, style.name());
+        }
+        assertEquals(String.format("%-66s", (Object) null),
+                OutputRenderer.renderDefault(unnamed).split("\n")[1].replaceAll("\u001B\\[[;\\d]*m", "")
+                        .substring(2, 68));
+        for (OutputStyle style : OutputStyle.values()) {
+            StringBuilder sb = new StringBuilder();
+            OutputRenderer.render(unnamed, style, sb);
+        }
     }
 }